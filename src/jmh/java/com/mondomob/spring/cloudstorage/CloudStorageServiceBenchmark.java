@@ -0,0 +1,89 @@
+package com.mondomob.spring.cloudstorage;
+
+import com.google.cloud.storage.Blob;
+import com.mondomob.spring.cloudstorage.emulator.StorageEmulator;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Read, write and list throughput of {@link CloudStorageService} against a {@link StorageEmulator}. Requests only travel over
+ * the loopback interface, so the results show the overhead the service, client library and HTTP add to each call rather than
+ * real cloud storage latency.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class CloudStorageServiceBenchmark {
+    private static final String BUCKET = "bucket";
+    private static final String OBJECT_NAME = "benchmark/object";
+
+    @Param({"1024", "1048576"})
+    public int objectSize;
+
+    @Param({"1000"})
+    public int listSize;
+
+    private StorageEmulator emulator;
+    private CloudStorageService service;
+    private byte[] content;
+    private byte[] buffer;
+
+    @Setup
+    public void setup() {
+        emulator = new StorageEmulator(0);
+        service = new CloudStorageService(BUCKET, emulator.getStorage());
+        content = new byte[objectSize];
+        new Random(1).nextBytes(content);
+        buffer = new byte[64 * 1024];
+        service.writeFile(content, OBJECT_NAME);
+        for (int i = 0; i < listSize; i++) {
+            service.writeFile(new byte[0], String.format("listing/%05d", i));
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        emulator.close();
+    }
+
+    @Benchmark
+    public Blob writeBytes() {
+        return service.writeFile(content, OBJECT_NAME);
+    }
+
+    @Benchmark
+    public Blob writeStream() {
+        return service.writeFile(new ByteArrayInputStream(content), OBJECT_NAME);
+    }
+
+    @Benchmark
+    public long readFile() throws IOException {
+        try (InputStream stream = service.readFile(OBJECT_NAME)) {
+            long total = 0;
+            int count;
+            while ((count = stream.read(buffer)) >= 0) {
+                total += count;
+            }
+            return total;
+        }
+    }
+
+    @Benchmark
+    public List<Blob> listFiles() {
+        return service.listFiles("listing/");
+    }
+}
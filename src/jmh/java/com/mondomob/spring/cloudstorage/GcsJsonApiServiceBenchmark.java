@@ -0,0 +1,63 @@
+package com.mondomob.spring.cloudstorage;
+
+import com.google.auth.oauth2.ServiceAccountCredentials;
+import com.mondomob.spring.cloudstorage.apiclient.LocalGcsJsonApiClient;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.security.GeneralSecurityException;
+import java.security.KeyPairGenerator;
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Object name handling in {@link GcsJsonApiService}, and download urls with and without the signed url cache.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class GcsJsonApiServiceBenchmark {
+    private static final String OBJECT_NAME = "attachments/7ca3794f-ca91-473a-b4b0-07f17e5f8c74/quarterly report (final).pdf";
+
+    private GcsJsonApiService service;
+    private GcsJsonApiService cachingService;
+
+    @Setup
+    public void setup() throws GeneralSecurityException {
+        KeyPairGenerator generator = KeyPairGenerator.getInstance("RSA");
+        generator.initialize(2048);
+        ServiceAccountCredentials credentials = ServiceAccountCredentials.newBuilder()
+                .setClientEmail("benchmark@project.iam.gserviceaccount.com")
+                .setPrivateKey(generator.generateKeyPair().getPrivate())
+                .build();
+        LocalGcsJsonApiClient client = new LocalGcsJsonApiClient(null, null, credentials);
+        service = new GcsJsonApiService(client, "bucket", "https://example.com", "attachments");
+        cachingService = new GcsJsonApiService(client, "bucket", "https://example.com", "attachments");
+        cachingService.enableSignedUrlCache(SignedUrlCache.DEFAULT_MAXIMUM_SIZE, Duration.ofSeconds(SignedUrlCache.DEFAULT_SAFETY_MARGIN_SECONDS));
+    }
+
+    @Benchmark
+    public String getFullPathFromObjectName() {
+        return GcsJsonApiService.getFullPathFromObjectName(OBJECT_NAME);
+    }
+
+    @Benchmark
+    public String buildBasePath() {
+        return service.buildBasePath("attachments");
+    }
+
+    @Benchmark
+    public String getDownloadUrl() {
+        return service.getDownloadUrl(OBJECT_NAME);
+    }
+
+    @Benchmark
+    public String getDownloadUrlCached() {
+        return cachingService.getDownloadUrl(OBJECT_NAME);
+    }
+}
@@ -0,0 +1,68 @@
+package com.mondomob.spring.cloudstorage;
+
+import com.google.api.client.http.javanet.NetHttpTransport;
+import com.mondomob.spring.cloudstorage.apiclient.GcsJsonApiClient;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.autoconfigure.EnableAutoConfiguration;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Time to start a Spring context with the auto configuration, creating the {@code Storage} client eagerly or on first use. Eager
+ * creation includes looking up application default credentials and the project id, which is the part lazy initialisation takes
+ * off startup. Each run is a cold start, so this reports single shot times rather than throughput.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class StartupBenchmark {
+
+    @Param({"false", "true"})
+    public boolean lazyInit;
+
+    @Setup
+    public void setup() {
+        if (System.getProperty("GOOGLE_CLOUD_PROJECT") == null && System.getenv("GOOGLE_CLOUD_PROJECT") == null) {
+            System.setProperty("GOOGLE_CLOUD_PROJECT", "benchmark-project");
+        }
+    }
+
+    @Benchmark
+    public Object startContext() {
+        try (ConfigurableApplicationContext context = new SpringApplicationBuilder(BenchmarkConfiguration.class)
+                .web(WebApplicationType.NONE)
+                .logStartupInfo(false)
+                .properties("gcs.default-bucket=bucket",
+                        "app.host=http://localhost",
+                        "gcs.http.transport=" + HttpTransportSettings.NET_HTTP,
+                        "gcs.storage.lazy-init=" + lazyInit)
+                .run()) {
+            return context.getBean(CloudStorageService.class);
+        }
+    }
+
+    /**
+     * Supplies the json api client so the benchmark does not need application default credentials to start.
+     */
+    @Configuration
+    @EnableAutoConfiguration
+    static class BenchmarkConfiguration {
+
+        @Bean
+        public GcsJsonApiClient gcsJsonApiClient() {
+            return new GcsJsonApiClient(new NetHttpTransport().createRequestFactory(), null);
+        }
+    }
+}
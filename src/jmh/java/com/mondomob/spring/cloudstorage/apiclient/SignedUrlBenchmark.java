@@ -0,0 +1,77 @@
+package com.mondomob.spring.cloudstorage.apiclient;
+
+import com.google.auth.oauth2.ServiceAccountCredentials;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.security.GeneralSecurityException;
+import java.security.KeyPairGenerator;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+/**
+ * Cost of each step of url signing with {@link LocalGcsJsonApiClient}: the raw RSA signature, a complete V2 download url
+ * (string to sign, signature and url encoding), many urls at once and a V4 upload url.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class SignedUrlBenchmark {
+    private static final String BUCKET = "bucket";
+    private static final String NAME = "attachments/7ca3794f-ca91-473a-b4b0-07f17e5f8c74/quarterly report.pdf";
+    private static final byte[] DATA = ("GET\n\n\n1577836800\n/" + BUCKET + "/" + NAME).getBytes();
+    private static final Duration EXPIRY = Duration.ofMinutes(10);
+
+    @Param({"100"})
+    public int batchSize;
+
+    private LocalGcsJsonApiClient client;
+    private List<String> names;
+
+    @Setup
+    public void setup() throws GeneralSecurityException {
+        KeyPairGenerator generator = KeyPairGenerator.getInstance("RSA");
+        generator.initialize(2048);
+        ServiceAccountCredentials credentials = ServiceAccountCredentials.newBuilder()
+                .setClientEmail("benchmark@project.iam.gserviceaccount.com")
+                .setPrivateKey(generator.generateKeyPair().getPrivate())
+                .build();
+        client = new LocalGcsJsonApiClient(null, null, credentials);
+        names = IntStream.range(0, batchSize)
+                .mapToObj(i -> String.format("attachments/%s/report.pdf", i))
+                .collect(Collectors.toList());
+    }
+
+    @Benchmark
+    public byte[] sign() {
+        return client.sign(DATA);
+    }
+
+    @Benchmark
+    public SignedUrl generateSignedUrlWithExpiry() {
+        return client.generateSignedUrlWithExpiry(BUCKET, NAME, EXPIRY);
+    }
+
+    /**
+     * Reported per call, divide by {@link #batchSize} for the cost of each url.
+     */
+    @Benchmark
+    public Map<String, SignedUrl> generateSignedUrls() {
+        return client.generateSignedUrls(BUCKET, names, EXPIRY);
+    }
+
+    @Benchmark
+    public SignedUploadUrl generateSignedUploadUrl() {
+        return client.generateSignedUploadUrl(BUCKET, NAME, "application/pdf", 10_000_000L, "https://example.com", EXPIRY);
+    }
+}
@@ -0,0 +1,52 @@
+package com.mondomob.spring.cloudstorage.apiclient;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+
+import java.security.GeneralSecurityException;
+import java.security.KeyPairGenerator;
+import java.security.PrivateKey;
+import java.security.Signature;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Signatures per second when many threads sign urls at once, comparing a new {@link Signature} per call (the previous
+ * {@link LocalGcsJsonApiClient} behaviour) with the per thread state kept by {@link PrivateKeySigner}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Threads(8)
+public class SigningBenchmark {
+    private static final byte[] DATA = "GET\n\n\n1577836800\n/bucket/attachments/7ca3794f-ca91-473a-b4b0-07f17e5f8c74/report.pdf".getBytes();
+
+    private PrivateKey privateKey;
+    private PrivateKeySigner signer;
+
+    @Setup
+    public void setup() throws GeneralSecurityException {
+        KeyPairGenerator generator = KeyPairGenerator.getInstance("RSA");
+        generator.initialize(2048);
+        privateKey = generator.generateKeyPair().getPrivate();
+        signer = new PrivateKeySigner(privateKey);
+    }
+
+    @Benchmark
+    public byte[] newSignaturePerCall() throws GeneralSecurityException {
+        Signature rsa = Signature.getInstance("SHA256withRSA");
+        rsa.initSign(privateKey);
+        rsa.update(DATA);
+        return rsa.sign();
+    }
+
+    @Benchmark
+    public byte[] privateKeySigner() {
+        return signer.sign(DATA);
+    }
+}
@@ -0,0 +1,204 @@
+package com.mondomob.spring.cloudstorage;
+
+import com.google.cloud.storage.Blob;
+import com.google.common.io.ByteStreams;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import org.springframework.util.Assert;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Path;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * Non-blocking facade over {@link CloudStorageService}. Each operation runs on a bounded executor and returns a
+ * {@link CompletableFuture}, so independent reads, writes and metadata calls can be in flight at the same time instead of
+ * paying one round trip after another. When the executor's queue is full the returned future fails with a
+ * {@link RejectedExecutionException}.
+ */
+public class AsyncCloudStorageService implements AutoCloseable {
+    public static final int DEFAULT_THREADS = 16;
+    public static final int DEFAULT_QUEUE_CAPACITY = 1000;
+
+    private final CloudStorageService cloudStorageService;
+    private final Executor executor;
+    private final ExecutorService ownedExecutor;
+
+    /**
+     * @param cloudStorageService The service operations are delegated to.
+     * @param threads             Maximum number of operations running at once.
+     * @param queueCapacity       Maximum number of operations waiting for a thread.
+     */
+    public AsyncCloudStorageService(CloudStorageService cloudStorageService, int threads, int queueCapacity) {
+        Assert.isTrue(threads > 0, "threads must be positive");
+        Assert.isTrue(queueCapacity > 0, "queueCapacity must be positive");
+        ThreadPoolExecutor threadPool = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<>(queueCapacity), new ThreadFactoryBuilder()
+                .setDaemon(true)
+                .setNameFormat("gcs-async-%d")
+                .build());
+        threadPool.allowCoreThreadTimeOut(true);
+        this.cloudStorageService = cloudStorageService;
+        this.executor = threadPool;
+        this.ownedExecutor = threadPool;
+    }
+
+    /**
+     * @param cloudStorageService The service operations are delegated to.
+     * @param executor            Runs the operations. It is not shut down by {@link #close()}.
+     */
+    public AsyncCloudStorageService(CloudStorageService cloudStorageService, Executor executor) {
+        this.cloudStorageService = cloudStorageService;
+        this.executor = executor;
+        this.ownedExecutor = null;
+    }
+
+    public CompletableFuture<Blob> writeFile(byte[] data, String objectName) {
+        return supply(() -> cloudStorageService.writeFile(data, objectName));
+    }
+
+    public CompletableFuture<Blob> writeFile(String bucketName, byte[] data, String objectName, boolean publicReadable) {
+        return supply(() -> cloudStorageService.writeFile(bucketName, data, objectName, publicReadable));
+    }
+
+    public CompletableFuture<Blob> writeFile(Path data, String objectName) {
+        return supply(() -> cloudStorageService.writeFile(data, objectName));
+    }
+
+    public CompletableFuture<Blob> writeFile(String bucketName, Path data, String objectName, boolean publicReadable) {
+        return supply(() -> cloudStorageService.writeFile(bucketName, data, objectName, publicReadable));
+    }
+
+    public CompletableFuture<byte[]> readFile(String objectName) {
+        return readFile(null, objectName);
+    }
+
+    /**
+     * Read the whole content of an object into memory.
+     *
+     * @param bucketName The bucket the object is in, or null for the default bucket.
+     * @param objectName The object to read.
+     * @return The object content.
+     */
+    public CompletableFuture<byte[]> readFile(String bucketName, String objectName) {
+        return supply(() -> {
+            try (InputStream content = bucketName == null
+                    ? cloudStorageService.readFile(objectName)
+                    : cloudStorageService.readFile(bucketName, objectName)) {
+                return ByteStreams.toByteArray(content);
+            } catch (IOException e) {
+                throw new RuntimeException(String.format("Cannot read file %s: %s", objectName, e.getMessage()), e);
+            }
+        });
+    }
+
+    public CompletableFuture<Blob> downloadFile(String objectName, Path target) {
+        return supply(() -> cloudStorageService.downloadFile(objectName, target));
+    }
+
+    public CompletableFuture<Blob> downloadFile(String bucketName, String objectName, Path target) {
+        return supply(() -> cloudStorageService.downloadFile(bucketName, objectName, target));
+    }
+
+    public CompletableFuture<Void> copyFile(String fromObjectName, String toObjectName, boolean publicReadable) {
+        return run(() -> cloudStorageService.copyFile(fromObjectName, toObjectName, publicReadable));
+    }
+
+    public CompletableFuture<Void> copyFile(String fromBucketName, String fromObjectName, String toBucketName, String toObjectName,
+                                            boolean publicReadable) {
+        return run(() -> cloudStorageService.copyFile(fromBucketName, fromObjectName, toBucketName, toObjectName, publicReadable));
+    }
+
+    public CompletableFuture<Void> moveFile(String fromObjectName, String toObjectName, boolean publicReadable) {
+        return run(() -> cloudStorageService.moveFile(fromObjectName, toObjectName, publicReadable));
+    }
+
+    public CompletableFuture<List<Blob>> listFiles(String basePath) {
+        return supply(() -> cloudStorageService.listFiles(basePath));
+    }
+
+    public CompletableFuture<List<Blob>> listFiles(String bucketName, String basePath) {
+        return supply(() -> cloudStorageService.listFiles(bucketName, basePath));
+    }
+
+    public CompletableFuture<Boolean> fileExists(String objectName) {
+        return supply(() -> cloudStorageService.fileExists(objectName));
+    }
+
+    public CompletableFuture<Boolean> fileExists(String bucketName, String objectName) {
+        return supply(() -> cloudStorageService.fileExists(bucketName, objectName));
+    }
+
+    public CompletableFuture<Boolean> deleteFile(String objectName) {
+        return supply(() -> cloudStorageService.deleteFile(objectName));
+    }
+
+    public CompletableFuture<Boolean> deleteFile(String bucketName, String objectName) {
+        return supply(() -> cloudStorageService.deleteFile(bucketName, objectName));
+    }
+
+    public CompletableFuture<Blob> getBlob(String objectName) {
+        return supply(() -> cloudStorageService.getBlob(objectName));
+    }
+
+    public CompletableFuture<Blob> getBlob(String bucketName, String objectName) {
+        return supply(() -> cloudStorageService.getBlob(bucketName, objectName));
+    }
+
+    public CompletableFuture<Map<String, Blob>> getBlobs(Collection<String> objectNames) {
+        return supply(() -> cloudStorageService.getBlobs(objectNames));
+    }
+
+    public CompletableFuture<Map<String, Blob>> getBlobs(String bucketName, Collection<String> objectNames) {
+        return supply(() -> cloudStorageService.getBlobs(bucketName, objectNames));
+    }
+
+    public CompletableFuture<Map<String, Boolean>> filesExist(Collection<String> objectNames) {
+        return supply(() -> cloudStorageService.filesExist(objectNames));
+    }
+
+    public CompletableFuture<Map<String, Boolean>> deleteFiles(Collection<String> objectNames) {
+        return supply(() -> cloudStorageService.deleteFiles(objectNames));
+    }
+
+    public CompletableFuture<Map<String, Boolean>> deleteFiles(String bucketName, Collection<String> objectNames) {
+        return supply(() -> cloudStorageService.deleteFiles(bucketName, objectNames));
+    }
+
+    /**
+     * Stop accepting operations. Operations already submitted still complete. Only an executor created by this service is shut down.
+     */
+    @Override
+    public void close() {
+        if (ownedExecutor != null) {
+            ownedExecutor.shutdown();
+        }
+    }
+
+    private <T> CompletableFuture<T> supply(Supplier<T> operation) {
+        try {
+            return CompletableFuture.supplyAsync(operation, executor);
+        } catch (RejectedExecutionException e) {
+            CompletableFuture<T> rejected = new CompletableFuture<>();
+            rejected.completeExceptionally(e);
+            return rejected;
+        }
+    }
+
+    private CompletableFuture<Void> run(Runnable operation) {
+        return supply(() -> {
+            operation.run();
+            return null;
+        });
+    }
+}
@@ -0,0 +1,153 @@
+package com.mondomob.spring.cloudstorage;
+
+import com.google.cloud.BatchResult;
+import com.google.cloud.storage.Blob;
+import com.google.cloud.storage.BlobId;
+import com.google.cloud.storage.Storage;
+import com.google.cloud.storage.StorageBatch;
+import com.google.cloud.storage.StorageBatchResult;
+import com.google.cloud.storage.StorageException;
+import com.google.common.collect.Lists;
+import org.springframework.util.Assert;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.function.BiFunction;
+import java.util.stream.Collectors;
+
+/**
+ * Runs get and delete calls for many objects through the cloud storage batch API. Objects are split into batches of at most
+ * {@value MAX_BATCH_SIZE} calls, which is the most a single batch request accepts, and batches are sent concurrently. Each call
+ * in a batch succeeds or fails on its own: objects that do not exist are reported as missing, and any other failure is thrown
+ * once every batch has been sent.
+ *
+ * @see <a href="https://cloud.google.com/storage/docs/json_api/v1/how-tos/batch">Sending batch requests</a>
+ */
+class BatchOperations {
+    static final int MAX_BATCH_SIZE = 100;
+    static final int DEFAULT_PARALLELISM = 4;
+    private static final int NOT_FOUND = 404;
+
+    private final Storage storage;
+    private final int batchSize;
+    private final int parallelism;
+    private final CallThreads threads;
+
+    BatchOperations(Storage storage, int batchSize, int parallelism) {
+        this(storage, batchSize, parallelism, new CallThreads());
+    }
+
+    BatchOperations(Storage storage, int batchSize, int parallelism, CallThreads threads) {
+        Assert.isTrue(batchSize > 0 && batchSize <= MAX_BATCH_SIZE, String.format("batchSize must be between 1 and %s", MAX_BATCH_SIZE));
+        Assert.isTrue(parallelism > 0, "parallelism must be positive");
+        this.storage = storage;
+        this.batchSize = batchSize;
+        this.parallelism = parallelism;
+        this.threads = threads;
+    }
+
+    /**
+     * @return whether each object was deleted, false if it did not exist.
+     * @throws StorageException if any object could not be deleted for another reason, after the others have been deleted.
+     */
+    Map<String, Boolean> delete(String bucketName, Collection<String> objectNames) {
+        return execute(bucketName, objectNames, (batch, blobId) -> batch.delete(blobId), false);
+    }
+
+    /**
+     * @return the blob for each object, null if it does not exist.
+     * @throws StorageException if any object could not be read for another reason.
+     */
+    Map<String, Blob> get(String bucketName, Collection<String> objectNames) {
+        return execute(bucketName, objectNames, (batch, blobId) -> batch.get(blobId), null);
+    }
+
+    private <T> Map<String, T> execute(String bucketName, Collection<String> objectNames,
+                                       BiFunction<StorageBatch, BlobId, StorageBatchResult<T>> call, T missing) {
+        List<BlobId> blobIds = objectNames.stream()
+                .distinct()
+                .map(objectName -> BlobId.of(bucketName, objectName))
+                .collect(Collectors.toList());
+        List<List<BlobId>> batches = Lists.partition(blobIds, batchSize);
+        Map<String, T> results = new LinkedHashMap<>();
+        Map<String, StorageException> failures = Collections.synchronizedMap(new LinkedHashMap<>());
+
+        if (batches.size() <= 1) {
+            batches.forEach(batch -> collect(batch, send(batch, call, missing, failures), results));
+            return checkFailures(bucketName, blobIds, results, failures);
+        }
+
+        ExecutorService executor = threads.newFixedThreadPool(Math.min(parallelism, batches.size()), "gcs-batch-%d");
+        try {
+            List<Future<List<T>>> responses = new ArrayList<>();
+            for (List<BlobId> batch : batches) {
+                responses.add(executor.submit(() -> send(batch, call, missing, failures)));
+            }
+            for (int i = 0; i < batches.size(); i++) {
+                collect(batches.get(i), responses.get(i).get(), results);
+            }
+            return checkFailures(bucketName, blobIds, results, failures);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new RuntimeException(String.format("Batch request to bucket %s failed: %s", bucketName, e.getCause().getMessage()), e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(String.format("Interrupted sending batch requests to bucket %s", bucketName), e);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Send one batch request, recording the result of each call in request order and the failure of each call that failed.
+     */
+    private <T> List<T> send(List<BlobId> blobIds, BiFunction<StorageBatch, BlobId, StorageBatchResult<T>> call, T missing,
+                             Map<String, StorageException> failures) {
+        StorageBatch batch = storage.batch();
+        List<T> responses = new ArrayList<>(Collections.nCopies(blobIds.size(), missing));
+        for (int i = 0; i < blobIds.size(); i++) {
+            int index = i;
+            BlobId blobId = blobIds.get(i);
+            call.apply(batch, blobId).notify(new BatchResult.Callback<T, StorageException>() {
+                @Override
+                public void success(T result) {
+                    responses.set(index, result);
+                }
+
+                @Override
+                public void error(StorageException exception) {
+                    if (exception.getCode() != NOT_FOUND) {
+                        failures.put(blobId.getName(), exception);
+                    }
+                }
+            });
+        }
+        batch.submit();
+        return responses;
+    }
+
+    private static <T> Map<String, T> checkFailures(String bucketName, List<BlobId> blobIds, Map<String, T> results,
+                                                     Map<String, StorageException> failures) {
+        if (failures.isEmpty()) {
+            return results;
+        }
+        StorageException first = failures.values().iterator().next();
+        throw new StorageException(first.getCode(), String.format("Batch request to bucket %s failed for %s of %s objects %s: %s",
+                bucketName, failures.size(), blobIds.size(), failures.keySet(), first.getMessage()), first);
+    }
+
+    private static <T> void collect(List<BlobId> batch, List<T> responses, Map<String, T> results) {
+        for (int i = 0; i < batch.size(); i++) {
+            results.put(batch.get(i).getName(), responses.get(i));
+        }
+    }
+}
@@ -0,0 +1,61 @@
+package com.mondomob.spring.cloudstorage;
+
+import com.google.cloud.storage.Blob;
+import com.google.cloud.storage.BlobId;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
+import com.google.common.util.concurrent.UncheckedExecutionException;
+
+import java.time.Duration;
+import java.util.Optional;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+/**
+ * Bounded cache of object metadata with a time to live. Missing objects are cached too, so repeated existence checks for an
+ * object that does not exist are also served from memory.
+ */
+class BlobMetadataCache {
+    static final long DEFAULT_MAXIMUM_SIZE = 10_000;
+    static final long DEFAULT_TTL_SECONDS = 60;
+
+    private final Cache<BlobId, Optional<Blob>> cache;
+
+    BlobMetadataCache(long maximumSize, Duration ttl) {
+        this.cache = CacheBuilder.newBuilder()
+                .maximumSize(maximumSize)
+                .expireAfterWrite(ttl.toMillis(), TimeUnit.MILLISECONDS)
+                .recordStats()
+                .build();
+    }
+
+    Blob get(BlobId blobId, Function<BlobId, Blob> loader) {
+        BlobId key = key(blobId.getBucket(), blobId.getName());
+        try {
+            return cache.get(key, () -> Optional.ofNullable(loader.apply(key))).orElse(null);
+        } catch (ExecutionException | UncheckedExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new RuntimeException(String.format("Cannot get metadata for %s: %s", blobId.getName(), e.getCause().getMessage()), e.getCause());
+        }
+    }
+
+    void invalidate(String bucketName, String objectName) {
+        cache.invalidate(key(bucketName, objectName));
+    }
+
+    void invalidatePrefix(String bucketName, String prefix) {
+        cache.asMap().keySet().removeIf(key -> key.getBucket().equals(bucketName) && key.getName().startsWith(prefix));
+    }
+
+    CacheStats stats() {
+        return cache.stats();
+    }
+
+    private static BlobId key(String bucketName, String objectName) {
+        return BlobId.of(bucketName, objectName);
+    }
+}
@@ -0,0 +1,32 @@
+package com.mondomob.spring.cloudstorage;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.function.Supplier;
+
+/**
+ * Creates the executors that a single call starts and stops before it returns, such as the slices of a download or the parts of a
+ * composite upload. By default their threads are daemon threads. A factory can be set instead, which is looked up on the calling
+ * thread each time an executor is created, so that on App Engine standard the threads belong to the current request.
+ */
+class CallThreads {
+    private volatile Supplier<ThreadFactory> factory;
+
+    /**
+     * @param factory supplies the thread factory for each new executor, or null for daemon threads.
+     */
+    void setFactory(Supplier<ThreadFactory> factory) {
+        this.factory = factory;
+    }
+
+    ExecutorService newFixedThreadPool(int threads, String nameFormat) {
+        Supplier<ThreadFactory> current = factory;
+        ThreadFactory threadFactory = current == null
+                ? new ThreadFactoryBuilder().setDaemon(true).setNameFormat(nameFormat).build()
+                : current.get();
+        return Executors.newFixedThreadPool(threads, threadFactory);
+    }
+}
@@ -1,21 +1,54 @@
 package com.mondomob.spring.cloudstorage;
 
-import com.google.api.client.util.Lists;
 import com.google.api.gax.paging.Page;
 import com.google.auth.Credentials;
 import com.google.auth.oauth2.ServiceAccountCredentials;
 import com.google.cloud.ReadChannel;
+import com.google.cloud.RestorableState;
+import com.google.cloud.WriteChannel;
+import com.google.cloud.http.HttpTransportOptions;
 import com.google.cloud.storage.Blob;
 import com.google.cloud.storage.BlobId;
 import com.google.cloud.storage.BlobInfo;
+import com.google.cloud.storage.CopyWriter;
 import com.google.cloud.storage.Storage;
+import com.google.cloud.storage.StorageException;
 import com.google.cloud.storage.StorageOptions;
+import com.google.common.cache.CacheStats;
+import com.google.common.io.ByteStreams;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.mondomob.spring.cloudstorage.metrics.StorageMetrics;
+import com.mondomob.spring.cloudstorage.retry.HedgedRequests;
+import com.mondomob.spring.cloudstorage.retry.RetryPolicy;
+import org.apache.commons.io.IOUtils;
+import org.springframework.util.Assert;
 
+import java.io.BufferedInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.ByteBuffer;
 import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 /**
  * Migrated from the com.mondomob.spring:spring-boot-gae library.
@@ -23,28 +56,239 @@ import java.util.List;
 public class CloudStorageService {
 
     private static final String PUBLIC_CACHE_CONTROL = "public, max-age=0";
+    private static final int TRANSFER_BUFFER_SIZE = 256 * 1024;
+    private static final int READ_BUFFER_SIZE = 8 * 1024;
+    /**
+     * Same as the client library default. Each streaming upload holds at most this many bytes in memory.
+     */
+    public static final int DEFAULT_WRITE_CHUNK_SIZE = 15 * 1024 * 1024;
+    /**
+     * Same as the client library default. Each read fetches this many bytes per request.
+     */
+    public static final int DEFAULT_READ_CHUNK_SIZE = 2 * 1024 * 1024;
+    public static final int DEFAULT_LIST_PAGE_SIZE = 1000;
 
     private final String defaultBucketName;
     private final Storage storage;
+    private final CallThreads callThreads = new CallThreads();
+    private final ExecutorService backgroundExecutor = Executors.newCachedThreadPool(new ThreadFactoryBuilder()
+            .setDaemon(true)
+            .setNameFormat("gcs-background-%d")
+            .build());
+    private int writeChunkSize = DEFAULT_WRITE_CHUNK_SIZE;
+    private int readChunkSize = DEFAULT_READ_CHUNK_SIZE;
+    private boolean readAhead;
+    private int listPageSize = DEFAULT_LIST_PAGE_SIZE;
+    private int prefixConcurrency = PrefixOperations.DEFAULT_CONCURRENCY;
+    private ParallelCompositeUploader compositeUploader;
+    private SlicedDownloader slicedDownloader;
+    private BatchOperations batchOperations;
+    private RewriteCopier rewriteCopier;
+    private BlobMetadataCache metadataCache;
+    private StorageMetrics metrics = StorageMetrics.NONE;
+    private RetryPolicy retryPolicy = RetryPolicy.NONE;
+    private HedgedRequests hedgedRequests;
+    private GzipTranscoder gzipTranscoder;
 
     public CloudStorageService(String defaultBucketName) {
-        this.defaultBucketName = defaultBucketName;
-        this.storage = StorageOptions.getDefaultInstance().getService();
+        this(defaultBucketName, StorageOptions.getDefaultInstance().getService());
+    }
+
+    /**
+     * Use the application default credentials with the given transport, for example to share a pooled {@link
+     * com.google.api.client.http.HttpTransport} and its timeouts with {@link com.mondomob.spring.cloudstorage.apiclient.GcsJsonApiClient}.
+     */
+    public CloudStorageService(String defaultBucketName, HttpTransportOptions transportOptions) {
+        this(defaultBucketName, StorageOptions.newBuilder().setTransportOptions(transportOptions).build().getService());
     }
 
     public CloudStorageService(String defaultBucketName, String credentialsFile, String projectId) {
-        Credentials googleCredential;
-        InputStream inputStream = StorageOptions.class.getResourceAsStream(credentialsFile);
+        this(defaultBucketName, credentialsFile, projectId, StorageOptions.getDefaultHttpTransportOptions());
+    }
 
-        try {
-            googleCredential = ServiceAccountCredentials.fromStream(inputStream);
-        } catch (IOException e) {
-            throw new IllegalArgumentException(String.format("Can not read local gcs credentials file %s", credentialsFile), e);
-        }
+    public CloudStorageService(String defaultBucketName, String credentialsFile, String projectId, HttpTransportOptions transportOptions) {
+        this(defaultBucketName, StorageOptions.newBuilder().setCredentials(readCredentials(credentialsFile))
+                .setProjectId(projectId).setTransportOptions(transportOptions).build().getService());
+    }
 
-        this.storage = StorageOptions.newBuilder().setCredentials(googleCredential)
-                .setProjectId(projectId).build().getService();
+    public CloudStorageService(String defaultBucketName, Storage storage) {
         this.defaultBucketName = defaultBucketName;
+        this.storage = storage;
+        this.slicedDownloader = new SlicedDownloader(storage, SlicedDownloader.DEFAULT_SLICE_SIZE, SlicedDownloader.DEFAULT_PARALLELISM, callThreads);
+        this.batchOperations = new BatchOperations(storage, BatchOperations.MAX_BATCH_SIZE, BatchOperations.DEFAULT_PARALLELISM, callThreads);
+        this.rewriteCopier = new RewriteCopier(storage, null);
+    }
+
+    /**
+     * Record the latency, outcome and size of each operation.
+     *
+     * @param metrics Where metrics are recorded.
+     */
+    public void setMetrics(StorageMetrics metrics) {
+        Assert.notNull(metrics, "metrics required");
+        this.metrics = metrics;
+    }
+
+    /**
+     * Retry {@code getBlob}, {@code fileExists}, {@code readBytes} and {@code listFiles} after transient failures. These are the
+     * only calls retried, as repeating them cannot change an object. The client library already retries each request on its own,
+     * so only use this with a {@code Storage} client built without retries, such as one with
+     * {@code ServiceOptions.getNoRetrySettings()}, otherwise the attempts multiply. The auto configuration does both when
+     * {@code gcs.retry.budget.enabled} is true.
+     *
+     * @param retryPolicy How and how often to retry.
+     */
+    public void setRetryPolicy(RetryPolicy retryPolicy) {
+        Assert.notNull(retryPolicy, "retryPolicy required");
+        this.retryPolicy = retryPolicy;
+    }
+
+    /**
+     * Opt in to hedged requests for {@code getBlob}, {@code fileExists} and {@code readBytes}: when one of these is slower than
+     * recent calls, a second request is sent and whichever answers first is used.
+     *
+     * @param hedgedRequests When to send the second request.
+     */
+    public void enableHedgedReads(HedgedRequests hedgedRequests) {
+        this.hedgedRequests = hedgedRequests;
+    }
+
+    /**
+     * Set the chunk size used by the streaming {@code writeFile} methods. The client library rounds this to a multiple of 256KB.
+     *
+     * @param writeChunkSize chunk size in bytes.
+     */
+    public void setWriteChunkSize(int writeChunkSize) {
+        Assert.isTrue(writeChunkSize > 0, "writeChunkSize must be positive");
+        this.writeChunkSize = writeChunkSize;
+    }
+
+    /**
+     * Set the number of bytes {@code readFile} fetches from cloud storage per request.
+     *
+     * @param readChunkSize chunk size in bytes.
+     */
+    public void setReadChunkSize(int readChunkSize) {
+        Assert.isTrue(readChunkSize > 0, "readChunkSize must be positive");
+        this.readChunkSize = readChunkSize;
+    }
+
+    /**
+     * Set whether {@code readFile} fetches the next chunk in the background while the current one is consumed.
+     *
+     * @param readAhead true to read ahead by default.
+     * @see #readFile(String, String, int, boolean)
+     */
+    public void setReadAhead(boolean readAhead) {
+        this.readAhead = readAhead;
+    }
+
+    /**
+     * Set the number of objects requested per page when listing.
+     *
+     * @param listPageSize page size.
+     */
+    public void setListPageSize(int listPageSize) {
+        Assert.isTrue(listPageSize > 0, "listPageSize must be positive");
+        this.listPageSize = listPageSize;
+    }
+
+    /**
+     * Set the number of objects {@code copyPrefix}, {@code movePrefix} and {@code deletePrefix} work on at the same time.
+     *
+     * @param prefixConcurrency number of concurrent workers.
+     */
+    public void setPrefixConcurrency(int prefixConcurrency) {
+        Assert.isTrue(prefixConcurrency > 0, "prefixConcurrency must be positive");
+        this.prefixConcurrency = prefixConcurrency;
+    }
+
+    /**
+     * Create the threads of the executors that {@code downloadFile}, composite uploads, the batched multi-object methods and the
+     * prefix operations start for each call with a factory from {@code threadFactory}, looked up on the calling thread. On App
+     * Engine standard pass {@code ThreadManager::currentRequestThreadFactory}, as only threads of the current request can make
+     * URL Fetch and App Identity calls. These executors always finish before the call returns.
+     *
+     * @param threadFactory supplies a thread factory for each call, or null for daemon threads.
+     */
+    public void setCallThreadFactory(Supplier<ThreadFactory> threadFactory) {
+        callThreads.setFactory(threadFactory);
+    }
+
+    /**
+     * Configure how {@code downloadFile} splits objects into byte ranges that are downloaded in parallel.
+     *
+     * @param sliceSize   size in bytes of each range.
+     * @param parallelism maximum number of ranges downloaded at the same time.
+     */
+    public void setSlicedDownload(long sliceSize, int parallelism) {
+        this.slicedDownloader = new SlicedDownloader(storage, sliceSize, parallelism, callThreads);
+    }
+
+    /**
+     * Configure how the multi-object {@code deleteFiles}, {@code getBlobs} and {@code filesExist} methods batch their calls.
+     *
+     * @param batchSize   number of objects per batch request, at most 100.
+     * @param parallelism maximum number of batch requests sent at the same time.
+     */
+    public void setBatchOperations(int batchSize, int parallelism) {
+        this.batchOperations = new BatchOperations(storage, batchSize, parallelism, callThreads);
+    }
+
+    /**
+     * Set the maximum number of megabytes copied by each rewrite call made when copying or moving objects.
+     *
+     * @param megabytesPerCall megabytes per call, or null to let cloud storage decide.
+     */
+    public void setRewriteMegabytesPerCall(Long megabytesPerCall) {
+        this.rewriteCopier = new RewriteCopier(storage, megabytesPerCall);
+    }
+
+    /**
+     * Cache the metadata returned by {@code getBlob} and {@code fileExists}, including for objects that do not exist. Cached entries
+     * are invalidated when this service writes, copies, moves or deletes the object. Changes made by anything else are only seen once
+     * the entry expires.
+     *
+     * @param maximumSize maximum number of objects cached.
+     * @param ttl         how long an entry is cached for.
+     */
+    public void enableMetadataCache(long maximumSize, Duration ttl) {
+        this.metadataCache = new BlobMetadataCache(maximumSize, ttl);
+    }
+
+    /**
+     * @return Hit, miss and eviction statistics of the metadata cache. All zero if the cache is not enabled.
+     * @see #enableMetadataCache(long, Duration)
+     */
+    public CacheStats getMetadataCacheStats() {
+        return metadataCache == null ? new CacheStats(0, 0, 0, 0, 0, 0) : metadataCache.stats();
+    }
+
+    /**
+     * Opt in to parallel composite uploads for the streaming {@code writeFile} methods. Files at least {@code threshold} bytes in size
+     * are split into parts that are uploaded concurrently and then composed into the target object. Streams of unknown length are held
+     * in memory until {@code threshold} bytes have been read, streamed as a single object if they end before that and otherwise split
+     * into parts, holding at most {@code parallelism} parts in memory from then on.
+     *
+     * @param threshold   minimum size in bytes before a file or stream is split into parts.
+     * @param partSize    size in bytes of each part.
+     * @param parallelism maximum number of parts uploaded at the same time.
+     */
+    public void enableParallelCompositeUploads(long threshold, long partSize, int parallelism) {
+        this.compositeUploader = new ParallelCompositeUploader(storage, threshold, partSize, parallelism, callThreads);
+    }
+
+    /**
+     * Opt in to gzip compressing objects as they are written, for objects whose content type (guessed from the object name) is in
+     * {@code contentTypes}. Compressed objects are stored with {@code Content-Encoding: gzip} and are decompressed by cloud storage
+     * for clients that do not accept gzip. The streaming {@code readFile} and {@code readBytes} decompress them again. Ranged reads
+     * and {@code downloadFile} return the stored bytes. Compressed streaming writes are not split into composite uploads.
+     *
+     * @param level        gzip compression level, from {@code 1} (fastest) to {@code 9} (smallest).
+     * @param contentTypes content types to compress, which may be wildcards such as {@code text/*}.
+     */
+    public void enableGzipTranscoding(int level, Collection<String> contentTypes) {
+        this.gzipTranscoder = new GzipTranscoder(level, contentTypes);
     }
 
     public Blob writeFile(byte[] data, String objectName) {
@@ -60,19 +304,196 @@ public class CloudStorageService {
     }
 
     public Blob writeFile(String bucketName, byte[] data, String objectName, boolean publicReadable) {
-        BlobId gcsFilename = blobId(bucketName, objectName);
-        BlobInfo.Builder blobInfoBuilder = BlobInfo.newBuilder(gcsFilename);
-        List<Storage.BlobTargetOption> blobTargetOptions = new ArrayList<>();
+        BlobInfo blobInfo = writeBlobInfo(bucketName, objectName, publicReadable);
 
-        if (publicReadable) {
-            blobTargetOptions.add(Storage.BlobTargetOption.predefinedAcl(Storage.PredefinedAcl.PUBLIC_READ));
-            blobInfoBuilder.setCacheControl(PUBLIC_CACHE_CONTROL);
+        try {
+            byte[] content = GzipTranscoder.isEncoded(blobInfo) ? gzipTranscoder.compress(data) : data;
+            Blob blob = metrics.time(StorageMetrics.WRITE, bucketName, () -> storage.create(
+                    blobInfo,
+                    content,
+                    blobTargetOptions(publicReadable)));
+            metrics.recordBytes(StorageMetrics.WRITE, bucketName, content.length);
+            return blob;
+        } catch (IOException e) {
+            throw new RuntimeException(String.format("Cannot write file %s: %s", objectName, e.getMessage()), e);
+        } finally {
+            invalidate(bucketName, objectName);
         }
+    }
+
+    public Blob writeFile(InputStream data, String objectName) {
+        return writeFile(defaultBucketName, data, objectName);
+    }
 
-        return storage.create(
-                blobInfoBuilder.build(),
-                data,
-                blobTargetOptions.toArray(new Storage.BlobTargetOption[0]));
+    public Blob writeFile(String bucketName, InputStream data, String objectName) {
+        return writeFile(bucketName, data, objectName, false);
+    }
+
+    public Blob writeFile(InputStream data, String objectName, boolean publicReadable) {
+        return writeFile(defaultBucketName, data, objectName, publicReadable);
+    }
+
+    /**
+     * Stream the contents of an {@link InputStream} to cloud storage without buffering the whole object in memory.
+     * The stream is read to the end but is not closed.
+     *
+     * @param bucketName     The bucket to write to.
+     * @param data           The content to write.
+     * @param objectName     The object to write.
+     * @param publicReadable Whether the object should be publicly readable.
+     * @return The written blob.
+     */
+    public Blob writeFile(String bucketName, InputStream data, String objectName, boolean publicReadable) {
+        return writeFile(bucketName, Channels.newChannel(data), objectName, publicReadable);
+    }
+
+    public Blob writeFile(ReadableByteChannel data, String objectName) {
+        return writeFile(defaultBucketName, data, objectName);
+    }
+
+    public Blob writeFile(String bucketName, ReadableByteChannel data, String objectName) {
+        return writeFile(bucketName, data, objectName, false);
+    }
+
+    public Blob writeFile(ReadableByteChannel data, String objectName, boolean publicReadable) {
+        return writeFile(defaultBucketName, data, objectName, publicReadable);
+    }
+
+    /**
+     * Stream the contents of a channel to cloud storage through {@link Storage#writer(BlobInfo, Storage.BlobWriteOption...)}.
+     * At most one chunk (see {@link #setWriteChunkSize(int)}) is held in memory regardless of object size. The channel is read
+     * to the end but is not closed. If reading the channel fails nothing is written and any existing object is left unchanged.
+     *
+     * @param bucketName     The bucket to write to.
+     * @param data           The content to write.
+     * @param objectName     The object to write.
+     * @param publicReadable Whether the object should be publicly readable.
+     * @return The written blob.
+     */
+    public Blob writeFile(String bucketName, ReadableByteChannel data, String objectName, boolean publicReadable) {
+        BlobInfo blobInfo = writeBlobInfo(bucketName, objectName, publicReadable);
+
+        try {
+            return recordWrite(bucketName, metrics.time(StorageMetrics.WRITE, bucketName, () -> {
+                if (compositeUploader != null && !GzipTranscoder.isEncoded(blobInfo)) {
+                    return compositeUploader.upload(blobInfo, data, content -> streamFile(blobInfo, content, publicReadable),
+                            blobTargetOptions(publicReadable));
+                }
+                return streamFile(blobInfo, data, publicReadable);
+            }));
+        } catch (IOException e) {
+            throw new RuntimeException(String.format("Cannot write file %s: %s", objectName, e.getMessage()), e);
+        } finally {
+            invalidate(bucketName, objectName);
+        }
+    }
+
+    public Blob writeFile(Path data, String objectName) {
+        return writeFile(defaultBucketName, data, objectName);
+    }
+
+    public Blob writeFile(String bucketName, Path data, String objectName) {
+        return writeFile(bucketName, data, objectName, false);
+    }
+
+    public Blob writeFile(Path data, String objectName, boolean publicReadable) {
+        return writeFile(defaultBucketName, data, objectName, publicReadable);
+    }
+
+    public Blob writeFile(String bucketName, Path data, String objectName, boolean publicReadable) {
+        BlobInfo blobInfo = writeBlobInfo(bucketName, objectName, publicReadable);
+
+        try {
+            return recordWrite(bucketName, metrics.time(StorageMetrics.WRITE, bucketName, () -> {
+                if (compositeUploader != null && !GzipTranscoder.isEncoded(blobInfo) && Files.size(data) >= compositeUploader.getThreshold()) {
+                    return compositeUploader.upload(blobInfo, data, writeChunkSize, blobTargetOptions(publicReadable));
+                }
+                try (ReadableByteChannel channel = Files.newByteChannel(data)) {
+                    return streamFile(blobInfo, channel, publicReadable);
+                }
+            }));
+        } catch (IOException e) {
+            throw new RuntimeException(String.format("Cannot write file %s from %s: %s", objectName, data, e.getMessage()), e);
+        } finally {
+            invalidate(bucketName, objectName);
+        }
+    }
+
+    public WriteResult writeFileIfChanged(byte[] data, String objectName) {
+        return writeFileIfChanged(defaultBucketName, data, objectName, false);
+    }
+
+    /**
+     * Write an object unless it already has the same content. The size and MD5 (or CRC32C for composite objects) of the bytes that
+     * would be stored are compared with the existing object, and the upload is skipped when they match. Otherwise the object is
+     * written only if it is still the generation that was compared, or still does not exist, so that concurrent writers cannot
+     * overwrite each other. If another writer stored the same content first the write counts as skipped, and if it stored different
+     * content the {@link StorageException} with code {@code 412} is thrown.
+     * <p>
+     * The content type, content encoding and cache control are compared too. When only those differ, a public write changes the
+     * metadata and makes the object public without sending the content again, and a private write uploads the object again so that
+     * it gets the bucket's default access.
+     *
+     * @param bucketName     The bucket to write to.
+     * @param data           The content to write.
+     * @param objectName     The object to write.
+     * @param publicReadable Whether a written object should be publicly readable.
+     * @return The stored object and whether the content was sent.
+     */
+    public WriteResult writeFileIfChanged(String bucketName, byte[] data, String objectName, boolean publicReadable) {
+        BlobInfo blobInfo = writeBlobInfo(bucketName, objectName, publicReadable);
+
+        try {
+            byte[] content = GzipTranscoder.isEncoded(blobInfo) ? gzipTranscoder.compress(data) : data;
+            return writeIfChanged(blobInfo, publicReadable, ContentHash.of(content), (target, exists) -> {
+                Blob blob = storage.create(target, content, blobTargetOptions(publicReadable,
+                        exists ? Storage.BlobTargetOption.generationMatch() : Storage.BlobTargetOption.doesNotExist()));
+                metrics.recordBytes(StorageMetrics.WRITE, bucketName, content.length);
+                return blob;
+            });
+        } catch (IOException e) {
+            throw new RuntimeException(String.format("Cannot write file %s: %s", objectName, e.getMessage()), e);
+        } finally {
+            invalidate(bucketName, objectName);
+        }
+    }
+
+    public WriteResult writeFileIfChanged(Path data, String objectName) {
+        return writeFileIfChanged(defaultBucketName, data, objectName, false);
+    }
+
+    /**
+     * Stream a file to cloud storage unless the object already has the same content. The file is read twice, once to hash it and
+     * once to upload it, and cloud storage checks that the uploaded bytes have the hashed MD5. Files are not split into composite
+     * uploads.
+     *
+     * @param bucketName     The bucket to write to.
+     * @param data           The file to write.
+     * @param objectName     The object to write.
+     * @param publicReadable Whether a written object should be publicly readable.
+     * @return The stored object and whether the content was sent.
+     * @see #writeFileIfChanged(String, byte[], String, boolean)
+     */
+    public WriteResult writeFileIfChanged(String bucketName, Path data, String objectName, boolean publicReadable) {
+        BlobInfo blobInfo = writeBlobInfo(bucketName, objectName, publicReadable);
+
+        try {
+            ContentHash hash;
+            try (ReadableByteChannel channel = Files.newByteChannel(data)) {
+                hash = ContentHash.of(channel, GzipTranscoder.isEncoded(blobInfo) ? gzipTranscoder : null);
+            }
+            return writeIfChanged(blobInfo, publicReadable, hash, (target, exists) -> {
+                try (ReadableByteChannel channel = Files.newByteChannel(data)) {
+                    return recordWrite(bucketName, streamFile(target.toBuilder().setMd5(hash.getMd5()).build(), channel, publicReadable,
+                            exists ? Storage.BlobWriteOption.generationMatch() : Storage.BlobWriteOption.doesNotExist(),
+                            Storage.BlobWriteOption.md5Match()));
+                }
+            });
+        } catch (IOException e) {
+            throw new RuntimeException(String.format("Cannot write file %s from %s: %s", objectName, data, e.getMessage()), e);
+        } finally {
+            invalidate(bucketName, objectName);
+        }
     }
 
     public InputStream readFile(String objectName) {
@@ -80,9 +501,139 @@ public class CloudStorageService {
     }
 
     public InputStream readFile(String bucketName, String objectName) {
+        return readFile(bucketName, objectName, readChunkSize, readAhead);
+    }
+
+    public InputStream readFile(String objectName, int chunkSize, boolean readAhead) {
+        return readFile(defaultBucketName, objectName, chunkSize, readAhead);
+    }
+
+    /**
+     * Read an object, fetching {@code chunkSize} bytes per request. The returned stream is buffered so that small reads are cheap.
+     * With read ahead the next chunk is fetched in the background while the current one is consumed, at the cost of holding two
+     * more chunks in memory. Objects written with gzip transcoding are decompressed as they are read.
+     *
+     * @param bucketName The bucket the object is in.
+     * @param objectName The object to read.
+     * @param chunkSize  Number of bytes fetched per request.
+     * @param readAhead  Whether to fetch the next chunk in the background.
+     * @return Stream of the object content.
+     */
+    public InputStream readFile(String bucketName, String objectName, int chunkSize, boolean readAhead) {
+        Assert.isTrue(chunkSize > 0, "chunkSize must be positive");
         BlobId gcsFilename = blobId(bucketName, objectName);
         ReadChannel readChannel = storage.reader(gcsFilename);
-        return Channels.newInputStream(readChannel);
+        readChannel.setChunkSize(chunkSize);
+
+        InputStream stream = readAhead
+                ? metered(new ReadAheadInputStream(readChannel, chunkSize, backgroundExecutor), bucketName)
+                : metered(new BufferedInputStream(Channels.newInputStream(readChannel), READ_BUFFER_SIZE), bucketName);
+        if (gzipTranscoder == null) {
+            return stream;
+        }
+        try {
+            return GzipTranscoder.decode(stream, () -> GzipTranscoder.isEncoded(getBlob(bucketName, objectName)));
+        } catch (IOException e) {
+            IOUtils.closeQuietly(stream);
+            throw new RuntimeException(String.format("Cannot read file %s: %s", objectName, e.getMessage()), e);
+        }
+    }
+
+    public byte[] readBytes(String objectName) {
+        return readBytes(defaultBucketName, objectName);
+    }
+
+    /**
+     * Read a whole object into memory in a single request. Meant for small objects, use {@code readFile} to stream large ones.
+     *
+     * @param bucketName The bucket the object is in.
+     * @param objectName The object to read.
+     * @return The object content.
+     * @see #setRetryPolicy(RetryPolicy)
+     * @see #enableHedgedReads(HedgedRequests)
+     */
+    public byte[] readBytes(String bucketName, String objectName) {
+        BlobId blobId = blobId(bucketName, objectName);
+        byte[] content = metrics.time(StorageMetrics.READ, bucketName, () -> idempotentRead(() -> storage.readAllBytes(blobId)));
+        metrics.recordBytes(StorageMetrics.READ, bucketName, content.length);
+        if (gzipTranscoder == null) {
+            return content;
+        }
+        try {
+            return GzipTranscoder.decode(content, () -> GzipTranscoder.isEncoded(getBlob(bucketName, objectName)));
+        } catch (IOException e) {
+            throw new RuntimeException(String.format("Cannot read file %s: %s", objectName, e.getMessage()), e);
+        }
+    }
+
+    public InputStream readFile(String objectName, long offset, long length) {
+        return readFile(defaultBucketName, objectName, offset, length);
+    }
+
+    /**
+     * Read a byte range of an object. Only the requested range is fetched from cloud storage.
+     *
+     * @param bucketName The bucket the object is in.
+     * @param objectName The object to read.
+     * @param offset     Position of the first byte to read.
+     * @param length     Maximum number of bytes to read. Fewer bytes are returned if the object ends first.
+     * @return Stream of the requested range.
+     */
+    public InputStream readFile(String bucketName, String objectName, long offset, long length) {
+        Assert.isTrue(offset >= 0, "offset must not be negative");
+        Assert.isTrue(length >= 0, "length must not be negative");
+        ReadChannel readChannel = storage.reader(blobId(bucketName, objectName));
+        try {
+            readChannel.seek(offset);
+        } catch (IOException e) {
+            readChannel.close();
+            throw new RuntimeException(String.format("Cannot read file %s: %s", objectName, e.getMessage()), e);
+        }
+        readChannel.setChunkSize((int) Math.max(1, Math.min(length, readChunkSize)));
+        return metered(ByteStreams.limit(Channels.newInputStream(readChannel), length), bucketName);
+    }
+
+    public Blob downloadFile(String objectName, Path target) {
+        return downloadFile(defaultBucketName, objectName, target);
+    }
+
+    /**
+     * Download an object to a local file, fetching byte ranges in parallel over separate connections.
+     *
+     * @param bucketName The bucket the object is in.
+     * @param objectName The object to download.
+     * @param target     The file to write to. It is created or truncated.
+     * @return The downloaded blob.
+     * @see #setSlicedDownload(long, int)
+     */
+    public Blob downloadFile(String bucketName, String objectName, Path target) {
+        try {
+            return recordRead(bucketName, metrics.time(StorageMetrics.READ, bucketName, () -> slicedDownloader.download(blobId(bucketName, objectName), target)));
+        } catch (IOException e) {
+            throw new RuntimeException(String.format("Cannot download file %s: %s", objectName, e.getMessage()), e);
+        }
+    }
+
+    public Blob downloadFile(String objectName, ByteBuffer target) {
+        return downloadFile(defaultBucketName, objectName, target);
+    }
+
+    /**
+     * Download an object into a buffer, fetching byte ranges in parallel over separate connections. The content is written from the
+     * buffer's current position, which is advanced past the content on success.
+     *
+     * @param bucketName The bucket the object is in.
+     * @param objectName The object to download.
+     * @param target     The buffer to write to. It must have enough space remaining for the whole object.
+     * @return The downloaded blob.
+     * @see #setSlicedDownload(long, int)
+     */
+    public Blob downloadFile(String bucketName, String objectName, ByteBuffer target) {
+        try {
+            return recordRead(bucketName, metrics.time(StorageMetrics.READ, bucketName, () -> slicedDownloader.download(blobId(bucketName, objectName), target)));
+        } catch (IOException e) {
+            throw new RuntimeException(String.format("Cannot download file %s: %s", objectName, e.getMessage()), e);
+        }
     }
 
     public void copyFile(String fromObjectName, String toObjectName, boolean publicReadable) {
@@ -96,30 +647,226 @@ public class CloudStorageService {
     public void copyFile(String fromBucketName, String fromObjectName, String toBucketName, String toObjectName, boolean publicReadable) {
         BlobId sourceObject = blobId(fromBucketName, fromObjectName);
         BlobId targetObject = blobId(toBucketName, toObjectName);
-        storage.copy(Storage.CopyRequest.of(sourceObject, targetObject));
 
-        if (publicReadable) {
-            makePublic(targetObject);
+        try {
+            metrics.time(StorageMetrics.COPY, toBucketName, () -> rewriteCopier.copy(sourceObject, targetObject, CopyProgressListener.NONE));
+
+            if (publicReadable) {
+                makePublic(targetObject);
+            }
+        } finally {
+            invalidate(toBucketName, toObjectName);
         }
     }
 
+    /**
+     * Copy an object with the rewrite API, reporting progress after each rewrite call. Large objects, and copies between locations
+     * or storage classes, can take several calls. The state passed to the listener can be saved and used with
+     * {@link #resumeRewrite(RestorableState, CopyProgressListener)} to continue an interrupted copy.
+     *
+     * @param fromBucketName The bucket to copy from.
+     * @param fromObjectName The object to copy.
+     * @param toBucketName   The bucket to copy to.
+     * @param toObjectName   The object to copy to.
+     * @param listener       Progress listener.
+     * @return The copied blob.
+     */
+    public Blob rewriteFile(String fromBucketName, String fromObjectName, String toBucketName, String toObjectName, CopyProgressListener listener) {
+        try {
+            return metrics.time(StorageMetrics.COPY, toBucketName,
+                    () -> rewriteCopier.copy(blobId(fromBucketName, fromObjectName), blobId(toBucketName, toObjectName), listener));
+        } finally {
+            invalidate(toBucketName, toObjectName);
+        }
+    }
+
+    /**
+     * Continue a copy from state saved by a {@link CopyProgressListener}.
+     *
+     * @param state    The saved rewrite state.
+     * @param listener Progress listener.
+     * @return The copied blob.
+     */
+    public Blob resumeRewrite(RestorableState<CopyWriter> state, CopyProgressListener listener) {
+        Blob copied = metrics.time(StorageMetrics.COPY, null, () -> rewriteCopier.resume(state, listener));
+        invalidate(copied.getBucket(), copied.getName());
+        return copied;
+    }
+
     public List<Blob> listFiles(String basePath) {
         return listFiles(defaultBucketName, basePath);
     }
 
+    /**
+     * List every object under a base path. All pages are read into memory, use {@link #streamFiles(String, String)} for large
+     * listings.
+     *
+     * @param bucketName The bucket to list.
+     * @param basePath   The prefix of the objects to list.
+     * @return All objects under the base path.
+     */
     public List<Blob> listFiles(String bucketName, String basePath) {
-        Page<Blob> files = storage.list(bucketName, Storage.BlobListOption.prefix(basePath), Storage.BlobListOption.pageSize(100));
-        return Lists.newArrayList(files.getValues());
+        return metrics.time(StorageMetrics.LIST, bucketName, () -> retryPolicy.execute(() -> {
+            try (Stream<Blob> files = listPages(bucketName, basePath, new ListFilesOptions())) {
+                return files.collect(Collectors.toList());
+            }
+        }));
+    }
+
+    public Stream<Blob> streamFiles(String basePath) {
+        return streamFiles(defaultBucketName, basePath);
+    }
+
+    public Stream<Blob> streamFiles(String bucketName, String basePath) {
+        return streamFiles(bucketName, basePath, new ListFilesOptions());
+    }
+
+    /**
+     * Lazily list every object under a base path. Pages are requested as the stream is consumed, so only one page (two when
+     * prefetching) is held in memory regardless of how many objects there are.
+     *
+     * @param bucketName The bucket to list.
+     * @param basePath   The prefix of the objects to list.
+     * @param options    Page size, field projection, directory mode and prefetching.
+     * @return Stream of objects, which should be closed if it is not fully consumed.
+     */
+    public Stream<Blob> streamFiles(String bucketName, String basePath, ListFilesOptions options) {
+        return metrics.time(StorageMetrics.LIST, bucketName, () -> listPages(bucketName, basePath, options));
     }
 
+    private Stream<Blob> listPages(String bucketName, String basePath, ListFilesOptions options) {
+        Page<Blob> firstPage = storage.list(bucketName, options.toBlobListOptions(basePath, listPageSize));
+
+        if (!options.isPrefetchNextPage()) {
+            return StreamSupport.stream(firstPage.iterateAll().spliterator(), false);
+        }
+
+        PrefetchingPageIterator<Blob> pages = new PrefetchingPageIterator<>(firstPage, backgroundExecutor);
+        return StreamSupport.stream(Spliterators.spliteratorUnknownSize(pages, Spliterator.ORDERED | Spliterator.NONNULL), false)
+                .onClose(pages::cancel);
+    }
+
+    /**
+     * Move an object within the default bucket. When {@code publicReadable} is true the copy is made public before the source is
+     * deleted, so if that fails the source is kept.
+     */
     public void moveFile(String fromObjectName, String toObjectName, boolean publicReadable) {
-        copyFile(fromObjectName, toObjectName, publicReadable);
-        deleteFile(fromObjectName);
+        BlobId targetObject = blobId(defaultBucketName, toObjectName);
+
+        try {
+            metrics.time(StorageMetrics.MOVE, defaultBucketName,
+                    () -> rewriteCopier.move(blobId(defaultBucketName, fromObjectName), targetObject, CopyProgressListener.NONE,
+                            copied -> publicReadable ? makePublic(targetObject) : copied));
+        } finally {
+            invalidate(defaultBucketName, fromObjectName);
+            invalidate(defaultBucketName, toObjectName);
+        }
     }
 
     public void moveFile(Blob file, String targetBucket, String targetName) {
-        file.copyTo(targetBucket, targetName);
-        file.delete();
+        try {
+            metrics.time(StorageMetrics.MOVE, targetBucket, () -> rewriteCopier.move(file, blobId(targetBucket, targetName), CopyProgressListener.NONE));
+        } finally {
+            invalidate(file.getBucket(), file.getName());
+            invalidate(targetBucket, targetName);
+        }
+    }
+
+    /**
+     * Move an object by copying it with the rewrite API and then deleting the source. The source is only deleted once the copy is
+     * complete and matches it, and only if the source has not been overwritten in the meantime.
+     *
+     * @param fromBucketName The bucket to move from.
+     * @param fromObjectName The object to move.
+     * @param toBucketName   The bucket to move to.
+     * @param toObjectName   The object to move to.
+     * @param listener       Progress listener for the copy.
+     * @return The moved blob.
+     */
+    public Blob moveFile(String fromBucketName, String fromObjectName, String toBucketName, String toObjectName, CopyProgressListener listener) {
+        try {
+            return metrics.time(StorageMetrics.MOVE, toBucketName,
+                    () -> rewriteCopier.move(blobId(fromBucketName, fromObjectName), blobId(toBucketName, toObjectName), listener));
+        } finally {
+            invalidate(fromBucketName, fromObjectName);
+            invalidate(toBucketName, toObjectName);
+        }
+    }
+
+    public PrefixOperationResult copyPrefix(String fromPrefix, String toPrefix) {
+        return copyPrefix(defaultBucketName, fromPrefix, defaultBucketName, toPrefix, result -> {
+        });
+    }
+
+    /**
+     * Copy every object under a prefix to another prefix, keeping the rest of each object name. Objects already at the target with
+     * the same size and CRC32C are skipped, so an interrupted copy can be re-run. Within one bucket neither prefix may start with the
+     * other, as the copies would be listed and copied again.
+     *
+     * @param fromBucketName The bucket to copy from.
+     * @param fromPrefix     The prefix of the objects to copy.
+     * @param toBucketName   The bucket to copy to.
+     * @param toPrefix       The prefix that replaces {@code fromPrefix} in the copied object names.
+     * @param progress       Called with the running totals each time an object has been processed.
+     * @return Totals and failures.
+     */
+    public PrefixOperationResult copyPrefix(String fromBucketName, String fromPrefix, String toBucketName, String toPrefix,
+                                            Consumer<PrefixOperationResult> progress) {
+        try {
+            return metrics.time(StorageMetrics.COPY_PREFIX, toBucketName,
+                    () -> prefixOperations().copy(fromBucketName, fromPrefix, toBucketName, toPrefix, progress));
+        } finally {
+            invalidatePrefix(toBucketName, toPrefix);
+        }
+    }
+
+    public PrefixOperationResult movePrefix(String fromPrefix, String toPrefix) {
+        return movePrefix(defaultBucketName, fromPrefix, defaultBucketName, toPrefix, result -> {
+        });
+    }
+
+    /**
+     * Move every object under a prefix to another prefix, keeping the rest of each object name. Each source object is only deleted
+     * once its copy has been verified. Objects already copied by an earlier run are not copied again. Within one bucket neither
+     * prefix may start with the other.
+     *
+     * @param fromBucketName The bucket to move from.
+     * @param fromPrefix     The prefix of the objects to move.
+     * @param toBucketName   The bucket to move to.
+     * @param toPrefix       The prefix that replaces {@code fromPrefix} in the moved object names.
+     * @param progress       Called with the running totals each time an object has been processed.
+     * @return Totals and failures.
+     */
+    public PrefixOperationResult movePrefix(String fromBucketName, String fromPrefix, String toBucketName, String toPrefix,
+                                            Consumer<PrefixOperationResult> progress) {
+        try {
+            return metrics.time(StorageMetrics.MOVE_PREFIX, toBucketName,
+                    () -> prefixOperations().move(fromBucketName, fromPrefix, toBucketName, toPrefix, progress));
+        } finally {
+            invalidatePrefix(fromBucketName, fromPrefix);
+            invalidatePrefix(toBucketName, toPrefix);
+        }
+    }
+
+    public PrefixOperationResult deletePrefix(String prefix) {
+        return deletePrefix(defaultBucketName, prefix, result -> {
+        });
+    }
+
+    /**
+     * Delete every object under a prefix using batch requests.
+     *
+     * @param bucketName The bucket to delete from.
+     * @param prefix     The prefix of the objects to delete.
+     * @param progress   Called with the running totals each time a batch has been processed.
+     * @return Totals and failures.
+     */
+    public PrefixOperationResult deletePrefix(String bucketName, String prefix, Consumer<PrefixOperationResult> progress) {
+        try {
+            return metrics.time(StorageMetrics.DELETE_PREFIX, bucketName, () -> prefixOperations().delete(bucketName, prefix, progress));
+        } finally {
+            invalidatePrefix(bucketName, prefix);
+        }
     }
 
     public boolean fileExists(String objectName) {
@@ -127,8 +874,7 @@ public class CloudStorageService {
     }
 
     public boolean fileExists(String bucketName, String objectName) {
-        Blob blob = storage.get(blobId(bucketName, objectName));
-        return blob != null && blob.exists();
+        return getBlob(bucketName, objectName) != null;
     }
 
     public boolean deleteFile(String objectName) {
@@ -136,7 +882,68 @@ public class CloudStorageService {
     }
 
     public boolean deleteFile(String bucketName, String objectName) {
-        return storage.delete(blobId(bucketName, objectName));
+        try {
+            return metrics.time(StorageMetrics.DELETE, bucketName, () -> storage.delete(blobId(bucketName, objectName)));
+        } finally {
+            invalidate(bucketName, objectName);
+        }
+    }
+
+    public Map<String, Boolean> filesExist(Collection<String> objectNames) {
+        return filesExist(defaultBucketName, objectNames);
+    }
+
+    /**
+     * Check whether many objects exist using batch requests.
+     *
+     * @param bucketName  The bucket the objects are in.
+     * @param objectNames The objects to check.
+     * @return Whether each object exists, keyed by object name.
+     * @throws StorageException if any object could not be checked for another reason than not existing, such as a 403, 429 or
+     *                          5xx response. Its code is that of the first failure.
+     */
+    public Map<String, Boolean> filesExist(String bucketName, Collection<String> objectNames) {
+        Map<String, Boolean> exists = new LinkedHashMap<>();
+        getBlobs(bucketName, objectNames).forEach((objectName, blob) -> exists.put(objectName, blob != null));
+        return exists;
+    }
+
+    public Map<String, Boolean> deleteFiles(Collection<String> objectNames) {
+        return deleteFiles(defaultBucketName, objectNames);
+    }
+
+    /**
+     * Delete many objects using batch requests.
+     *
+     * @param bucketName  The bucket the objects are in.
+     * @param objectNames The objects to delete.
+     * @return Whether each object was deleted, keyed by object name. False if it did not exist.
+     * @throws StorageException if any object could not be deleted for another reason, once the others have been deleted. Its code is
+     *                          that of the first failure.
+     */
+    public Map<String, Boolean> deleteFiles(String bucketName, Collection<String> objectNames) {
+        try {
+            return metrics.time(StorageMetrics.DELETE_BATCH, bucketName, () -> batchOperations.delete(bucketName, objectNames));
+        } finally {
+            objectNames.forEach(objectName -> invalidate(bucketName, objectName));
+        }
+    }
+
+    public Map<String, Blob> getBlobs(Collection<String> objectNames) {
+        return getBlobs(defaultBucketName, objectNames);
+    }
+
+    /**
+     * Get many objects using batch requests.
+     *
+     * @param bucketName  The bucket the objects are in.
+     * @param objectNames The objects to get.
+     * @return The blob for each object keyed by object name, null if it does not exist.
+     * @throws StorageException if any object could not be read for another reason than not existing, such as a 403, 429 or 5xx
+     *                          response. Its code is that of the first failure.
+     */
+    public Map<String, Blob> getBlobs(String bucketName, Collection<String> objectNames) {
+        return metrics.time(StorageMetrics.GET_BATCH, bucketName, () -> batchOperations.get(bucketName, objectNames));
     }
 
     public Blob getBlob(String objectName) {
@@ -145,7 +952,71 @@ public class CloudStorageService {
 
     public Blob getBlob(String bucketName, String objectName) {
         BlobId blobId = BlobId.of(bucketName, objectName);
-        return storage.get(blobId);
+        if (metadataCache == null) {
+            return metrics.time(StorageMetrics.GET, bucketName, () -> idempotentRead(() -> storage.get(blobId)));
+        }
+        return metadataCache.get(blobId, id -> metrics.time(StorageMetrics.GET, bucketName, () -> idempotentRead(() -> storage.get(id))));
+    }
+
+    private <T> T idempotentRead(RetryPolicy.IdempotentCall<T, RuntimeException> call) {
+        if (hedgedRequests == null) {
+            return retryPolicy.execute(call);
+        }
+        return hedgedRequests.execute(retryPolicy, call);
+    }
+
+    private WriteResult writeIfChanged(BlobInfo blobInfo, boolean publicReadable, ContentHash hash, ConditionalUpload upload) throws IOException {
+        String bucketName = blobInfo.getBucket();
+        BlobId blobId = blobId(bucketName, blobInfo.getName());
+        Blob existing = metrics.time(StorageMetrics.GET, bucketName, () -> idempotentRead(() -> storage.get(blobId)));
+        if (hash.matches(existing) && hasMetadata(existing, blobInfo)) {
+            return new WriteResult(existing, false);
+        }
+
+        BlobInfo target = blobInfo.toBuilder()
+                .setBlobId(BlobId.of(bucketName, blobInfo.getName(), existing == null ? null : existing.getGeneration()))
+                .build();
+        try {
+            if (hash.matches(existing) && publicReadable) {
+                // only the metadata differs, which can be changed and the object made public without sending the content again
+                return new WriteResult(metrics.time(StorageMetrics.WRITE, bucketName, () -> storage.update(target,
+                        blobTargetOptions(true, Storage.BlobTargetOption.generationMatch()))), false);
+            }
+            return new WriteResult(metrics.time(StorageMetrics.WRITE, bucketName, () -> upload.upload(target, existing != null)), true);
+        } catch (StorageException e) {
+            if (e.getCode() != 412) {
+                throw e;
+            }
+            Blob current = storage.get(blobId);
+            if (hash.matches(current) && hasMetadata(current, blobInfo)) {
+                return new WriteResult(current, false);
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * @return whether the object has the content type, content encoding and cache control a write would give it. Public objects are
+     * written with a public cache control, so this also tells whether the object was made public. Cloud storage picks a content type
+     * when none is given, so the content type is only compared when the write sets one.
+     */
+    private static boolean hasMetadata(BlobInfo existing, BlobInfo blobInfo) {
+        return (blobInfo.getContentType() == null || blobInfo.getContentType().equals(existing.getContentType()))
+                && Objects.equals(existing.getContentEncoding(), blobInfo.getContentEncoding())
+                && Objects.equals(existing.getCacheControl(), blobInfo.getCacheControl());
+    }
+
+    @FunctionalInterface
+    private interface ConditionalUpload {
+        /**
+         * @param target the object to write, with the generation it must still have if it exists.
+         * @param exists whether the object must still be that generation, rather than still not exist.
+         */
+        Blob upload(BlobInfo target, boolean exists) throws IOException;
+    }
+
+    private PrefixOperations prefixOperations() {
+        return new PrefixOperations(storage, rewriteCopier, prefixConcurrency, listPageSize, callThreads);
     }
 
     private Blob makePublic(BlobId target) {
@@ -154,8 +1025,108 @@ public class CloudStorageService {
                 Storage.BlobTargetOption.predefinedAcl(Storage.PredefinedAcl.PUBLIC_READ));
     }
 
+    private InputStream metered(InputStream stream, String bucketName) {
+        return metrics == StorageMetrics.NONE ? stream : new MeteredInputStream(stream, metrics, bucketName);
+    }
+
+    private Blob recordWrite(String bucketName, Blob blob) {
+        if (blob != null && blob.getSize() != null) {
+            metrics.recordBytes(StorageMetrics.WRITE, bucketName, blob.getSize());
+        }
+        return blob;
+    }
+
+    private Blob recordRead(String bucketName, Blob blob) {
+        if (blob != null && blob.getSize() != null) {
+            metrics.recordBytes(StorageMetrics.READ, bucketName, blob.getSize());
+        }
+        return blob;
+    }
+
+    private void invalidate(String bucketName, String objectName) {
+        if (metadataCache != null) {
+            metadataCache.invalidate(bucketName, objectName);
+        }
+    }
+
+    private void invalidatePrefix(String bucketName, String prefix) {
+        if (metadataCache != null) {
+            metadataCache.invalidatePrefix(bucketName, prefix);
+        }
+    }
+
     private BlobId blobId(String bucketName, String objectName) {
         return BlobId.of(bucketName, objectName);
     }
-}
 
+    private Blob streamFile(BlobInfo blobInfo, ReadableByteChannel data, boolean publicReadable, Storage.BlobWriteOption... options) {
+        List<Storage.BlobWriteOption> blobWriteOptions = new ArrayList<>(Arrays.asList(options));
+
+        if (publicReadable) {
+            blobWriteOptions.add(Storage.BlobWriteOption.predefinedAcl(Storage.PredefinedAcl.PUBLIC_READ));
+        }
+
+        // The writer is only closed once the whole source has been sent, as closing finalises the upload. If the source fails the
+        // upload session is abandoned instead, so the object is not replaced with the part read so far.
+        WriteChannel writer = storage.writer(blobInfo, blobWriteOptions.toArray(new Storage.BlobWriteOption[0]));
+        try {
+            writer.setChunkSize(writeChunkSize);
+            if (GzipTranscoder.isEncoded(blobInfo)) {
+                gzipTranscoder.compress(data, writer);
+            } else {
+                transfer(data, writer);
+            }
+            writer.close();
+        } catch (IOException e) {
+            throw new RuntimeException(String.format("Cannot write file %s: %s", blobInfo.getName(), e.getMessage()), e);
+        }
+
+        return storage.get(blobId(blobInfo.getBucket(), blobInfo.getName()));
+    }
+
+    private Storage.BlobTargetOption[] blobTargetOptions(boolean publicReadable, Storage.BlobTargetOption... options) {
+        List<Storage.BlobTargetOption> blobTargetOptions = new ArrayList<>(Arrays.asList(options));
+
+        if (publicReadable) {
+            blobTargetOptions.add(Storage.BlobTargetOption.predefinedAcl(Storage.PredefinedAcl.PUBLIC_READ));
+        }
+
+        return blobTargetOptions.toArray(new Storage.BlobTargetOption[0]);
+    }
+
+    private BlobInfo writeBlobInfo(String bucketName, String objectName, boolean publicReadable) {
+        BlobInfo blobInfo = blobInfo(bucketName, objectName, publicReadable);
+        return gzipTranscoder == null ? blobInfo : gzipTranscoder.encode(blobInfo);
+    }
+
+    private BlobInfo blobInfo(String bucketName, String objectName, boolean publicReadable) {
+        BlobInfo.Builder blobInfoBuilder = BlobInfo.newBuilder(blobId(bucketName, objectName));
+
+        if (publicReadable) {
+            blobInfoBuilder.setCacheControl(PUBLIC_CACHE_CONTROL);
+        }
+
+        return blobInfoBuilder.build();
+    }
+
+    private static void transfer(ReadableByteChannel source, WriteChannel target) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(TRANSFER_BUFFER_SIZE);
+        while (source.read(buffer) >= 0) {
+            buffer.flip();
+            while (buffer.hasRemaining()) {
+                target.write(buffer);
+            }
+            buffer.clear();
+        }
+    }
+
+    private static Credentials readCredentials(String credentialsFile) {
+        InputStream inputStream = StorageOptions.class.getResourceAsStream(credentialsFile);
+
+        try {
+            return ServiceAccountCredentials.fromStream(inputStream);
+        } catch (IOException e) {
+            throw new IllegalArgumentException(String.format("Can not read local gcs credentials file %s", credentialsFile), e);
+        }
+    }
+}
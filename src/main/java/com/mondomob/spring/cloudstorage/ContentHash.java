@@ -0,0 +1,75 @@
+package com.mondomob.spring.cloudstorage;
+
+import com.google.cloud.storage.BlobInfo;
+import com.google.common.hash.Hashing;
+import com.google.common.hash.HashingOutputStream;
+import com.google.common.io.BaseEncoding;
+import com.google.common.io.ByteStreams;
+import com.google.common.io.CountingOutputStream;
+import com.google.common.primitives.Ints;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.util.Objects;
+
+/**
+ * Size, MD5 and CRC32C of the bytes an object would store, in the base64 form cloud storage reports them, so content can be compared
+ * with an existing object without downloading it.
+ */
+class ContentHash {
+    private final long size;
+    private final String md5;
+    private final String crc32c;
+
+    private ContentHash(long size, byte[] md5, int crc32c) {
+        this.size = size;
+        this.md5 = BaseEncoding.base64().encode(md5);
+        this.crc32c = BaseEncoding.base64().encode(Ints.toByteArray(crc32c));
+    }
+
+    static ContentHash of(byte[] content) {
+        return new ContentHash(content.length, Hashing.md5().hashBytes(content).asBytes(), Hashing.crc32c().hashBytes(content).asInt());
+    }
+
+    /**
+     * Hash a channel as it is read to the end, optionally gzip compressing it first with the same settings as the upload.
+     */
+    static ContentHash of(ReadableByteChannel content, GzipTranscoder gzipTranscoder) throws IOException {
+        HashingOutputStream md5 = new HashingOutputStream(Hashing.md5(), ByteStreams.nullOutputStream());
+        HashingOutputStream crc32c = new HashingOutputStream(Hashing.crc32c(), md5);
+        CountingOutputStream counting = new CountingOutputStream(crc32c);
+        if (gzipTranscoder != null) {
+            gzipTranscoder.compress(content, counting);
+        } else {
+            copy(content, counting);
+        }
+        return new ContentHash(counting.getCount(), md5.hash().asBytes(), crc32c.hash().asInt());
+    }
+
+    /**
+     * @return whether the object has the same size and MD5, or the same size and CRC32C if the object has no MD5 as composite objects do.
+     */
+    boolean matches(BlobInfo blobInfo) {
+        if (blobInfo == null || blobInfo.getSize() == null || blobInfo.getSize() != size) {
+            return false;
+        }
+        if (blobInfo.getMd5() != null) {
+            return Objects.equals(blobInfo.getMd5(), md5);
+        }
+        return Objects.equals(blobInfo.getCrc32c(), crc32c);
+    }
+
+    String getMd5() {
+        return md5;
+    }
+
+    String getCrc32c() {
+        return crc32c;
+    }
+
+    private static void copy(ReadableByteChannel source, OutputStream target) throws IOException {
+        ByteStreams.copy(Channels.newInputStream(source), target);
+    }
+}
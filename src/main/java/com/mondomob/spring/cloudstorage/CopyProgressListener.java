@@ -0,0 +1,17 @@
+package com.mondomob.spring.cloudstorage;
+
+import com.google.cloud.RestorableState;
+import com.google.cloud.storage.CopyWriter;
+
+/**
+ * Receives progress of a rewrite based copy after every rewrite call. The state is {@link java.io.Serializable} and can be saved
+ * so that an interrupted copy can be continued with {@link CloudStorageService#resumeRewrite(RestorableState, CopyProgressListener)}
+ * instead of starting over.
+ */
+@FunctionalInterface
+public interface CopyProgressListener {
+    CopyProgressListener NONE = (state, bytesCopied, totalBytes) -> {
+    };
+
+    void onProgress(RestorableState<CopyWriter> state, long bytesCopied, long totalBytes);
+}
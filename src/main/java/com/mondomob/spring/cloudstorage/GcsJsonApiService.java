@@ -3,10 +3,15 @@ package com.mondomob.spring.cloudstorage;
 import com.google.api.client.util.Strings;
 import com.google.common.net.UrlEscapers;
 import com.mondomob.spring.cloudstorage.apiclient.GcsJsonApiClient;
+import com.mondomob.spring.cloudstorage.apiclient.SignedUploadUrl;
+import com.mondomob.spring.cloudstorage.apiclient.SignedUrl;
 import org.apache.commons.io.FilenameUtils;
 import org.apache.commons.lang3.Validate;
 
 import java.time.Duration;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.Map;
 import java.util.UUID;
 
 public class GcsJsonApiService {
@@ -17,6 +22,7 @@ public class GcsJsonApiService {
     private final String gcsDefaultBucket;
     private final String host;
     private final String defaultAttachmentsFolder;
+    private SignedUrlCache signedUrlCache;
 
     public GcsJsonApiService(GcsJsonApiClient cloudStorage, String gcsDefaultBucket, String host,
                              String defaultAttachmentsFolder) {
@@ -26,6 +32,17 @@ public class GcsJsonApiService {
         this.defaultAttachmentsFolder = defaultAttachmentsFolder;
     }
 
+    /**
+     * Reuse download urls for the same object while they remain valid for at least {@code safetyMargin}, instead of signing a
+     * new url on every call. On App Engine each signature is a remote call to the app identity service.
+     *
+     * @param maximumSize  Maximum number of urls cached.
+     * @param safetyMargin Minimum time a cached url must still be valid for to be returned.
+     */
+    public void enableSignedUrlCache(long maximumSize, Duration safetyMargin) {
+        this.signedUrlCache = new SignedUrlCache(maximumSize, DEFAULT_EXPIRY_DURATION, safetyMargin);
+    }
+
     /**
      * Generate a cloud storage upload url under the default attachments folder.
      *
@@ -74,6 +91,43 @@ public class GcsJsonApiService {
 
     }
 
+    /**
+     * Generate a signed url that a browser can {@code PUT} a file to directly under the default attachments folder. See
+     * {@link #getSignedUploadUrl(String, String, String, String, String, Long)}.
+     *
+     * @param type     File MIME type.
+     * @param filename The file name to store the file as and ultimately download it as.
+     * @param origin   Upload origin. If not supplied it will default to the configured host.
+     * @param maxSize  Largest file accepted in bytes, or null for no limit.
+     * @return Upload url and the headers the upload must send.
+     */
+    public SignedUploadUrl getSignedUploadUrl(String type, String filename, String origin, Long maxSize) {
+        return getSignedUploadUrl(gcsDefaultBucket, defaultAttachmentsFolder, type, filename, origin, maxSize);
+    }
+
+    /**
+     * Generate a signed url that a browser can {@code PUT} a file to directly. Unlike {@link #getUploadUrl(String, String, String, String, String)}
+     * no request is made to cloud storage. The url lasts {@value DEFAULT_LINK_EXPIRY_DURATION_MINUTES} minutes and only accepts uploads
+     * with the given type and origin, up to {@code maxSize} bytes. The upload response has no body, so use
+     * {@link SignedUploadUrl#getName()} to download the file later.
+     *
+     * @param bucket   The bucket to upload the attachment to.
+     * @param folder   Folder to store the attachment under.
+     * @param type     File MIME type.
+     * @param filename The file name to store the file as and ultimately download it as.
+     * @param origin   Upload origin. If not supplied it will default to the configured host.
+     * @param maxSize  Largest file accepted in bytes, or null for no limit.
+     * @return Upload url and the headers the upload must send.
+     */
+    public SignedUploadUrl getSignedUploadUrl(String bucket, String folder, String type, String filename, String origin, Long maxSize) {
+        Validate.notBlank(bucket, "bucket required");
+        Validate.notBlank(folder, "folder required");
+        Validate.notBlank(filename, "filename required");
+        String originHost = Strings.isNullOrEmpty(origin) ? host : origin;
+        String name = String.format("%s/%s", buildBasePath(folder), filename);
+        return cloudStorage.generateSignedUploadUrl(bucket, name, type, maxSize, originHost, DEFAULT_EXPIRY_DURATION);
+    }
+
     /**
      * Get a signed url to view an attachment. The url will last 24 hours. The file name portion of the id is url escaped internally.
      *
@@ -92,7 +146,53 @@ public class GcsJsonApiService {
      * @return Url
      */
     public String getDownloadUrl(String bucket, String gcsObjectName) {
-        return cloudStorage.generateSignedUrl(bucket, getFullPathFromObjectName(gcsObjectName), DEFAULT_EXPIRY_DURATION);
+        String name = getFullPathFromObjectName(gcsObjectName);
+        if (signedUrlCache == null) {
+            return cloudStorage.generateSignedUrl(bucket, name, DEFAULT_EXPIRY_DURATION);
+        }
+        return signedUrlCache.get(bucket, name, () -> cloudStorage.generateSignedUrlWithExpiry(bucket, name, DEFAULT_EXPIRY_DURATION));
+    }
+
+    /**
+     * Get signed urls to view many attachments in the default bucket. See {@link #getDownloadUrls(String, Collection)}.
+     *
+     * @param gcsObjectNames The ids of the attachments.
+     * @return Url for each id, in the order given.
+     */
+    public Map<String, String> getDownloadUrls(Collection<String> gcsObjectNames) {
+        return getDownloadUrls(gcsDefaultBucket, gcsObjectNames);
+    }
+
+    /**
+     * Get signed urls to view many attachments. The urls will last {@value DEFAULT_LINK_EXPIRY_DURATION_MINUTES} minutes. Urls
+     * that are not already cached are signed concurrently, so this takes about as long as a single {@link #getDownloadUrl(String, String)}.
+     *
+     * @param bucket The bucket the attachments are in.
+     * @param gcsObjectNames The ids of the attachments.
+     * @return Url for each id, in the order given.
+     */
+    public Map<String, String> getDownloadUrls(String bucket, Collection<String> gcsObjectNames) {
+        Map<String, String> urls = new LinkedHashMap<>();
+        Map<String, String> unsignedObjectNames = new LinkedHashMap<>();
+        for (String gcsObjectName : gcsObjectNames) {
+            String name = getFullPathFromObjectName(gcsObjectName);
+            SignedUrl cached = signedUrlCache == null ? null : signedUrlCache.getIfFresh(bucket, name);
+            urls.put(gcsObjectName, cached == null ? null : cached.getUrl());
+            if (cached == null) {
+                unsignedObjectNames.put(name, gcsObjectName);
+            }
+        }
+        if (unsignedObjectNames.isEmpty()) {
+            return urls;
+        }
+
+        cloudStorage.generateSignedUrls(bucket, unsignedObjectNames.keySet(), DEFAULT_EXPIRY_DURATION).forEach((name, signedUrl) -> {
+            if (signedUrlCache != null) {
+                signedUrlCache.put(bucket, name, signedUrl);
+            }
+            urls.put(unsignedObjectNames.get(name), signedUrl.getUrl());
+        });
+        return urls;
     }
 
     /**
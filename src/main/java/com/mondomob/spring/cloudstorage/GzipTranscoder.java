@@ -0,0 +1,145 @@
+package com.mondomob.spring.cloudstorage;
+
+import com.google.cloud.WriteChannel;
+import com.google.cloud.storage.BlobInfo;
+import com.google.common.io.ByteStreams;
+import org.springframework.http.MediaType;
+import org.springframework.http.MediaTypeFactory;
+import org.springframework.util.Assert;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PushbackInputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.util.Collection;
+import java.util.List;
+import java.util.function.BooleanSupplier;
+import java.util.stream.Collectors;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Gzips objects as they are written and stores them with {@code Content-Encoding: gzip}, so that cloud storage keeps and serves
+ * the compressed bytes. Clients that do not accept gzip are still sent the original content, as cloud storage decompresses it for
+ * them ("decompressive transcoding"). Only objects whose content type, guessed from the object name, is in the allow list are
+ * compressed, as already compressed formats such as images and archives do not get smaller.
+ * <p>
+ * Reads see the stored bytes, so {@link #decode(InputStream, BooleanSupplier)} decompresses them again for server side consumers.
+ *
+ * @see <a href="https://cloud.google.com/storage/docs/transcoding">Transcoding of gzip-compressed files</a>
+ */
+class GzipTranscoder {
+    static final String GZIP = "gzip";
+    static final int DEFAULT_LEVEL = 6;
+    static final String DEFAULT_CONTENT_TYPES = "text/*,application/json,application/xml,application/javascript,image/svg+xml";
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+    private static final int GZIP_MAGIC = 0x8b1f;
+
+    private final int level;
+    private final List<MediaType> contentTypes;
+
+    /**
+     * @param level        gzip compression level, from {@code 1} (fastest) to {@code 9} (smallest).
+     * @param contentTypes content types to compress, which may be wildcards such as {@code text/*}.
+     */
+    GzipTranscoder(int level, Collection<String> contentTypes) {
+        Assert.isTrue(level >= Deflater.BEST_SPEED && level <= Deflater.BEST_COMPRESSION, "level must be between 1 and 9");
+        Assert.notEmpty(contentTypes, "contentTypes required");
+        this.level = level;
+        this.contentTypes = contentTypes.stream().map(String::trim).map(MediaType::parseMediaType).collect(Collectors.toList());
+    }
+
+    /**
+     * @return the blob info with the guessed content type and gzip encoding if the object should be compressed, otherwise the blob
+     * info unchanged.
+     */
+    BlobInfo encode(BlobInfo blobInfo) {
+        MediaType contentType = MediaTypeFactory.getMediaType(blobInfo.getName()).orElse(null);
+        if (contentType == null || contentTypes.stream().noneMatch(allowed -> allowed.includes(contentType))) {
+            return blobInfo;
+        }
+        return blobInfo.toBuilder()
+                .setContentType(contentType.toString())
+                .setContentEncoding(GZIP)
+                .build();
+    }
+
+    static boolean isEncoded(BlobInfo blobInfo) {
+        return blobInfo != null && GZIP.equalsIgnoreCase(blobInfo.getContentEncoding());
+    }
+
+    byte[] compress(byte[] data) throws IOException {
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream(Math.max(32, data.length / 4));
+        try (OutputStream gzip = gzip(compressed)) {
+            gzip.write(data);
+        }
+        return compressed.toByteArray();
+    }
+
+    /**
+     * Compress the source into the target as it is read. The target is not closed.
+     */
+    void compress(ReadableByteChannel source, WriteChannel target) throws IOException {
+        compress(source, Channels.newOutputStream(target));
+    }
+
+    /**
+     * Compress the source into the target as it is read. The target is not closed.
+     */
+    void compress(ReadableByteChannel source, OutputStream target) throws IOException {
+        GZIPOutputStream gzip = gzip(target);
+        ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+        while (source.read(buffer) >= 0) {
+            gzip.write(buffer.array(), 0, buffer.position());
+            buffer.clear();
+        }
+        gzip.finish();
+    }
+
+    /**
+     * Decompress a stream of stored bytes if they are gzip compressed and the object is gzip encoded. The encoding is only checked
+     * when the content starts with the gzip header, and content that cloud storage has already decompressed is returned as is.
+     */
+    static InputStream decode(InputStream stream, BooleanSupplier gzipEncoded) throws IOException {
+        PushbackInputStream content = new PushbackInputStream(stream, 2);
+        byte[] header = new byte[2];
+        int read = 0;
+        int count;
+        while (read < header.length && (count = content.read(header, read, header.length - read)) >= 0) {
+            read += count;
+        }
+        content.unread(header, 0, read);
+        if (read == header.length && isGzip(header) && gzipEncoded.getAsBoolean()) {
+            return new GZIPInputStream(content, BUFFER_SIZE);
+        }
+        return content;
+    }
+
+    static byte[] decode(byte[] content, BooleanSupplier gzipEncoded) throws IOException {
+        if (!isGzip(content) || !gzipEncoded.getAsBoolean()) {
+            return content;
+        }
+        try (InputStream gzip = new GZIPInputStream(new ByteArrayInputStream(content), BUFFER_SIZE)) {
+            return ByteStreams.toByteArray(gzip);
+        }
+    }
+
+    private GZIPOutputStream gzip(OutputStream target) throws IOException {
+        return new GZIPOutputStream(target, BUFFER_SIZE) {
+            {
+                def.setLevel(level);
+            }
+        };
+    }
+
+    private static boolean isGzip(byte[] content) {
+        return content.length >= 2 && ((content[0] & 0xff) | ((content[1] & 0xff) << 8)) == GZIP_MAGIC;
+    }
+}
@@ -0,0 +1,143 @@
+package com.mondomob.spring.cloudstorage;
+
+import com.google.api.client.extensions.appengine.http.UrlFetchTransport;
+import com.google.api.client.http.HttpRequestInitializer;
+import com.google.api.client.http.HttpTransport;
+import com.google.api.client.http.apache.v2.ApacheHttpTransport;
+import com.google.api.client.http.javanet.NetHttpTransport;
+import com.google.cloud.http.HttpTransportOptions;
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.impl.NoConnectionReuseStrategy;
+import org.apache.http.impl.client.HttpClientBuilder;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.springframework.util.Assert;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Builds the {@link HttpTransport} shared by {@link com.mondomob.spring.cloudstorage.apiclient.GcsJsonApiClient} and the cloud
+ * storage client, and applies timeouts and compression to each of their requests.
+ * <ul>
+ * <li>{@value URL_FETCH} - the App Engine URL Fetch service, which manages its own connections.</li>
+ * <li>{@value NET_HTTP} - {@link java.net.HttpURLConnection}, whose connections are kept alive by the JDK as configured by the
+ * <code>http.keepAlive</code> and <code>http.maxConnections</code> system properties.</li>
+ * <li>{@value APACHE} - Apache HttpClient with a connection pool of the configured size and keep alive.</li>
+ * </ul>
+ */
+class HttpTransportSettings {
+    static final String URL_FETCH = "url-fetch";
+    static final String NET_HTTP = "net-http";
+    static final String APACHE = "apache";
+    static final int DEFAULT_MAX_CONNECTIONS = 64;
+    static final int DEFAULT_MAX_CONNECTIONS_PER_ROUTE = 32;
+    static final long DEFAULT_KEEP_ALIVE_SECONDS = 30;
+    static final int DEFAULT_CONNECT_TIMEOUT_MILLIS = 20_000;
+    static final int DEFAULT_READ_TIMEOUT_MILLIS = 20_000;
+    private static final List<String> TRANSPORTS = Arrays.asList(URL_FETCH, NET_HTTP, APACHE);
+
+    private final String transport;
+    private final int maxConnections;
+    private final int maxConnectionsPerRoute;
+    private final long keepAliveSeconds;
+    private final int connectTimeoutMillis;
+    private final int readTimeoutMillis;
+    private final boolean gzip;
+
+    /**
+     * @param keepAliveSeconds How long an idle pooled connection is kept for reuse, 0 to close connections after each request.
+     * @param gzip             Whether responses may be gzip compressed.
+     */
+    HttpTransportSettings(String transport, int maxConnections, int maxConnectionsPerRoute, long keepAliveSeconds,
+                          int connectTimeoutMillis, int readTimeoutMillis, boolean gzip) {
+        Assert.isTrue(TRANSPORTS.contains(transport), String.format("transport must be one of %s", TRANSPORTS));
+        Assert.isTrue(maxConnections > 0, "maxConnections must be positive");
+        Assert.isTrue(maxConnectionsPerRoute > 0 && maxConnectionsPerRoute <= maxConnections,
+                "maxConnectionsPerRoute must be positive and at most maxConnections");
+        Assert.isTrue(keepAliveSeconds >= 0, "keepAliveSeconds must not be negative");
+        Assert.isTrue(connectTimeoutMillis >= 0 && readTimeoutMillis >= 0, "timeouts must not be negative");
+        this.transport = transport;
+        this.maxConnections = maxConnections;
+        this.maxConnectionsPerRoute = maxConnectionsPerRoute;
+        this.keepAliveSeconds = keepAliveSeconds;
+        this.connectTimeoutMillis = connectTimeoutMillis;
+        this.readTimeoutMillis = readTimeoutMillis;
+        this.gzip = gzip;
+    }
+
+    /**
+     * @return whether the App Engine URL Fetch transport is used, which the cloud storage client selects by itself on App Engine.
+     */
+    boolean isUrlFetch() {
+        return URL_FETCH.equals(transport);
+    }
+
+    HttpTransport createTransport() {
+        switch (transport) {
+            case NET_HTTP:
+                return new NetHttpTransport();
+            case APACHE:
+                return createApacheTransport();
+            default:
+                return UrlFetchTransport.getDefaultInstance();
+        }
+    }
+
+    /**
+     * Apply the timeouts and compression setting after {@code delegate}, which usually adds credentials.
+     */
+    HttpRequestInitializer initializer(HttpRequestInitializer delegate) {
+        return request -> {
+            if (delegate != null) {
+                delegate.initialize(request);
+            }
+            request.setConnectTimeout(connectTimeoutMillis);
+            request.setReadTimeout(readTimeoutMillis);
+            if (!gzip) {
+                request.getHeaders().setAcceptEncoding(null);
+            }
+        };
+    }
+
+    /**
+     * @return options that make the cloud storage client use {@code httpTransport} with the same timeouts.
+     */
+    HttpTransportOptions storageTransportOptions(HttpTransport httpTransport) {
+        return HttpTransportOptions.newBuilder()
+                .setHttpTransportFactory(() -> httpTransport)
+                .setConnectTimeout(connectTimeoutMillis)
+                .setReadTimeout(readTimeoutMillis)
+                .build();
+    }
+
+    private HttpTransport createApacheTransport() {
+        PoolingHttpClientConnectionManager connectionManager = new PoolingHttpClientConnectionManager();
+        connectionManager.setMaxTotal(maxConnections);
+        connectionManager.setDefaultMaxPerRoute(maxConnectionsPerRoute);
+
+        HttpClientBuilder builder = ApacheHttpTransport.newDefaultHttpClientBuilder()
+                .setConnectionManager(connectionManager)
+                .setDefaultRequestConfig(RequestConfig.custom()
+                        .setConnectTimeout(connectTimeoutMillis)
+                        .setSocketTimeout(readTimeoutMillis)
+                        .build());
+        if (keepAliveSeconds == 0) {
+            builder.setConnectionReuseStrategy(NoConnectionReuseStrategy.INSTANCE);
+        } else {
+            builder.setKeepAliveStrategy((response, context) -> TimeUnit.SECONDS.toMillis(keepAliveSeconds))
+                    .evictIdleConnections(keepAliveSeconds, TimeUnit.SECONDS);
+        }
+        // google-http-client asks for and decompresses gzip responses itself. If HttpClient decompressed them too, ranged reads of
+        // gzip encoded objects would be decompressed from the middle of the stream.
+        builder.disableContentCompression();
+        return new ApacheHttpTransport(builder.build());
+    }
+
+    @Override
+    public String toString() {
+        return String.format("HttpTransportSettings{transport=%s, maxConnections=%s, maxConnectionsPerRoute=%s, keepAliveSeconds=%s, " +
+                        "connectTimeoutMillis=%s, readTimeoutMillis=%s, gzip=%s}", transport, maxConnections, maxConnectionsPerRoute,
+                keepAliveSeconds, connectTimeoutMillis, readTimeoutMillis, gzip);
+    }
+}
@@ -0,0 +1,41 @@
+package com.mondomob.spring.cloudstorage;
+
+import com.google.cloud.storage.Storage;
+import com.google.common.base.Supplier;
+import com.google.common.base.Suppliers;
+import com.google.common.reflect.AbstractInvocationHandler;
+import com.google.common.reflect.Reflection;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+
+/**
+ * A {@link Storage} that creates the real client the first time one of its methods is called. Creating a client resolves
+ * credentials and the project id, which can take seconds on a cold instance, so deferring it keeps that off application startup.
+ * The client is created once, by whichever thread gets there first, and then shared.
+ */
+class LazyStorage extends AbstractInvocationHandler {
+    private final Supplier<Storage> storage;
+
+    private LazyStorage(Supplier<Storage> factory) {
+        this.storage = Suppliers.memoize(factory);
+    }
+
+    static Storage create(Supplier<Storage> factory) {
+        return Reflection.newProxy(Storage.class, new LazyStorage(factory));
+    }
+
+    @Override
+    protected Object handleInvocation(Object proxy, Method method, Object[] args) throws Throwable {
+        try {
+            return method.invoke(storage.get(), args);
+        } catch (InvocationTargetException e) {
+            throw e.getCause();
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "LazyStorage";
+    }
+}
@@ -0,0 +1,73 @@
+package com.mondomob.spring.cloudstorage;
+
+import com.google.cloud.storage.Storage;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Options for {@link CloudStorageService#streamFiles(String, String, ListFilesOptions)}.
+ */
+public class ListFilesOptions {
+    private Integer pageSize;
+    private Storage.BlobField[] fields = new Storage.BlobField[0];
+    private boolean currentDirectory;
+    private boolean prefetchNextPage;
+
+    /**
+     * Number of objects requested per page. If not set the service's configured page size is used.
+     */
+    public ListFilesOptions pageSize(int pageSize) {
+        this.pageSize = pageSize;
+        return this;
+    }
+
+    /**
+     * Only return the given fields of each object. The bucket and name are always returned.
+     */
+    public ListFilesOptions fields(Storage.BlobField... fields) {
+        this.fields = fields;
+        return this;
+    }
+
+    /**
+     * Only list objects directly under the base path. Deeper "sub-directories" are returned as blobs for which
+     * {@link com.google.cloud.storage.Blob#isDirectory()} is true.
+     */
+    public ListFilesOptions currentDirectory() {
+        this.currentDirectory = true;
+        return this;
+    }
+
+    /**
+     * Request the next page in the background while the current page is consumed.
+     */
+    public ListFilesOptions prefetchNextPage() {
+        this.prefetchNextPage = true;
+        return this;
+    }
+
+    boolean isPrefetchNextPage() {
+        return prefetchNextPage;
+    }
+
+    Storage.BlobListOption[] toBlobListOptions(String basePath, int defaultPageSize) {
+        List<Storage.BlobListOption> options = new ArrayList<>();
+        options.add(Storage.BlobListOption.prefix(basePath));
+        options.add(Storage.BlobListOption.pageSize(pageSize == null ? defaultPageSize : pageSize));
+        if (fields.length > 0) {
+            options.add(Storage.BlobListOption.fields(fields));
+        }
+        if (currentDirectory) {
+            options.add(Storage.BlobListOption.currentDirectory());
+        }
+        return options.toArray(new Storage.BlobListOption[0]);
+    }
+
+    @Override
+    public String toString() {
+        return String.format("ListFilesOptions{pageSize=%s, fields=%s, currentDirectory=%s, prefetchNextPage=%s}",
+                pageSize, Arrays.toString(fields), currentDirectory, prefetchNextPage);
+    }
+}
@@ -0,0 +1,66 @@
+package com.mondomob.spring.cloudstorage;
+
+import com.mondomob.spring.cloudstorage.metrics.StorageMetrics;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Records a read from when the stream is opened until it is closed, along with the number of bytes read.
+ */
+class MeteredInputStream extends FilterInputStream {
+    private final StorageMetrics metrics;
+    private final String bucketName;
+    private final long start = System.nanoTime();
+    private long bytesRead;
+    private boolean failed;
+    private boolean closed;
+
+    MeteredInputStream(InputStream in, StorageMetrics metrics, String bucketName) {
+        super(in);
+        this.metrics = metrics;
+        this.bucketName = bucketName;
+    }
+
+    @Override
+    public int read() throws IOException {
+        try {
+            int value = super.read();
+            if (value >= 0) {
+                bytesRead++;
+            }
+            return value;
+        } catch (IOException e) {
+            failed = true;
+            throw e;
+        }
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        try {
+            int count = super.read(b, off, len);
+            if (count > 0) {
+                bytesRead += count;
+            }
+            return count;
+        } catch (IOException e) {
+            failed = true;
+            throw e;
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            super.close();
+        } finally {
+            if (!closed) {
+                closed = true;
+                metrics.recordOperation(StorageMetrics.READ, bucketName, System.nanoTime() - start, !failed);
+                metrics.recordBytes(StorageMetrics.READ, bucketName, bytesRead);
+            }
+        }
+    }
+}
@@ -0,0 +1,305 @@
+package com.mondomob.spring.cloudstorage;
+
+import com.google.cloud.WriteChannel;
+import com.google.cloud.storage.Blob;
+import com.google.cloud.storage.BlobId;
+import com.google.cloud.storage.BlobInfo;
+import com.google.cloud.storage.Storage;
+import com.google.common.collect.Lists;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.util.Assert;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.SequenceInputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * Uploads large objects as several parts in parallel and joins them with {@link Storage#compose(Storage.ComposeRequest)}.
+ * Parts are written to temporary objects next to the target which are always deleted once the upload completes or fails.
+ * <p>
+ * Note that composite objects only have a CRC32C checksum, they do not have an MD5 hash.
+ *
+ * @see <a href="https://cloud.google.com/storage/docs/composite-objects">Composite objects</a>
+ */
+class ParallelCompositeUploader {
+    static final long DEFAULT_THRESHOLD = 150L * 1024 * 1024;
+    static final long DEFAULT_PART_SIZE = 32L * 1024 * 1024;
+    static final int DEFAULT_PARALLELISM = 4;
+    static final int MAX_COMPOSE_SOURCES = 32;
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(ParallelCompositeUploader.class);
+    private static final int TRANSFER_BUFFER_SIZE = 256 * 1024;
+
+    private final Storage storage;
+    private final long threshold;
+    private final long partSize;
+    private final int parallelism;
+    private final CallThreads threads;
+
+    ParallelCompositeUploader(Storage storage, long threshold, long partSize, int parallelism) {
+        this(storage, threshold, partSize, parallelism, new CallThreads());
+    }
+
+    ParallelCompositeUploader(Storage storage, long threshold, long partSize, int parallelism, CallThreads threads) {
+        Assert.isTrue(partSize > 0 && partSize <= Integer.MAX_VALUE - 8, "partSize must be positive and fit in a byte array");
+        Assert.isTrue(parallelism > 0, "parallelism must be positive");
+        this.storage = storage;
+        this.threshold = threshold;
+        this.partSize = partSize;
+        this.parallelism = parallelism;
+        this.threads = threads;
+    }
+
+    long getThreshold() {
+        return threshold;
+    }
+
+    /**
+     * Upload a file, splitting it into at most {@value MAX_COMPOSE_SOURCES} parts that are read and uploaded concurrently.
+     * Each part is streamed from the file so memory use is bounded by {@code writeChunkSize} per parallel upload.
+     */
+    Blob upload(BlobInfo target, Path source, int writeChunkSize, Storage.BlobTargetOption... targetOptions) throws IOException {
+        long size = Files.size(source);
+        long filePartSize = Math.max(partSize, (size + MAX_COMPOSE_SOURCES - 1) / MAX_COMPOSE_SOURCES);
+        String uploadId = UUID.randomUUID().toString();
+        List<BlobId> temporaries = new ArrayList<>();
+        List<Future<?>> uploads = new ArrayList<>();
+        ExecutorService executor = newExecutor();
+
+        try {
+            for (long offset = 0; offset < size; offset += filePartSize) {
+                BlobId partId = partId(target, uploadId, temporaries.size());
+                long position = offset;
+                long length = Math.min(filePartSize, size - offset);
+                temporaries.add(partId);
+                uploads.add(executor.submit(() -> uploadPart(partId, source, position, length, writeChunkSize)));
+            }
+            await(target, uploads);
+            return compose(target, uploadId, temporaries, targetOptions);
+        } finally {
+            shutdown(executor);
+            delete(temporaries);
+        }
+    }
+
+    /**
+     * Upload the content of a channel of unknown length. Content is read into memory until the threshold is reached, and content
+     * that ends before that is passed to {@code singleUpload} to be streamed as one object. Larger content is split into parts that
+     * are read one after another and uploaded concurrently, so once the threshold has been passed at most {@code parallelism} parts
+     * are held in memory at any time.
+     */
+    Blob upload(BlobInfo target, ReadableByteChannel source, Function<ReadableByteChannel, Blob> singleUpload,
+                Storage.BlobTargetOption... targetOptions) throws IOException {
+        Deque<byte[]> buffered = new ArrayDeque<>();
+        long read = 0;
+        byte[] part;
+        do {
+            part = readPart(source);
+            buffered.add(part);
+            read += part.length;
+        } while (part.length == partSize && read < threshold);
+        if (part.length < partSize) {
+            return singleUpload.apply(channel(buffered));
+        }
+
+        String uploadId = UUID.randomUUID().toString();
+        List<BlobId> temporaries = new ArrayList<>();
+        List<Future<?>> uploads = new ArrayList<>();
+        Semaphore permits = new Semaphore(parallelism);
+        ExecutorService executor = newExecutor();
+
+        try {
+            boolean more = true;
+            while (more && !hasFailed(uploads)) {
+                acquire(permits);
+                byte[] content = buffered.isEmpty() ? readPart(source) : buffered.poll();
+                if (content.length == 0) {
+                    permits.release();
+                    break;
+                }
+                more = content.length == partSize;
+                BlobId partId = partId(target, uploadId, temporaries.size());
+                temporaries.add(partId);
+                uploads.add(executor.submit(() -> {
+                    try {
+                        storage.create(BlobInfo.newBuilder(partId).build(), content);
+                    } finally {
+                        permits.release();
+                    }
+                }));
+            }
+            await(target, uploads);
+            return compose(target, uploadId, temporaries, targetOptions);
+        } finally {
+            shutdown(executor);
+            delete(temporaries);
+        }
+    }
+
+    private Void uploadPart(BlobId partId, Path source, long position, long length, int writeChunkSize) throws IOException {
+        try (FileChannel channel = FileChannel.open(source, StandardOpenOption.READ);
+             WriteChannel writer = storage.writer(BlobInfo.newBuilder(partId).build())) {
+            writer.setChunkSize(writeChunkSize);
+            ByteBuffer buffer = ByteBuffer.allocate(TRANSFER_BUFFER_SIZE);
+            long remaining = length;
+            channel.position(position);
+            while (remaining > 0) {
+                buffer.limit((int) Math.min(buffer.capacity(), remaining));
+                int read = channel.read(buffer);
+                if (read < 0) {
+                    throw new IOException(String.format("Unexpected end of file %s", source));
+                }
+                buffer.flip();
+                while (buffer.hasRemaining()) {
+                    writer.write(buffer);
+                }
+                buffer.clear();
+                remaining -= read;
+            }
+        }
+        return null;
+    }
+
+    private Blob compose(BlobInfo target, String uploadId, List<BlobId> temporaries, Storage.BlobTargetOption... targetOptions) {
+        List<String> sources = temporaries.stream().map(BlobId::getName).collect(Collectors.toList());
+
+        // A single compose request accepts a limited number of sources, so larger uploads are joined in rounds.
+        while (sources.size() > MAX_COMPOSE_SOURCES) {
+            List<String> composed = new ArrayList<>();
+            for (List<String> group : Lists.partition(sources, MAX_COMPOSE_SOURCES)) {
+                BlobId intermediate = partId(target, uploadId, temporaries.size());
+                temporaries.add(intermediate);
+                storage.compose(Storage.ComposeRequest.newBuilder()
+                        .addSource(group)
+                        .setTarget(BlobInfo.newBuilder(intermediate).build())
+                        .build());
+                composed.add(intermediate.getName());
+            }
+            sources = composed;
+        }
+
+        return storage.compose(Storage.ComposeRequest.newBuilder()
+                .addSource(sources)
+                .setTarget(target)
+                .setTargetOptions(targetOptions)
+                .build());
+    }
+
+    private void delete(List<BlobId> temporaries) {
+        if (temporaries.isEmpty()) {
+            return;
+        }
+        try {
+            storage.delete(temporaries);
+        } catch (RuntimeException e) {
+            LOGGER.warn("Unable to delete temporary composite upload parts {}: {}", temporaries, e.getMessage());
+        }
+    }
+
+    /**
+     * Read up to a part of content. The buffer grows as content arrives, so short content does not allocate a whole part.
+     */
+    private byte[] readPart(ReadableByteChannel source) throws IOException {
+        byte[] part = new byte[(int) Math.min(partSize, TRANSFER_BUFFER_SIZE)];
+        int length = 0;
+        while (true) {
+            if (length == part.length) {
+                if (length == partSize) {
+                    break;
+                }
+                part = Arrays.copyOf(part, (int) Math.min(partSize, 2L * part.length));
+            }
+            int read = source.read(ByteBuffer.wrap(part, length, part.length - length));
+            if (read < 0) {
+                break;
+            }
+            length += read;
+        }
+        return length == part.length ? part : Arrays.copyOf(part, length);
+    }
+
+    private static ReadableByteChannel channel(Collection<byte[]> content) {
+        List<InputStream> streams = content.stream().map(ByteArrayInputStream::new).collect(Collectors.toList());
+        return Channels.newChannel(new SequenceInputStream(Collections.enumeration(streams)));
+    }
+
+    private ExecutorService newExecutor() {
+        return threads.newFixedThreadPool(parallelism, "gcs-composite-upload-%d");
+    }
+
+    /**
+     * Stop the executor and wait for parts that are still uploading, so that none is created after the temporaries are deleted.
+     */
+    private static void shutdown(ExecutorService executor) {
+        executor.shutdownNow();
+        try {
+            executor.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            LOGGER.warn("Interrupted waiting for composite upload parts to finish, some temporary parts may not be deleted");
+        }
+    }
+
+    private static BlobId partId(BlobInfo target, String uploadId, int index) {
+        return BlobId.of(target.getBucket(), String.format("%s.%s.part-%d", target.getName(), uploadId, index));
+    }
+
+    private static boolean hasFailed(List<Future<?>> uploads) {
+        for (Future<?> upload : uploads) {
+            if (upload.isDone()) {
+                try {
+                    upload.get();
+                } catch (ExecutionException | InterruptedException e) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    private static void await(BlobInfo target, List<Future<?>> uploads) {
+        for (Future<?> upload : uploads) {
+            try {
+                upload.get();
+            } catch (ExecutionException e) {
+                throw new RuntimeException(String.format("Cannot upload part of %s: %s", target.getName(), e.getCause().getMessage()), e.getCause());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new RuntimeException(String.format("Interrupted uploading %s", target.getName()), e);
+            }
+        }
+    }
+
+    private static void acquire(Semaphore permits) {
+        try {
+            permits.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted waiting for a composite upload slot", e);
+        }
+    }
+}
@@ -0,0 +1,227 @@
+package com.mondomob.spring.cloudstorage;
+
+import com.google.auth.Credentials;
+import com.google.auth.oauth2.AccessToken;
+import com.google.auth.oauth2.OAuth2Credentials;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.mondomob.spring.cloudstorage.metrics.StorageMetrics;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.util.Assert;
+
+import java.io.IOException;
+import java.net.URI;
+import java.time.Clock;
+import java.time.Duration;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Wraps OAuth2 credentials so that access tokens are refreshed on a background thread before they expire, instead of by whichever
+ * request finds the token expired. Requests only wait for a token when there is none yet, or when the background refreshes have
+ * failed until the token expired. A request that has to wait fetches the token on its own thread, and requests that need a token
+ * at the same time share that refresh.
+ * <p>
+ * Each refresh is timed as the {@value StorageMetrics#REFRESH_CREDENTIALS} operation. The first token is fetched when it is first
+ * needed, and background refreshes stop when the credentials are closed. On App Engine standard the background thread must come
+ * from {@code ThreadManager.backgroundThreadFactory()}, as other threads cannot call App Engine services.
+ */
+public class PreRefreshingCredentials extends Credentials implements AutoCloseable {
+    public static final long DEFAULT_REFRESH_MARGIN_SECONDS = 300;
+    /**
+     * A token is refreshed before use once it has less than this left, the same as the client library.
+     */
+    static final long MINIMUM_VALIDITY_MILLIS = 60 * 1000;
+    static final long RETRY_DELAY_MILLIS = 10 * 1000;
+    private static final Logger LOGGER = LoggerFactory.getLogger(PreRefreshingCredentials.class);
+
+    private final OAuth2Credentials delegate;
+    private final long refreshMarginMillis;
+    private final ScheduledExecutorService scheduler;
+    private final Clock clock;
+    private StorageMetrics metrics = StorageMetrics.NONE;
+    private volatile AccessToken token;
+    private CompletableFuture<AccessToken> refreshing;
+    private ScheduledFuture<?> nextRefresh;
+    private boolean closed;
+
+    /**
+     * @param delegate      credentials that fetch access tokens, already scoped if they need scopes
+     * @param refreshMargin how long before a token expires it is refreshed in the background
+     */
+    public PreRefreshingCredentials(OAuth2Credentials delegate, Duration refreshMargin) {
+        this(delegate, refreshMargin, new ThreadFactoryBuilder()
+                .setDaemon(true)
+                .setNameFormat("gcs-credentials-refresh-%d")
+                .build());
+    }
+
+    /**
+     * @param delegate      credentials that fetch access tokens, already scoped if they need scopes
+     * @param refreshMargin how long before a token expires it is refreshed in the background
+     * @param threadFactory creates the thread background refreshes run on
+     */
+    public PreRefreshingCredentials(OAuth2Credentials delegate, Duration refreshMargin, ThreadFactory threadFactory) {
+        this(delegate, refreshMargin, Executors.newSingleThreadScheduledExecutor(threadFactory), Clock.systemUTC());
+    }
+
+    PreRefreshingCredentials(OAuth2Credentials delegate, Duration refreshMargin, ScheduledExecutorService scheduler, Clock clock) {
+        Assert.notNull(delegate, "delegate required");
+        Assert.isTrue(!refreshMargin.isNegative(), "refreshMargin must not be negative");
+        this.delegate = delegate;
+        this.refreshMarginMillis = refreshMargin.toMillis();
+        this.scheduler = scheduler;
+        this.clock = clock;
+    }
+
+    /**
+     * Record how long each refresh takes and whether it succeeded.
+     */
+    public void setMetrics(StorageMetrics metrics) {
+        Assert.notNull(metrics, "metrics required");
+        this.metrics = metrics;
+    }
+
+    @Override
+    public String getAuthenticationType() {
+        return delegate.getAuthenticationType();
+    }
+
+    @Override
+    public Map<String, List<String>> getRequestMetadata(URI uri) throws IOException {
+        AccessToken current = token;
+        if (current == null || remainingMillis(current) < MINIMUM_VALIDITY_MILLIS) {
+            current = refreshNow();
+        }
+        return Collections.singletonMap("Authorization", Collections.singletonList(String.format("Bearer %s", current.getTokenValue())));
+    }
+
+    @Override
+    public boolean hasRequestMetadata() {
+        return true;
+    }
+
+    @Override
+    public boolean hasRequestMetadataOnly() {
+        return true;
+    }
+
+    /**
+     * Fetch a new token now, or wait for the refresh already in progress.
+     */
+    @Override
+    public void refresh() throws IOException {
+        refreshNow();
+    }
+
+    @Override
+    public synchronized void close() {
+        closed = true;
+        if (nextRefresh != null) {
+            nextRefresh.cancel(false);
+        }
+        scheduler.shutdownNow();
+    }
+
+    /**
+     * Refresh on the calling thread, unless another thread is already refreshing in which case wait for it.
+     */
+    private AccessToken refreshNow() throws IOException {
+        CompletableFuture<AccessToken> refresh;
+        boolean started = false;
+        synchronized (this) {
+            if (refreshing == null) {
+                refreshing = new CompletableFuture<>();
+                started = true;
+            }
+            refresh = refreshing;
+        }
+        if (started) {
+            refresh(refresh);
+        }
+        return await(refresh);
+    }
+
+    private void refreshInBackground() {
+        CompletableFuture<AccessToken> refresh;
+        synchronized (this) {
+            if (refreshing != null) {
+                return;
+            }
+            refresh = new CompletableFuture<>();
+            refreshing = refresh;
+        }
+        refresh(refresh);
+    }
+
+    private void refresh(CompletableFuture<AccessToken> refresh) {
+        try {
+            AccessToken refreshed = metrics.time(StorageMetrics.REFRESH_CREDENTIALS, null, delegate::refreshAccessToken);
+            synchronized (this) {
+                token = refreshed;
+                refreshing = null;
+                if (refreshed.getExpirationTime() != null) {
+                    long remaining = remainingMillis(refreshed);
+                    scheduleRefresh(Math.max(remaining / 2, remaining - refreshMarginMillis));
+                }
+            }
+            refresh.complete(refreshed);
+        } catch (Exception e) {
+            synchronized (this) {
+                refreshing = null;
+                if (token != null) {
+                    LOGGER.warn("Cannot refresh gcs credentials, retrying in {}ms: {}", RETRY_DELAY_MILLIS, e.getMessage());
+                    scheduleRefresh(RETRY_DELAY_MILLIS);
+                }
+            }
+            refresh.completeExceptionally(e);
+        }
+    }
+
+    private synchronized void scheduleRefresh(long delayMillis) {
+        if (closed) {
+            return;
+        }
+        if (nextRefresh != null) {
+            nextRefresh.cancel(false);
+        }
+        try {
+            nextRefresh = scheduler.schedule(this::refreshInBackground, delayMillis, TimeUnit.MILLISECONDS);
+        } catch (RuntimeException e) {
+            // Tokens are still refreshed by the requests that find them expired.
+            LOGGER.warn("Cannot schedule gcs credentials refresh: {}", e.getMessage());
+        }
+    }
+
+    private long remainingMillis(AccessToken accessToken) {
+        if (accessToken.getExpirationTime() == null) {
+            return Long.MAX_VALUE;
+        }
+        return accessToken.getExpirationTime().getTime() - clock.millis();
+    }
+
+    private static AccessToken await(CompletableFuture<AccessToken> refresh) throws IOException {
+        try {
+            return refresh.get();
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new IOException(String.format("Cannot refresh credentials: %s", e.getCause().getMessage()), e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted refreshing credentials", e);
+        }
+    }
+}
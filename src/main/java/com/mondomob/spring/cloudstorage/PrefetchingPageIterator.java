@@ -0,0 +1,69 @@
+package com.mondomob.spring.cloudstorage;
+
+import com.google.api.gax.paging.Page;
+
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+/**
+ * Iterates over the values of every page, requesting the next page in the background as soon as the current one is available.
+ * At most two pages are held in memory at once.
+ */
+class PrefetchingPageIterator<T> implements Iterator<T> {
+    private final ExecutorService executor;
+    private Iterator<T> values;
+    private Future<Page<T>> nextPage;
+
+    PrefetchingPageIterator(Page<T> firstPage, ExecutorService executor) {
+        this.executor = executor;
+        setPage(firstPage);
+    }
+
+    @Override
+    public boolean hasNext() {
+        while (!values.hasNext()) {
+            if (nextPage == null) {
+                return false;
+            }
+            setPage(awaitNextPage());
+        }
+        return true;
+    }
+
+    @Override
+    public T next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        return values.next();
+    }
+
+    void cancel() {
+        if (nextPage != null) {
+            nextPage.cancel(true);
+            nextPage = null;
+        }
+    }
+
+    private void setPage(Page<T> page) {
+        values = page.getValues().iterator();
+        nextPage = page.hasNextPage() ? executor.submit(page::getNextPage) : null;
+    }
+
+    private Page<T> awaitNextPage() {
+        try {
+            return nextPage.get();
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new RuntimeException(String.format("Cannot list next page: %s", e.getCause().getMessage()), e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted listing next page", e);
+        }
+    }
+}
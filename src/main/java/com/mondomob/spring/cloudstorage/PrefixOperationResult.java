@@ -0,0 +1,58 @@
+package com.mondomob.spring.cloudstorage;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Progress and outcome of a prefix level copy, move or delete. It is updated from worker threads while the operation runs, so the
+ * same instance can be used to report progress.
+ */
+public class PrefixOperationResult {
+    private final AtomicLong completed = new AtomicLong();
+    private final AtomicLong skipped = new AtomicLong();
+    private final Map<String, String> failures = new ConcurrentHashMap<>();
+
+    /**
+     * @return number of objects copied, moved or deleted.
+     */
+    public long getCompleted() {
+        return completed.get();
+    }
+
+    /**
+     * @return number of objects skipped because they had already been copied by an earlier run.
+     */
+    public long getSkipped() {
+        return skipped.get();
+    }
+
+    public long getFailed() {
+        return failures.size();
+    }
+
+    /**
+     * @return failure message for each object that could not be processed, keyed by object name.
+     */
+    public Map<String, String> getFailures() {
+        return Collections.unmodifiableMap(failures);
+    }
+
+    void completed() {
+        completed.incrementAndGet();
+    }
+
+    void skipped() {
+        skipped.incrementAndGet();
+    }
+
+    void failed(String objectName, Exception e) {
+        failures.put(objectName, String.valueOf(e.getMessage()));
+    }
+
+    @Override
+    public String toString() {
+        return String.format("PrefixOperationResult{completed=%s, skipped=%s, failed=%s}", getCompleted(), getSkipped(), getFailed());
+    }
+}
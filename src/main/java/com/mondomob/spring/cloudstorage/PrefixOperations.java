@@ -0,0 +1,173 @@
+package com.mondomob.spring.cloudstorage;
+
+import com.google.cloud.storage.Blob;
+import com.google.cloud.storage.BlobId;
+import com.google.cloud.storage.Storage;
+import com.google.common.collect.Iterators;
+import org.springframework.util.Assert;
+
+import java.util.Iterator;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+
+/**
+ * Copies, moves or deletes every object under a prefix. The listing is streamed and each object is handed to a bounded pool of
+ * workers, so memory use does not depend on the number of objects. Objects that already exist at the target with the same size
+ * and CRC32C are skipped, which lets an interrupted operation be re-run.
+ */
+class PrefixOperations {
+    static final int DEFAULT_CONCURRENCY = 16;
+
+    private final Storage storage;
+    private final RewriteCopier rewriteCopier;
+    private final int concurrency;
+    private final int pageSize;
+    private final CallThreads threads;
+
+    PrefixOperations(Storage storage, RewriteCopier rewriteCopier, int concurrency, int pageSize) {
+        this(storage, rewriteCopier, concurrency, pageSize, new CallThreads());
+    }
+
+    PrefixOperations(Storage storage, RewriteCopier rewriteCopier, int concurrency, int pageSize, CallThreads threads) {
+        Assert.isTrue(concurrency > 0, "concurrency must be positive");
+        this.storage = storage;
+        this.rewriteCopier = rewriteCopier;
+        this.concurrency = concurrency;
+        this.pageSize = pageSize;
+        this.threads = threads;
+    }
+
+    PrefixOperationResult copy(String fromBucketName, String fromPrefix, String toBucketName, String toPrefix,
+                               Consumer<PrefixOperationResult> progress) {
+        assertNoOverlap(fromBucketName, fromPrefix, toBucketName, toPrefix);
+        return execute(list(fromBucketName, fromPrefix), progress, (source, result) -> {
+            BlobId target = BlobId.of(toBucketName, toPrefix + source.getName().substring(fromPrefix.length()));
+            if (alreadyCopied(source, target)) {
+                result.skipped();
+            } else {
+                rewriteCopier.copy(BlobId.of(source.getBucket(), source.getName(), source.getGeneration()), target, CopyProgressListener.NONE);
+                result.completed();
+            }
+        });
+    }
+
+    PrefixOperationResult move(String fromBucketName, String fromPrefix, String toBucketName, String toPrefix,
+                               Consumer<PrefixOperationResult> progress) {
+        assertNoOverlap(fromBucketName, fromPrefix, toBucketName, toPrefix);
+        return execute(list(fromBucketName, fromPrefix), progress, (source, result) -> {
+            BlobId target = BlobId.of(toBucketName, toPrefix + source.getName().substring(fromPrefix.length()));
+            if (alreadyCopied(source, target)) {
+                // copied by an earlier run that stopped before deleting the source
+                storage.delete(BlobId.of(source.getBucket(), source.getName()), Storage.BlobSourceOption.generationMatch(source.getGeneration()));
+                result.skipped();
+            } else {
+                rewriteCopier.move(source, target, CopyProgressListener.NONE);
+                result.completed();
+            }
+        });
+    }
+
+    PrefixOperationResult delete(String bucketName, String prefix, Consumer<PrefixOperationResult> progress) {
+        Iterator<List<Blob>> batches = Iterators.partition(list(bucketName, prefix), BatchOperations.MAX_BATCH_SIZE);
+        return execute(batches, progress, (batch, result) -> {
+            List<BlobId> blobIds = batch.stream()
+                    .map(blob -> BlobId.of(blob.getBucket(), blob.getName()))
+                    .collect(Collectors.toList());
+            List<Boolean> deleted = storage.delete(blobIds);
+            for (int i = 0; i < blobIds.size(); i++) {
+                if (deleted.get(i)) {
+                    result.completed();
+                } else {
+                    result.failed(blobIds.get(i).getName(), new IllegalStateException("Not deleted"));
+                }
+            }
+        });
+    }
+
+    /**
+     * The listing is read while objects are written, so a target prefix inside the source prefix, or the other way round, would
+     * list objects that have just been copied and copy them again without end.
+     */
+    private static void assertNoOverlap(String fromBucketName, String fromPrefix, String toBucketName, String toPrefix) {
+        Assert.isTrue(!fromBucketName.equals(toBucketName) || !(toPrefix.startsWith(fromPrefix) || fromPrefix.startsWith(toPrefix)),
+                String.format("Prefixes %s and %s overlap in bucket %s", fromPrefix, toPrefix, fromBucketName));
+    }
+
+    private Iterator<Blob> list(String bucketName, String prefix) {
+        return storage.list(bucketName,
+                Storage.BlobListOption.prefix(prefix),
+                Storage.BlobListOption.pageSize(pageSize),
+                Storage.BlobListOption.fields(Storage.BlobField.GENERATION, Storage.BlobField.SIZE, Storage.BlobField.CRC32C))
+                .iterateAll()
+                .iterator();
+    }
+
+    private boolean alreadyCopied(Blob source, BlobId target) {
+        Blob existing = storage.get(target, Storage.BlobGetOption.fields(Storage.BlobField.SIZE, Storage.BlobField.CRC32C));
+        return existing != null
+                && Objects.equals(existing.getSize(), source.getSize())
+                && Objects.equals(existing.getCrc32c(), source.getCrc32c());
+    }
+
+    private <T> PrefixOperationResult execute(Iterator<T> items, Consumer<PrefixOperationResult> progress, Operation<T> operation) {
+        PrefixOperationResult result = new PrefixOperationResult();
+        Semaphore permits = new Semaphore(concurrency);
+        ExecutorService executor = threads.newFixedThreadPool(concurrency, "gcs-prefix-%d");
+
+        try {
+            while (items.hasNext()) {
+                T item = items.next();
+                permits.acquire();
+                executor.execute(() -> {
+                    try {
+                        operation.apply(item, result);
+                    } catch (RuntimeException e) {
+                        result.failed(describe(item), e);
+                    } finally {
+                        try {
+                            progress.accept(result);
+                        } finally {
+                            permits.release();
+                        }
+                    }
+                });
+            }
+            permits.acquire(concurrency);
+            return result;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(String.format("Interrupted after %s", result), e);
+        } finally {
+            executor.shutdown();
+            awaitTermination(executor);
+        }
+    }
+
+    private static String describe(Object item) {
+        if (item instanceof Blob) {
+            return ((Blob) item).getName();
+        }
+        if (item instanceof List) {
+            return ((List<?>) item).stream().map(PrefixOperations::describe).collect(Collectors.joining(","));
+        }
+        return String.valueOf(item);
+    }
+
+    private static void awaitTermination(ExecutorService executor) {
+        try {
+            executor.awaitTermination(1, TimeUnit.MINUTES);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    @FunctionalInterface
+    private interface Operation<T> {
+        void apply(T item, PrefixOperationResult result);
+    }
+}
@@ -0,0 +1,164 @@
+package com.mondomob.spring.cloudstorage;
+
+import com.google.cloud.storage.Blob;
+import org.reactivestreams.Publisher;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferFactory;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import org.springframework.core.io.buffer.DefaultDataBufferFactory;
+import org.springframework.util.Assert;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Scheduler;
+import reactor.core.scheduler.Schedulers;
+
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.util.Iterator;
+import java.util.function.Function;
+import java.util.stream.Stream;
+
+/**
+ * Reactive adapter over {@link CloudStorageService} for WebFlux applications. Reads and writes are streamed as
+ * {@link DataBuffer}s with backpressure, and the blocking storage calls run on a separate {@link Scheduler} so event loop
+ * threads are never blocked. Neither direction holds more than a few buffers in memory.
+ */
+public class ReactiveCloudStorageService {
+    public static final int DEFAULT_BUFFER_SIZE = 256 * 1024;
+    public static final int DEFAULT_PREFETCH = 4;
+
+    private final CloudStorageService cloudStorageService;
+    private final Scheduler scheduler;
+    private final DataBufferFactory bufferFactory;
+    private final int bufferSize;
+    private final int prefetch;
+
+    public ReactiveCloudStorageService(CloudStorageService cloudStorageService) {
+        this(cloudStorageService, Schedulers.elastic(), new DefaultDataBufferFactory(), DEFAULT_BUFFER_SIZE, DEFAULT_PREFETCH);
+    }
+
+    /**
+     * @param cloudStorageService The service operations are delegated to.
+     * @param scheduler           Runs the blocking storage calls.
+     * @param bufferFactory       Allocates the buffers emitted by {@link #readFile(String, String)}.
+     * @param bufferSize          Size of each buffer emitted by {@link #readFile(String, String)}.
+     * @param prefetch            Number of buffers {@link #writeFile(String, Publisher, String, boolean)} requests ahead of the upload.
+     */
+    public ReactiveCloudStorageService(CloudStorageService cloudStorageService, Scheduler scheduler, DataBufferFactory bufferFactory,
+                                       int bufferSize, int prefetch) {
+        Assert.isTrue(bufferSize > 0, "bufferSize must be positive");
+        Assert.isTrue(prefetch > 0, "prefetch must be positive");
+        this.cloudStorageService = cloudStorageService;
+        this.scheduler = scheduler;
+        this.bufferFactory = bufferFactory;
+        this.bufferSize = bufferSize;
+        this.prefetch = prefetch;
+    }
+
+    public Flux<DataBuffer> readFile(String objectName) {
+        return DataBufferUtils.readInputStream(() -> cloudStorageService.readFile(objectName), bufferFactory, bufferSize)
+                .subscribeOn(scheduler);
+    }
+
+    /**
+     * Stream the content of an object. Each buffer is read from cloud storage only when it is requested, and the caller must
+     * release the buffers it receives.
+     *
+     * @param bucketName The bucket the object is in.
+     * @param objectName The object to read.
+     * @return The object content.
+     */
+    public Flux<DataBuffer> readFile(String bucketName, String objectName) {
+        return DataBufferUtils.readInputStream(() -> cloudStorageService.readFile(bucketName, objectName), bufferFactory, bufferSize)
+                .subscribeOn(scheduler);
+    }
+
+    public Mono<Blob> writeFile(Publisher<DataBuffer> data, String objectName) {
+        return write(data, channel -> cloudStorageService.writeFile(channel, objectName));
+    }
+
+    /**
+     * Upload content as it arrives. At most {@code prefetch} buffers are requested ahead of the upload, so a fast producer is
+     * slowed to the speed of the upload instead of being buffered in memory. Each buffer is released once it is consumed.
+     *
+     * @param bucketName     The bucket to write to.
+     * @param data           The content to write.
+     * @param objectName     The object to write.
+     * @param publicReadable Whether the object can be read publicly.
+     * @return The written blob.
+     */
+    public Mono<Blob> writeFile(String bucketName, Publisher<DataBuffer> data, String objectName, boolean publicReadable) {
+        return write(data, channel -> cloudStorageService.writeFile(bucketName, channel, objectName, publicReadable));
+    }
+
+    public Mono<Blob> getBlob(String bucketName, String objectName) {
+        return Mono.fromCallable(() -> cloudStorageService.getBlob(bucketName, objectName)).subscribeOn(scheduler);
+    }
+
+    public Mono<Boolean> deleteFile(String bucketName, String objectName) {
+        return Mono.fromCallable(() -> cloudStorageService.deleteFile(bucketName, objectName)).subscribeOn(scheduler);
+    }
+
+    private Mono<Blob> write(Publisher<DataBuffer> data, Function<ReadableByteChannel, Blob> upload) {
+        return Mono.fromCallable(() -> {
+            Stream<byte[]> chunks = Flux.from(data)
+                    .map(ReactiveCloudStorageService::toBytes)
+                    .toStream(prefetch);
+            try (ReadableByteChannel channel = new ChunkChannel(chunks)) {
+                return upload.apply(channel);
+            }
+        }).subscribeOn(scheduler);
+    }
+
+    private static byte[] toBytes(DataBuffer buffer) {
+        try {
+            byte[] bytes = new byte[buffer.readableByteCount()];
+            buffer.read(bytes);
+            return bytes;
+        } finally {
+            DataBufferUtils.release(buffer);
+        }
+    }
+
+    /**
+     * Blocking channel over a stream of chunks. Closing it cancels the upstream subscription.
+     */
+    private static class ChunkChannel implements ReadableByteChannel {
+        private final Stream<byte[]> chunks;
+        private final Iterator<byte[]> iterator;
+        private ByteBuffer current = ByteBuffer.allocate(0);
+        private boolean open = true;
+
+        ChunkChannel(Stream<byte[]> chunks) {
+            this.chunks = chunks;
+            this.iterator = chunks.iterator();
+        }
+
+        @Override
+        public int read(ByteBuffer dst) {
+            while (!current.hasRemaining()) {
+                if (!iterator.hasNext()) {
+                    return -1;
+                }
+                current = ByteBuffer.wrap(iterator.next());
+            }
+            int count = Math.min(dst.remaining(), current.remaining());
+            ByteBuffer slice = current.slice();
+            slice.limit(count);
+            dst.put(slice);
+            current.position(current.position() + count);
+            return count;
+        }
+
+        @Override
+        public boolean isOpen() {
+            return open;
+        }
+
+        @Override
+        public void close() {
+            open = false;
+            chunks.close();
+        }
+    }
+}
@@ -0,0 +1,119 @@
+package com.mondomob.spring.cloudstorage;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+/**
+ * Double buffered stream over a channel. While the caller consumes one buffer the next one is filled in the background, so the
+ * network round trip for the next chunk overlaps with the caller's processing of the current one.
+ */
+class ReadAheadInputStream extends InputStream {
+    private final ReadableByteChannel source;
+    private final ExecutorService executor;
+    private ByteBuffer current;
+    private ByteBuffer next;
+    private Future<Integer> pending;
+    private boolean eof;
+
+    ReadAheadInputStream(ReadableByteChannel source, int bufferSize, ExecutorService executor) {
+        this.source = source;
+        this.executor = executor;
+        this.current = ByteBuffer.allocate(bufferSize);
+        this.current.flip();
+        this.next = ByteBuffer.allocate(bufferSize);
+        this.pending = fillInBackground(next);
+    }
+
+    @Override
+    public int read() throws IOException {
+        return ensureAvailable() ? current.get() & 0xff : -1;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        if (len == 0) {
+            return 0;
+        }
+        if (!ensureAvailable()) {
+            return -1;
+        }
+        int read = Math.min(len, current.remaining());
+        current.get(b, off, read);
+        return read;
+    }
+
+    @Override
+    public int available() {
+        return current.remaining();
+    }
+
+    /**
+     * Close the source once any fill that is already running has finished, as interrupting it would not stop a read that is in
+     * progress. A fill that has not started yet is cancelled.
+     */
+    @Override
+    public void close() throws IOException {
+        eof = true;
+        pending.cancel(false);
+        synchronized (source) {
+            source.close();
+        }
+    }
+
+    private boolean ensureAvailable() throws IOException {
+        if (current.hasRemaining()) {
+            return true;
+        }
+        if (eof) {
+            return false;
+        }
+        if (awaitPending() < 0) {
+            eof = true;
+            return false;
+        }
+
+        ByteBuffer filled = next;
+        next = current;
+        current = filled;
+        pending = fillInBackground(next);
+        return true;
+    }
+
+    private Future<Integer> fillInBackground(ByteBuffer buffer) {
+        return executor.submit(() -> fill(buffer));
+    }
+
+    private int fill(ByteBuffer buffer) throws IOException {
+        synchronized (source) {
+            buffer.clear();
+            int total = 0;
+            int read = 0;
+            while (buffer.hasRemaining() && read >= 0 && source.isOpen()) {
+                read = source.read(buffer);
+                total += Math.max(read, 0);
+            }
+            buffer.flip();
+            return total == 0 && read < 0 ? -1 : total;
+        }
+    }
+
+    private int awaitPending() throws IOException {
+        try {
+            return pending.get();
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            throw new IOException(String.format("Read ahead failed: %s", e.getCause().getMessage()), e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted waiting for read ahead");
+        }
+    }
+}
@@ -0,0 +1,92 @@
+package com.mondomob.spring.cloudstorage;
+
+import com.google.cloud.RestorableState;
+import com.google.cloud.storage.Blob;
+import com.google.cloud.storage.BlobId;
+import com.google.cloud.storage.CopyWriter;
+import com.google.cloud.storage.Storage;
+import com.google.cloud.storage.StorageException;
+
+import java.util.Objects;
+import java.util.function.UnaryOperator;
+
+/**
+ * Copies objects with the rewrite API, calling it until the copy is complete. Large objects and copies across locations or storage
+ * classes take several calls, each of which returns a rewrite token that is reported to a {@link CopyProgressListener} so the copy
+ * can be resumed after a crash.
+ *
+ * @see <a href="https://cloud.google.com/storage/docs/json_api/v1/objects/rewrite">Objects: rewrite</a>
+ */
+class RewriteCopier {
+    private final Storage storage;
+    private final Long megabytesPerCall;
+
+    /**
+     * @param megabytesPerCall maximum megabytes copied per rewrite call, or null to let cloud storage decide.
+     */
+    RewriteCopier(Storage storage, Long megabytesPerCall) {
+        this.storage = storage;
+        this.megabytesPerCall = megabytesPerCall;
+    }
+
+    Blob copy(BlobId source, BlobId target, CopyProgressListener listener) {
+        Storage.CopyRequest.Builder request = Storage.CopyRequest.newBuilder()
+                .setSource(source)
+                .setTarget(target);
+        if (megabytesPerCall != null) {
+            request.setMegabytesCopiedPerChunk(megabytesPerCall);
+        }
+        return complete(storage.copy(request.build()), listener);
+    }
+
+    Blob resume(RestorableState<CopyWriter> state, CopyProgressListener listener) {
+        return complete(state.restore(), listener);
+    }
+
+    Blob move(BlobId source, BlobId target, CopyProgressListener listener) {
+        return move(source, target, listener, UnaryOperator.identity());
+    }
+
+    /**
+     * @param beforeDelete called with the verified copy before the source is deleted, for example to change its access. If it
+     *                     throws, the source is kept.
+     */
+    Blob move(BlobId source, BlobId target, CopyProgressListener listener, UnaryOperator<Blob> beforeDelete) {
+        Blob sourceBlob = storage.get(source);
+        if (sourceBlob == null) {
+            throw new StorageException(404, String.format("File %s does not exist in bucket %s", source.getName(), source.getBucket()));
+        }
+        return move(sourceBlob, target, listener, beforeDelete);
+    }
+
+    Blob move(Blob source, BlobId target, CopyProgressListener listener) {
+        return move(source, target, listener, UnaryOperator.identity());
+    }
+
+    /**
+     * Copy the current generation of the source, check the copy matches and then delete the source only if it is still that
+     * generation. A crash part way through leaves the source in place and a concurrent overwrite of the source is never deleted.
+     */
+    private Blob move(Blob source, BlobId target, CopyProgressListener listener, UnaryOperator<Blob> beforeDelete) {
+        Long generation = source.getGeneration();
+        Blob copied = copy(BlobId.of(source.getBucket(), source.getName(), generation), target, listener);
+
+        if (!Objects.equals(source.getSize(), copied.getSize()) || !Objects.equals(source.getCrc32c(), copied.getCrc32c())) {
+            throw new IllegalStateException(String.format("Copy of %s to %s does not match the source, the source has not been deleted",
+                    source.getName(), target.getName()));
+        }
+
+        Blob moved = beforeDelete.apply(copied);
+        storage.delete(BlobId.of(source.getBucket(), source.getName()), Storage.BlobSourceOption.generationMatch(generation));
+        return moved;
+    }
+
+    private Blob complete(CopyWriter writer, CopyProgressListener listener) {
+        listener.onProgress(writer.capture(), writer.getTotalBytesCopied(), writer.getBlobSize());
+        while (!writer.isDone()) {
+            writer.copyChunk();
+            listener.onProgress(writer.capture(), writer.getTotalBytesCopied(), writer.getBlobSize());
+        }
+        return writer.getResult();
+    }
+}
@@ -0,0 +1,78 @@
+package com.mondomob.spring.cloudstorage;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.util.concurrent.UncheckedExecutionException;
+import com.mondomob.spring.cloudstorage.apiclient.SignedUrl;
+import org.springframework.util.Assert;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * Bounded cache of signed urls keyed by bucket and object. A cached url is only returned while it is valid for at least the
+ * safety margin, so a client is never handed a link that expires before it can be used. Concurrent requests for the same
+ * object share a single signing call.
+ */
+class SignedUrlCache {
+    static final long DEFAULT_MAXIMUM_SIZE = 10_000;
+    static final long DEFAULT_SAFETY_MARGIN_SECONDS = 60;
+
+    private final Cache<String, SignedUrl> cache;
+    private final Duration safetyMargin;
+    private final Clock clock;
+
+    SignedUrlCache(long maximumSize, Duration lifetime, Duration safetyMargin) {
+        this(maximumSize, lifetime, safetyMargin, Clock.systemUTC());
+    }
+
+    SignedUrlCache(long maximumSize, Duration lifetime, Duration safetyMargin, Clock clock) {
+        Assert.isTrue(!safetyMargin.isNegative(), "safetyMargin must not be negative");
+        Assert.isTrue(safetyMargin.compareTo(lifetime) < 0, "safetyMargin must be shorter than the signed url lifetime");
+        this.cache = CacheBuilder.newBuilder()
+                .maximumSize(maximumSize)
+                .expireAfterWrite(lifetime.minus(safetyMargin).toMillis(), TimeUnit.MILLISECONDS)
+                .build();
+        this.safetyMargin = safetyMargin;
+        this.clock = clock;
+    }
+
+    String get(String bucketName, String objectName, Supplier<SignedUrl> signer) {
+        String key = key(bucketName, objectName);
+        SignedUrl cached = cache.getIfPresent(key);
+        if (cached != null && !isFresh(cached)) {
+            cache.asMap().remove(key, cached);
+        }
+        try {
+            return cache.get(key, signer::get).getUrl();
+        } catch (ExecutionException | UncheckedExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new RuntimeException(String.format("Cannot sign url for %s: %s", objectName, e.getCause().getMessage()), e.getCause());
+        }
+    }
+
+    /**
+     * @return the cached url, or null if there is none that is valid for at least the safety margin.
+     */
+    SignedUrl getIfFresh(String bucketName, String objectName) {
+        SignedUrl cached = cache.getIfPresent(key(bucketName, objectName));
+        return cached != null && isFresh(cached) ? cached : null;
+    }
+
+    void put(String bucketName, String objectName, SignedUrl signedUrl) {
+        cache.put(key(bucketName, objectName), signedUrl);
+    }
+
+    private static String key(String bucketName, String objectName) {
+        return String.format("%s/%s", bucketName, objectName);
+    }
+
+    private boolean isFresh(SignedUrl signedUrl) {
+        return signedUrl.getExpiresAt().toInstant().isAfter(clock.instant().plus(safetyMargin));
+    }
+}
@@ -0,0 +1,165 @@
+package com.mondomob.spring.cloudstorage;
+
+import com.google.cloud.ReadChannel;
+import com.google.cloud.storage.Blob;
+import com.google.cloud.storage.BlobId;
+import com.google.cloud.storage.Storage;
+import com.google.cloud.storage.StorageException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.util.Assert;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Downloads an object as several byte ranges ("slices") in parallel, each over its own connection. All slices are read from the
+ * same generation of the object so that a concurrent overwrite cannot produce a mix of old and new content.
+ */
+class SlicedDownloader {
+    static final long DEFAULT_SLICE_SIZE = 32L * 1024 * 1024;
+    static final int DEFAULT_PARALLELISM = 4;
+
+    private static final int TRANSFER_BUFFER_SIZE = 256 * 1024;
+    private static final int DEFAULT_READ_CHUNK_SIZE = 2 * 1024 * 1024;
+    private static final Logger LOGGER = LoggerFactory.getLogger(SlicedDownloader.class);
+
+    private final Storage storage;
+    private final long sliceSize;
+    private final int parallelism;
+    private final CallThreads threads;
+
+    SlicedDownloader(Storage storage, long sliceSize, int parallelism) {
+        this(storage, sliceSize, parallelism, new CallThreads());
+    }
+
+    SlicedDownloader(Storage storage, long sliceSize, int parallelism, CallThreads threads) {
+        Assert.isTrue(sliceSize > 0, "sliceSize must be positive");
+        Assert.isTrue(parallelism > 0, "parallelism must be positive");
+        this.storage = storage;
+        this.sliceSize = sliceSize;
+        this.parallelism = parallelism;
+        this.threads = threads;
+    }
+
+    Blob download(BlobId blobId, Path target) throws IOException {
+        Blob blob = getExisting(blobId);
+        try (FileChannel channel = FileChannel.open(target,
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            download(blob, (data, position) -> {
+                long filePosition = position;
+                while (data.hasRemaining()) {
+                    filePosition += channel.write(data, filePosition);
+                }
+            });
+        }
+        return blob;
+    }
+
+    Blob download(BlobId blobId, ByteBuffer target) throws IOException {
+        Blob blob = getExisting(blobId);
+        int base = target.position();
+        Assert.isTrue(target.remaining() >= blob.getSize(),
+                String.format("Buffer has %s bytes remaining but %s is %s bytes", target.remaining(), blob.getName(), blob.getSize()));
+
+        download(blob, (data, position) -> {
+            ByteBuffer slice = target.duplicate();
+            slice.position(base + (int) position);
+            slice.put(data);
+        });
+        target.position(base + blob.getSize().intValue());
+        return blob;
+    }
+
+    private void download(Blob blob, SliceWriter writer) throws IOException {
+        BlobId generation = BlobId.of(blob.getBucket(), blob.getName(), blob.getGeneration());
+        long size = blob.getSize();
+        if (size <= sliceSize) {
+            readSlice(generation, 0, size, writer);
+            return;
+        }
+
+        List<Future<?>> slices = new ArrayList<>();
+        ExecutorService executor = threads.newFixedThreadPool(parallelism, "gcs-sliced-download-%d");
+        try {
+            for (long offset = 0; offset < size; offset += sliceSize) {
+                long start = offset;
+                long length = Math.min(sliceSize, size - offset);
+                slices.add(executor.submit(() -> readSlice(generation, start, length, writer)));
+            }
+            for (Future<?> slice : slices) {
+                slice.get();
+            }
+        } catch (ExecutionException e) {
+            throw new RuntimeException(String.format("Cannot download %s: %s", blob.getName(), e.getCause().getMessage()), e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(String.format("Interrupted downloading %s", blob.getName()), e);
+        } finally {
+            shutdown(executor, blob);
+        }
+    }
+
+    /**
+     * Stop the executor and wait for slices that are still being read, so that none writes to the target after the download has
+     * returned or thrown.
+     */
+    private static void shutdown(ExecutorService executor, Blob blob) {
+        executor.shutdownNow();
+        try {
+            executor.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            LOGGER.warn("Interrupted waiting for slices of {} to finish, some may still be written", blob.getName());
+        }
+    }
+
+    private Void readSlice(BlobId blobId, long start, long length, SliceWriter writer) throws IOException {
+        try (ReadChannel reader = storage.reader(blobId)) {
+            reader.seek(start);
+            reader.setChunkSize((int) Math.min(length, DEFAULT_READ_CHUNK_SIZE));
+            ByteBuffer buffer = ByteBuffer.allocate(TRANSFER_BUFFER_SIZE);
+            long position = start;
+            long remaining = length;
+            while (remaining > 0) {
+                if (Thread.currentThread().isInterrupted()) {
+                    throw new InterruptedIOException(String.format("Interrupted reading %s at byte %s", blobId.getName(), position));
+                }
+                buffer.limit((int) Math.min(buffer.capacity(), remaining));
+                int read = reader.read(buffer);
+                if (read < 0) {
+                    throw new IOException(String.format("Unexpected end of %s at byte %s", blobId.getName(), position));
+                }
+                buffer.flip();
+                writer.write(buffer, position);
+                buffer.clear();
+                position += read;
+                remaining -= read;
+            }
+        }
+        return null;
+    }
+
+    private Blob getExisting(BlobId blobId) {
+        Blob blob = storage.get(blobId);
+        if (blob == null) {
+            throw new StorageException(404, String.format("File %s does not exist in bucket %s", blobId.getName(), blobId.getBucket()));
+        }
+        return blob;
+    }
+
+    @FunctionalInterface
+    private interface SliceWriter {
+        void write(ByteBuffer data, long position) throws IOException;
+    }
+}
@@ -1,47 +1,244 @@
 package com.mondomob.spring.cloudstorage;
 
-import com.google.api.client.extensions.appengine.http.UrlFetchTransport;
 import com.google.api.client.http.HttpRequestFactory;
 import com.google.api.client.http.HttpRequestInitializer;
 import com.google.api.client.http.HttpTransport;
+import com.google.api.gax.retrying.RetrySettings;
+import com.google.appengine.api.ThreadManager;
 import com.google.appengine.api.appidentity.AppIdentityService;
 import com.google.appengine.api.appidentity.AppIdentityServiceFactory;
 import com.google.auth.Credentials;
 import com.google.auth.http.HttpCredentialsAdapter;
 import com.google.auth.oauth2.GoogleCredentials;
 import com.google.auth.oauth2.ServiceAccountCredentials;
+import com.google.cloud.NoCredentials;
+import com.google.cloud.ServiceOptions;
+import com.google.cloud.storage.Storage;
+import com.google.cloud.storage.StorageOptions;
+import com.google.common.base.Supplier;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import com.mondomob.spring.cloudstorage.apiclient.GcsJsonApiClient;
 import com.mondomob.spring.cloudstorage.apiclient.LocalGcsJsonApiClient;
+import com.mondomob.spring.cloudstorage.apiclient.ResumableUploader;
+import com.mondomob.spring.cloudstorage.emulator.StorageEmulator;
+import com.mondomob.spring.cloudstorage.metrics.MicrometerStorageMetrics;
+import com.mondomob.spring.cloudstorage.metrics.StorageMetrics;
+import com.mondomob.spring.cloudstorage.retry.HedgedRequests;
+import com.mondomob.spring.cloudstorage.retry.RetryBudget;
+import com.mondomob.spring.cloudstorage.retry.RetryPolicy;
+import io.micrometer.core.instrument.MeterRegistry;
 import org.apache.commons.lang3.StringUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnClass;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnMissingBean;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnResource;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.ApplicationListener;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.context.annotation.Profile;
 import org.springframework.core.Ordered;
 import org.springframework.core.annotation.Order;
+import org.springframework.core.env.Environment;
+import org.springframework.core.env.Profiles;
+import org.springframework.core.io.buffer.DefaultDataBufferFactory;
 import org.springframework.util.Assert;
+import reactor.core.scheduler.Schedulers;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.time.Duration;
+import java.util.Arrays;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
 
 import static java.util.Collections.singletonList;
 
 @Configuration
-public class SpringGaeGcsAutoConfiguration {
+public class SpringGaeGcsAutoConfiguration implements DisposableBean {
     private static final List<String> STORAGE_SCOPES = singletonList("https://www.googleapis.com/auth/devstorage.full_control");
     private static final Logger LOGGER = LoggerFactory.getLogger(SpringGaeGcsAutoConfiguration.class);
 
+    private final Map<Credentials, PreRefreshingCredentials> refreshingCredentials = new ConcurrentHashMap<>();
+
+    @Autowired
+    private Environment environment;
+    @Autowired
+    private ObjectProvider<StorageMetrics> storageMetrics;
+    @Autowired
+    private ObjectProvider<RetryPolicy> retryPolicy;
+    @Autowired
+    private ObjectProvider<HedgedRequests> hedgedRequests;
+    @Value("${gcs.local-signing:false}")
+    private boolean localSigning;
+    @Value("${gcs.write-chunk-size:" + CloudStorageService.DEFAULT_WRITE_CHUNK_SIZE + "}")
+    private int writeChunkSize;
+    @Value("${gcs.read-chunk-size:" + CloudStorageService.DEFAULT_READ_CHUNK_SIZE + "}")
+    private int readChunkSize;
+    @Value("${gcs.read-ahead:false}")
+    private boolean readAhead;
+    @Value("${gcs.list-page-size:" + CloudStorageService.DEFAULT_LIST_PAGE_SIZE + "}")
+    private int listPageSize;
+    @Value("${gcs.batch.size:" + BatchOperations.MAX_BATCH_SIZE + "}")
+    private int batchSize;
+    @Value("${gcs.batch.parallelism:" + BatchOperations.DEFAULT_PARALLELISM + "}")
+    private int batchParallelism;
+    @Value("${gcs.rewrite.megabytes-per-call:#{null}}")
+    private Long rewriteMegabytesPerCall;
+    @Value("${gcs.prefix-operations.concurrency:" + PrefixOperations.DEFAULT_CONCURRENCY + "}")
+    private int prefixConcurrency;
+    @Value("${gcs.metadata-cache.enabled:false}")
+    private boolean metadataCacheEnabled;
+    @Value("${gcs.metadata-cache.maximum-size:" + BlobMetadataCache.DEFAULT_MAXIMUM_SIZE + "}")
+    private long metadataCacheMaximumSize;
+    @Value("${gcs.metadata-cache.ttl-seconds:" + BlobMetadataCache.DEFAULT_TTL_SECONDS + "}")
+    private long metadataCacheTtlSeconds;
+    @Value("${gcs.signing.parallelism:" + GcsJsonApiClient.DEFAULT_SIGNING_PARALLELISM + "}")
+    private int signingParallelism;
+    @Value("${gcs.resumable-upload.chunk-size:" + ResumableUploader.DEFAULT_CHUNK_SIZE + "}")
+    private int resumableUploadChunkSize;
+    @Value("${gcs.resumable-upload.max-retries:" + ResumableUploader.DEFAULT_MAX_RETRIES + "}")
+    private int resumableUploadMaxRetries;
+    @Value("${gcs.resumable-upload.read-ahead:false}")
+    private boolean resumableUploadReadAhead;
+    @Value("${gcs.signed-url-cache.enabled:false}")
+    private boolean signedUrlCacheEnabled;
+    @Value("${gcs.signed-url-cache.maximum-size:" + SignedUrlCache.DEFAULT_MAXIMUM_SIZE + "}")
+    private long signedUrlCacheMaximumSize;
+    @Value("${gcs.signed-url-cache.safety-margin-seconds:" + SignedUrlCache.DEFAULT_SAFETY_MARGIN_SECONDS + "}")
+    private long signedUrlCacheSafetyMarginSeconds;
+    @Value("${gcs.async.threads:" + AsyncCloudStorageService.DEFAULT_THREADS + "}")
+    private int asyncThreads;
+    @Value("${gcs.async.queue-capacity:" + AsyncCloudStorageService.DEFAULT_QUEUE_CAPACITY + "}")
+    private int asyncQueueCapacity;
+    @Value("${gcs.composite-upload.enabled:false}")
+    private boolean compositeUploadEnabled;
+    @Value("${gcs.composite-upload.threshold:" + ParallelCompositeUploader.DEFAULT_THRESHOLD + "}")
+    private long compositeUploadThreshold;
+    @Value("${gcs.composite-upload.part-size:" + ParallelCompositeUploader.DEFAULT_PART_SIZE + "}")
+    private long compositeUploadPartSize;
+    @Value("${gcs.composite-upload.parallelism:" + ParallelCompositeUploader.DEFAULT_PARALLELISM + "}")
+    private int compositeUploadParallelism;
+    @Value("${gcs.gzip.enabled:false}")
+    private boolean gzipEnabled;
+    @Value("${gcs.gzip.level:" + GzipTranscoder.DEFAULT_LEVEL + "}")
+    private int gzipLevel;
+    @Value("${gcs.gzip.content-types:" + GzipTranscoder.DEFAULT_CONTENT_TYPES + "}")
+    private String[] gzipContentTypes;
+    @Value("${gcs.sliced-download.slice-size:" + SlicedDownloader.DEFAULT_SLICE_SIZE + "}")
+    private long slicedDownloadSliceSize;
+    @Value("${gcs.sliced-download.parallelism:" + SlicedDownloader.DEFAULT_PARALLELISM + "}")
+    private int slicedDownloadParallelism;
+    @Value("${gcs.http.transport:" + HttpTransportSettings.URL_FETCH + "}")
+    private String httpTransport;
+    @Value("${gcs.http.max-connections:" + HttpTransportSettings.DEFAULT_MAX_CONNECTIONS + "}")
+    private int httpMaxConnections;
+    @Value("${gcs.http.max-connections-per-route:" + HttpTransportSettings.DEFAULT_MAX_CONNECTIONS_PER_ROUTE + "}")
+    private int httpMaxConnectionsPerRoute;
+    @Value("${gcs.http.keep-alive-seconds:" + HttpTransportSettings.DEFAULT_KEEP_ALIVE_SECONDS + "}")
+    private long httpKeepAliveSeconds;
+    @Value("${gcs.http.connect-timeout-millis:" + HttpTransportSettings.DEFAULT_CONNECT_TIMEOUT_MILLIS + "}")
+    private int httpConnectTimeoutMillis;
+    @Value("${gcs.http.read-timeout-millis:" + HttpTransportSettings.DEFAULT_READ_TIMEOUT_MILLIS + "}")
+    private int httpReadTimeoutMillis;
+    @Value("${gcs.http.gzip:true}")
+    private boolean httpGzip;
+    @Value("${gcs.credentials.pre-refresh:#{null}}")
+    private Boolean credentialsPreRefresh;
+    @Value("${gcs.credentials.refresh-margin-seconds:" + PreRefreshingCredentials.DEFAULT_REFRESH_MARGIN_SECONDS + "}")
+    private long credentialsRefreshMarginSeconds;
+    @Value("${gcs.retry.max-attempts:#{null}}")
+    private Integer retryMaxAttempts;
+    @Value("${gcs.retry.initial-backoff-millis:#{null}}")
+    private Long retryInitialBackoffMillis;
+    @Value("${gcs.retry.max-backoff-millis:#{null}}")
+    private Long retryMaxBackoffMillis;
+    @Value("${gcs.retry.budget.enabled:false}")
+    private boolean retryBudgetEnabled;
+    @Value("${gcs.retry.budget.max-tokens:" + RetryBudget.DEFAULT_MAX_TOKENS + "}")
+    private int retryBudgetMaxTokens;
+    @Value("${gcs.retry.budget.token-ratio:" + RetryBudget.DEFAULT_TOKEN_RATIO + "}")
+    private double retryBudgetTokenRatio;
+    @Value("${gcs.hedged-reads.percentile:" + HedgedRequests.DEFAULT_PERCENTILE + "}")
+    private double hedgedReadsPercentile;
+    @Value("${gcs.hedged-reads.min-delay-millis:" + HedgedRequests.DEFAULT_MIN_DELAY_MILLIS + "}")
+    private long hedgedReadsMinDelayMillis;
+    @Value("${gcs.hedged-reads.max-concurrency:" + HedgedRequests.DEFAULT_MAX_CONCURRENCY + "}")
+    private int hedgedReadsMaxConcurrency;
+    @Value("${gcs.storage.lazy-init:false}")
+    private boolean storageLazyInit;
+
+    @Bean
+    @ConditionalOnMissingBean
+    @ConditionalOnProperty("gcs.emulator.enabled")
+    public StorageEmulator storageEmulator(@Value("${gcs.emulator.port:0}") int port) {
+        StorageEmulator emulator = new StorageEmulator(port);
+        LOGGER.info("Started gcs emulator at {}. Objects are held in memory and lost on shutdown.", emulator.getHost());
+        return emulator;
+    }
+
+    @Bean
+    @ConditionalOnMissingBean
+    @ConditionalOnProperty("gcs.emulator.enabled")
+    public GcsJsonApiClient getEmulatorGcsClient(StorageEmulator storageEmulator) {
+        return configure(storageEmulator.getJsonApiClient());
+    }
+
+    @Bean
+    @ConditionalOnMissingBean
+    @ConditionalOnProperty({"gcs.emulator.enabled", "gcs.default-bucket"})
+    public Storage emulatorStorage(StorageEmulator storageEmulator) {
+        return storageEmulator.getStorage();
+    }
+
+    @Bean
+    @ConditionalOnMissingBean
+    public RetryBudget retryBudget() {
+        return new RetryBudget(retryBudgetMaxTokens, retryBudgetTokenRatio);
+    }
+
+    @Bean
+    @ConditionalOnMissingBean
+    public RetryPolicy retryPolicy(RetryBudget retryBudget) {
+        return new RetryPolicy(
+                retryMaxAttempts == null ? RetryPolicy.DEFAULT_MAX_ATTEMPTS : retryMaxAttempts,
+                Duration.ofMillis(retryInitialBackoffMillis == null ? RetryPolicy.DEFAULT_INITIAL_BACKOFF_MILLIS : retryInitialBackoffMillis),
+                Duration.ofMillis(retryMaxBackoffMillis == null ? RetryPolicy.DEFAULT_MAX_BACKOFF_MILLIS : retryMaxBackoffMillis),
+                retryBudget);
+    }
+
+    /**
+     * Not registered on App Engine, where the attempts it leaves running in the background would have to outlive the request
+     * thread that started them.
+     */
+    @Bean
+    @ConditionalOnMissingBean
+    @ConditionalOnProperty("gcs.hedged-reads.enabled")
+    @Profile({"!gae"})
+    public HedgedRequests hedgedRequests(RetryBudget retryBudget) {
+        return new HedgedRequests(hedgedReadsPercentile, Duration.ofMillis(hedgedReadsMinDelayMillis), retryBudget, hedgedReadsMaxConcurrency);
+    }
+
     @Bean
     @ConditionalOnMissingBean(HttpTransport.class)
     public HttpTransport getHttpTransport() {
-        LOGGER.info("HttpTransport bean not found. Default UrlFetchTransport.getDefaultInstance()");
-        return UrlFetchTransport.getDefaultInstance();
+        HttpTransportSettings settings = httpTransportSettings();
+        if (settings.isUrlFetch()) {
+            LOGGER.info("HttpTransport bean not found. Default UrlFetchTransport.getDefaultInstance()");
+        } else {
+            LOGGER.info("HttpTransport bean not found. Creating transport with {}", settings);
+        }
+        return settings.createTransport();
     }
 
 
@@ -56,7 +253,8 @@ public class SpringGaeGcsAutoConfiguration {
         LOGGER.info("Starting gcs configuration in Local env.");
         ServiceAccountCredentials credentials = getCredentialsFromFile(devCredentialsFile);
 
-        return new LocalGcsJsonApiClient(getHttpRequestFactory(credentials, httpTransport), getAppIdentityService(), credentials);
+        return configure(new LocalGcsJsonApiClient(getHttpRequestFactory(requestCredentials(credentials), httpTransport), getAppIdentityService(),
+                credentials));
     }
 
     @Bean
@@ -65,7 +263,12 @@ public class SpringGaeGcsAutoConfiguration {
         LOGGER.info("Starting gcs configuration in GAE env.");
         GoogleCredentials googleCredential = getGaeGoogleCredential();
 
-        return new GcsJsonApiClient(getHttpRequestFactory(googleCredential, httpTransport), getAppIdentityService());
+        if (localSigning && googleCredential instanceof ServiceAccountCredentials) {
+            LOGGER.info("Signing urls with the application default service account key.");
+            return configure(new LocalGcsJsonApiClient(getHttpRequestFactory(requestCredentials(googleCredential), httpTransport),
+                    getAppIdentityService(), (ServiceAccountCredentials) googleCredential));
+        }
+        return configure(new GcsJsonApiClient(getHttpRequestFactory(requestCredentials(googleCredential), httpTransport), getAppIdentityService()));
     }
 
     @Bean
@@ -78,7 +281,11 @@ public class SpringGaeGcsAutoConfiguration {
                     String gcsAttachmentFolder) {
         Assert.isTrue(StringUtils.isNotBlank(host), "${app.host} must have a value");
 
-        return new GcsJsonApiService(cloudStorage, defaultBucket, host, gcsAttachmentFolder);
+        GcsJsonApiService gcsJsonApiService = new GcsJsonApiService(cloudStorage, defaultBucket, host, gcsAttachmentFolder);
+        if (signedUrlCacheEnabled) {
+            gcsJsonApiService.enableSignedUrlCache(signedUrlCacheMaximumSize, Duration.ofSeconds(signedUrlCacheSafetyMarginSeconds));
+        }
+        return gcsJsonApiService;
     }
 
 
@@ -88,19 +295,119 @@ public class SpringGaeGcsAutoConfiguration {
     @ConditionalOnProperty("gcs.default-bucket")
     @ConditionalOnResource(resources = "classpath:${gcs.dev-credentials-file:/dev-gcs-credentials.json}")
     @Profile({"!gae"})
-    public CloudStorageService localCloudStorageService(@Value("${gcs.default-bucket}") String defaultBucket,
-            @Value("${gcs.dev-credentials-file:/dev-gcs-credentials.json}") String gcsCredentials,
-            @Value("${app.id}") String projectId) {
+    public Storage localStorage(@Value("${gcs.dev-credentials-file:/dev-gcs-credentials.json}") String gcsCredentials,
+            @Value("${app.id}") String projectId, HttpTransport httpTransport) {
         Assert.isTrue(StringUtils.isNotBlank(projectId), "${app.id} must have a value");
 
-        return new CloudStorageService(defaultBucket, gcsCredentials, projectId);
+        return createStorage(() -> getStorage(storageOptions(httpTransport)
+                .setCredentials(getCredentialsFromFile(gcsCredentials))
+                .setProjectId(projectId)));
     }
 
     @Bean
     @ConditionalOnMissingBean
     @ConditionalOnProperty("gcs.default-bucket")
-    public CloudStorageService cloudStorageService(@Value("${gcs.default-bucket}") String defaultBucket) {
-        return new CloudStorageService(defaultBucket);
+    public Storage storage(HttpTransport httpTransport) {
+        return createStorage(() -> getStorage(storageOptions(httpTransport)));
+    }
+
+    /**
+     * Warm up the shared {@code Storage} client once the application is ready, so that the first request does not pay for
+     * creating it and fetching an access token.
+     */
+    @Bean
+    @ConditionalOnProperty({"gcs.storage.warm-up", "gcs.default-bucket"})
+    public ApplicationListener<ApplicationReadyEvent> storageWarmUp(Storage storage) {
+        return event -> {
+            ExecutorService executor = Executors.newSingleThreadExecutor(new ThreadFactoryBuilder()
+                    .setDaemon(true)
+                    .setNameFormat("gcs-warm-up-%d")
+                    .build());
+            executor.execute(() -> warmUp(storage));
+            executor.shutdown();
+        };
+    }
+
+    @Bean
+    @ConditionalOnMissingBean
+    @ConditionalOnProperty("gcs.default-bucket")
+    public CloudStorageService cloudStorageService(@Value("${gcs.default-bucket}") String defaultBucket, Storage storage) {
+        return configure(new CloudStorageService(defaultBucket, storage));
+    }
+
+    /**
+     * Not registered on App Engine, where its calls would run on shared pool threads that outlive the request and cannot call App
+     * Engine services such as URL Fetch or App Identity.
+     */
+    @Bean
+    @ConditionalOnMissingBean
+    @ConditionalOnProperty("gcs.default-bucket")
+    @Profile({"!gae"})
+    public AsyncCloudStorageService asyncCloudStorageService(CloudStorageService cloudStorageService) {
+        return new AsyncCloudStorageService(cloudStorageService, asyncThreads, asyncQueueCapacity);
+    }
+
+    @Configuration
+    @ConditionalOnClass(name = "reactor.core.publisher.Flux")
+    static class ReactiveCloudStorageConfiguration {
+
+        @Bean
+        @ConditionalOnMissingBean
+        @ConditionalOnProperty("gcs.default-bucket")
+        public ReactiveCloudStorageService reactiveCloudStorageService(CloudStorageService cloudStorageService,
+                @Value("${gcs.reactive.buffer-size:" + ReactiveCloudStorageService.DEFAULT_BUFFER_SIZE + "}") int bufferSize,
+                @Value("${gcs.reactive.prefetch:" + ReactiveCloudStorageService.DEFAULT_PREFETCH + "}") int prefetch) {
+            return new ReactiveCloudStorageService(cloudStorageService, Schedulers.elastic(), new DefaultDataBufferFactory(), bufferSize, prefetch);
+        }
+    }
+
+    @Configuration
+    @ConditionalOnClass(name = "io.micrometer.core.instrument.MeterRegistry")
+    static class MetricsConfiguration {
+
+        @Bean
+        @ConditionalOnMissingBean
+        public StorageMetrics storageMetrics(ObjectProvider<MeterRegistry> meterRegistry) {
+            MeterRegistry registry = meterRegistry.getIfAvailable();
+            return registry == null ? StorageMetrics.NONE : new MicrometerStorageMetrics(registry);
+        }
+    }
+
+    private GcsJsonApiClient configure(GcsJsonApiClient gcsJsonApiClient) {
+        gcsJsonApiClient.setSigningParallelism(signingParallelism);
+        storageMetrics.ifAvailable(gcsJsonApiClient::setMetrics);
+        retryPolicy.ifAvailable(gcsJsonApiClient::setRetryPolicy);
+        gcsJsonApiClient.setResumableUpload(resumableUploadChunkSize, resumableUploadMaxRetries, resumableUploadReadAhead);
+        return gcsJsonApiClient;
+    }
+
+    private CloudStorageService configure(CloudStorageService cloudStorageService) {
+        if (isGae()) {
+            cloudStorageService.setCallThreadFactory(ThreadManager::currentRequestThreadFactory);
+        }
+        cloudStorageService.setWriteChunkSize(writeChunkSize);
+        storageMetrics.ifAvailable(cloudStorageService::setMetrics);
+        if (retryBudgetEnabled) {
+            retryPolicy.ifAvailable(cloudStorageService::setRetryPolicy);
+        }
+        hedgedRequests.ifAvailable(cloudStorageService::enableHedgedReads);
+        cloudStorageService.setReadChunkSize(readChunkSize);
+        cloudStorageService.setReadAhead(readAhead);
+        cloudStorageService.setListPageSize(listPageSize);
+        cloudStorageService.setBatchOperations(batchSize, batchParallelism);
+        cloudStorageService.setRewriteMegabytesPerCall(rewriteMegabytesPerCall);
+        cloudStorageService.setPrefixConcurrency(prefixConcurrency);
+        cloudStorageService.setSlicedDownload(slicedDownloadSliceSize, slicedDownloadParallelism);
+        if (metadataCacheEnabled) {
+            cloudStorageService.enableMetadataCache(metadataCacheMaximumSize, Duration.ofSeconds(metadataCacheTtlSeconds));
+        }
+        if (compositeUploadEnabled) {
+            cloudStorageService.enableParallelCompositeUploads(compositeUploadThreshold, compositeUploadPartSize, compositeUploadParallelism);
+        }
+        if (gzipEnabled) {
+            cloudStorageService.enableGzipTranscoding(gzipLevel, Arrays.asList(gzipContentTypes));
+        }
+        return cloudStorageService;
     }
 
     private ServiceAccountCredentials getCredentialsFromFile(@Value("${gcs.dev-credentials-file:/dev-gcs-credentials.json}") String devCredentialsFile) {
@@ -129,9 +436,123 @@ public class SpringGaeGcsAutoConfiguration {
         return AppIdentityServiceFactory.getAppIdentityService();
     }
 
+    /**
+     * Use the shared transport unless it is url fetch, which the {@code Storage} client cannot use.
+     */
+    private StorageOptions.Builder storageOptions(HttpTransport httpTransport) {
+        HttpTransportSettings settings = httpTransportSettings();
+        StorageOptions.Builder builder = StorageOptions.newBuilder();
+        RetrySettings retrySettings = storageRetrySettings();
+        if (retrySettings != null) {
+            builder.setRetrySettings(retrySettings);
+        }
+        if (settings.isUrlFetch()) {
+            return builder;
+        }
+        return builder.setTransportOptions(settings.storageTransportOptions(httpTransport));
+    }
+
+    /**
+     * With {@code gcs.retry.budget.enabled} the {@code Storage} client makes a single attempt, and {@code CloudStorageService} retries
+     * its idempotent reads through the budgeted {@link RetryPolicy} instead. Otherwise the client keeps its own retries, with
+     * any {@code gcs.retry.*} values that are set replacing the library defaults.
+     *
+     * @return the retry settings for the {@code Storage} client, or null to keep the library defaults.
+     */
+    private RetrySettings storageRetrySettings() {
+        if (retryBudgetEnabled) {
+            return ServiceOptions.getNoRetrySettings();
+        }
+        if (retryMaxAttempts == null && retryInitialBackoffMillis == null && retryMaxBackoffMillis == null) {
+            return null;
+        }
+        RetrySettings.Builder builder = ServiceOptions.getDefaultRetrySettings().toBuilder();
+        if (retryMaxAttempts != null) {
+            builder.setMaxAttempts(retryMaxAttempts);
+        }
+        if (retryInitialBackoffMillis != null) {
+            builder.setInitialRetryDelay(org.threeten.bp.Duration.ofMillis(retryInitialBackoffMillis));
+        }
+        if (retryMaxBackoffMillis != null) {
+            builder.setMaxRetryDelay(org.threeten.bp.Duration.ofMillis(retryMaxBackoffMillis));
+        }
+        return builder.build();
+    }
+
+    /**
+     * Create the client now, or on first use if {@code gcs.storage.lazy-init} is true.
+     */
+    private Storage createStorage(Supplier<Storage> factory) {
+        if (storageLazyInit) {
+            LOGGER.info("Storage client will be created on first use.");
+            return LazyStorage.create(factory);
+        }
+        return factory.get();
+    }
+
+    private Storage getStorage(StorageOptions.Builder builder) {
+        StorageOptions options = builder.build();
+        if (preRefreshCredentials() && options.getCredentials() instanceof GoogleCredentials) {
+            options = options.toBuilder().setCredentials(requestCredentials((GoogleCredentials) options.getCredentials())).build();
+        }
+        return options.getService();
+    }
+
+    private static void warmUp(Storage storage) {
+        long start = System.nanoTime();
+        try {
+            Credentials credentials = storage.getOptions().getScopedCredentials();
+            if (credentials != null && !(credentials instanceof NoCredentials)) {
+                credentials.refresh();
+            }
+            LOGGER.info("Warmed up gcs storage client in {}ms", TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+        } catch (Exception e) {
+            LOGGER.warn("Cannot warm up gcs storage client: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * Credentials for api requests, with tokens refreshed in the background unless {@code gcs.credentials.pre-refresh} is false.
+     * Clients using the same credentials share one refresh.
+     */
+    private Credentials requestCredentials(GoogleCredentials credentials) {
+        if (!preRefreshCredentials()) {
+            return credentials;
+        }
+        GoogleCredentials scoped = credentials.createScopedRequired() ? credentials.createScoped(STORAGE_SCOPES) : credentials;
+        return refreshingCredentials.computeIfAbsent(scoped, key -> {
+            PreRefreshingCredentials refreshing = isGae()
+                    ? new PreRefreshingCredentials(scoped, Duration.ofSeconds(credentialsRefreshMarginSeconds), ThreadManager.backgroundThreadFactory())
+                    : new PreRefreshingCredentials(scoped, Duration.ofSeconds(credentialsRefreshMarginSeconds));
+            storageMetrics.ifAvailable(refreshing::setMetrics);
+            return refreshing;
+        });
+    }
+
+    /**
+     * Off by default on App Engine, where background threads are only available to manual and basic scaling.
+     */
+    private boolean preRefreshCredentials() {
+        return credentialsPreRefresh == null ? !isGae() : credentialsPreRefresh;
+    }
+
+    private boolean isGae() {
+        return environment.acceptsProfiles(Profiles.of("gae"));
+    }
+
+    @Override
+    public void destroy() {
+        refreshingCredentials.values().forEach(PreRefreshingCredentials::close);
+    }
+
     private HttpRequestFactory getHttpRequestFactory(Credentials credentials, HttpTransport httpTransport) {
-        HttpRequestInitializer requestInitializer = new HttpCredentialsAdapter(credentials);
+        HttpRequestInitializer requestInitializer = httpTransportSettings().initializer(new HttpCredentialsAdapter(credentials));
         return httpTransport.createRequestFactory(requestInitializer);
     }
 
+    private HttpTransportSettings httpTransportSettings() {
+        return new HttpTransportSettings(httpTransport, httpMaxConnections, httpMaxConnectionsPerRoute, httpKeepAliveSeconds,
+                httpConnectTimeoutMillis, httpReadTimeoutMillis, httpGzip);
+    }
+
 }
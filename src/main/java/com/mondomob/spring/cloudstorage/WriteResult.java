@@ -0,0 +1,35 @@
+package com.mondomob.spring.cloudstorage;
+
+import com.google.cloud.storage.Blob;
+
+/**
+ * Outcome of a {@code CloudStorageService.writeFileIfChanged} call.
+ */
+public class WriteResult {
+    private final Blob blob;
+    private final boolean uploaded;
+
+    WriteResult(Blob blob, boolean uploaded) {
+        this.blob = blob;
+        this.uploaded = uploaded;
+    }
+
+    /**
+     * @return the object now stored, either the one written or the existing object with the same content.
+     */
+    public Blob getBlob() {
+        return blob;
+    }
+
+    /**
+     * @return whether the content was sent, {@code false} if an object with the same content already existed.
+     */
+    public boolean isUploaded() {
+        return uploaded;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("WriteResult{blob=%s, uploaded=%s}", blob == null ? null : blob.getBlobId(), uploaded);
+    }
+}
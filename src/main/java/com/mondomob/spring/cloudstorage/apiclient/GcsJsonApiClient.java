@@ -4,14 +4,47 @@ import com.google.api.client.http.GenericUrl;
 import com.google.api.client.http.HttpHeaders;
 import com.google.api.client.http.HttpRequestFactory;
 import com.google.api.client.http.HttpResponse;
+import com.google.appengine.api.ThreadManager;
 import com.google.appengine.api.appidentity.AppIdentityService;
+import com.google.apphosting.api.ApiProxy;
+import com.google.common.hash.Hashing;
+import com.google.common.io.BaseEncoding;
 import com.google.common.net.UrlEscapers;
+import com.google.common.util.concurrent.MoreExecutors;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.mondomob.spring.cloudstorage.metrics.StorageMetrics;
+import com.mondomob.spring.cloudstorage.retry.RetryPolicy;
 import org.apache.commons.lang3.ObjectUtils;
 import org.apache.geronimo.mail.util.Base64;
+import org.springframework.util.Assert;
 
 import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.time.Duration;
 import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
 
 
 /**
@@ -24,16 +57,124 @@ import java.time.OffsetDateTime;
 public class GcsJsonApiClient {
     private static final String BASE_GOOGLE_API_URL = "https://www.googleapis.com";
     private static final String BASE_GOOGLE_STORAGE_URL = "https://storage.googleapis.com";
+    private static final String STORAGE_HOST = "storage.googleapis.com";
     private static final String HTTP_METHOD = "GET";
+    private static final String V4_ALGORITHM = "GOOG4-RSA-SHA256";
+    private static final Duration MAX_V4_EXPIRY_DURATION = Duration.ofDays(7);
+    private static final DateTimeFormatter V4_DATE_TIME_FORMAT = DateTimeFormatter.ofPattern("yyyyMMdd'T'HHmmss'Z'");
     private static final int DEAFULT_EXPIRY_DURATION_MINUTES = 10;
     static final Duration DEFAULT_EXPIRY_DURATION = Duration.ofMinutes(DEAFULT_EXPIRY_DURATION_MINUTES);
+    public static final int DEFAULT_SIGNING_PARALLELISM = 8;
 
     protected final HttpRequestFactory httpRequestFactory;
     protected final AppIdentityService appIdentityService;
+    private final ThreadPoolExecutor signingExecutor;
+    private volatile int signingParallelism = DEFAULT_SIGNING_PARALLELISM;
+    private ResumableUploader resumableUploader;
+    private StorageMetrics metrics = StorageMetrics.NONE;
+    private RetryPolicy retryPolicy = RetryPolicy.NONE;
+    private String apiUrl = BASE_GOOGLE_API_URL;
+    private String storageUrl = BASE_GOOGLE_STORAGE_URL;
+    private String storageHost = STORAGE_HOST;
 
     public GcsJsonApiClient(HttpRequestFactory httpRequestFactory, AppIdentityService appIdentityService) {
         this.httpRequestFactory = httpRequestFactory;
         this.appIdentityService = appIdentityService;
+        this.signingExecutor = new ThreadPoolExecutor(DEFAULT_SIGNING_PARALLELISM, DEFAULT_SIGNING_PARALLELISM, 60, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<>(), new ThreadFactoryBuilder()
+                .setDaemon(true)
+                .setNameFormat("gcs-signing-%d")
+                .build());
+        this.signingExecutor.allowCoreThreadTimeOut(true);
+        this.resumableUploader = new ResumableUploader(httpRequestFactory, ResumableUploader.DEFAULT_CHUNK_SIZE,
+                ResumableUploader.DEFAULT_MAX_RETRIES, false);
+    }
+
+    /**
+     * Record the latency and outcome of signing and upload calls.
+     */
+    public void setMetrics(StorageMetrics metrics) {
+        Assert.notNull(metrics, "metrics required");
+        this.metrics = metrics;
+    }
+
+    /**
+     * Retry requests that initiate resumable uploads after transient failures. A retried request starts a new session, and a
+     * session that is never used stores nothing.
+     */
+    public void setRetryPolicy(RetryPolicy retryPolicy) {
+        Assert.notNull(retryPolicy, "retryPolicy required");
+        this.retryPolicy = retryPolicy;
+    }
+
+    /**
+     * Send api requests to, and build signed urls for, {@code host} instead of Google's endpoints. Used to point the client at a
+     * {@link com.mondomob.spring.cloudstorage.emulator.StorageEmulator}.
+     *
+     * @param host scheme, host and port, for example <code>http://127.0.0.1:8089</code>
+     */
+    public void setHost(String host) {
+        Assert.hasText(host, "host required");
+        this.apiUrl = host;
+        this.storageUrl = host;
+        this.storageHost = URI.create(host).getAuthority();
+    }
+
+    /**
+     * Number of urls {@link #generateSignedUrls(Collection)} signs at the same time. Clients that sign without a request to App
+     * Identity, such as {@link LocalGcsJsonApiClient}, share this many threads between all calls. App Identity signing runs on up
+     * to this many threads of the current App Engine request for each call. The pool is resized in place, so calls already
+     * signing are not affected.
+     */
+    public synchronized void setSigningParallelism(int signingParallelism) {
+        Assert.isTrue(signingParallelism > 0, "signingParallelism must be positive");
+        if (signingParallelism > signingExecutor.getMaximumPoolSize()) {
+            signingExecutor.setMaximumPoolSize(signingParallelism);
+            signingExecutor.setCorePoolSize(signingParallelism);
+        } else {
+            signingExecutor.setCorePoolSize(signingParallelism);
+            signingExecutor.setMaximumPoolSize(signingParallelism);
+        }
+        this.signingParallelism = signingParallelism;
+    }
+
+    /**
+     * Configure how {@link #uploadResumable(String, String, String, InputStream)} sends content.
+     *
+     * @param chunkSize  bytes sent per request, a multiple of 262144 (256KB)
+     * @param maxRetries failed requests retried in a row before the upload is abandoned
+     * @param readAhead  read the next chunk while the current chunk uploads
+     */
+    public void setResumableUpload(int chunkSize, int maxRetries, boolean readAhead) {
+        this.resumableUploader = new ResumableUploader(httpRequestFactory, chunkSize, maxRetries, readAhead);
+    }
+
+    /**
+     * Upload content from the server through a resumable upload session. Content is sent in chunks, and after a failed request
+     * the upload resumes from the bytes the session has already stored, so large uploads survive an unreliable network.
+     *
+     * @param bucket      the cloud storage bucket to upload to
+     * @param name        the name of the resource that will be uploaded
+     * @param contentType the resource's content/mime type
+     * @param content     the content to upload, which is not closed
+     * @return the number of bytes uploaded
+     */
+    public long uploadResumable(String bucket, String name, String contentType, InputStream content) {
+        String sessionUri = initiateResumableUpload(bucket, name, contentType);
+        long uploaded = metrics.time(StorageMetrics.WRITE, bucket, () -> resumableUploader.upload(sessionUri, content));
+        metrics.recordBytes(StorageMetrics.WRITE, bucket, uploaded);
+        return uploaded;
+    }
+
+    /**
+     * Upload a file from the server through a resumable upload session. See {@link #uploadResumable(String, String, String, InputStream)}.
+     */
+    public long uploadResumable(String bucket, String name, String contentType, Path path) {
+        try (InputStream content = Files.newInputStream(path)) {
+            return uploadResumable(bucket, name, contentType, content);
+        } catch (IOException e) {
+            throw new RuntimeException(String.format("Cannot upload %s: %s", path, e.getMessage()), e);
+        }
     }
 
     /**
@@ -69,7 +210,7 @@ public class GcsJsonApiClient {
      * @see <a href="https://cloud.google.com/storage/docs/json_api/v1/how-tos/resumable-upload">Performing a Resumable Upload</a>
      */
     public String initiateResumableUpload(String bucket, String name, String contentType, String origin) {
-        String uploadUrl = String.format("%s/upload/storage/v1/b/%s/o", BASE_GOOGLE_API_URL, bucket);
+        String uploadUrl = String.format("%s/upload/storage/v1/b/%s/o", apiUrl, bucket);
 
         GenericUrl url = new GenericUrl(uploadUrl);
         url.put("uploadType", "resumable");
@@ -83,10 +224,10 @@ public class GcsJsonApiClient {
 
         HttpResponse response;
         try {
-            response = httpRequestFactory
+            response = metrics.time(StorageMetrics.INITIATE_UPLOAD, bucket, () -> retryPolicy.execute(() -> httpRequestFactory
                     .buildPostRequest(url, null)
                     .setHeaders(headers)
-                    .execute();
+                    .execute()));
         } catch (IOException e) {
             throw new RuntimeException(String.format("Cannot initiate upload: %s", e.getMessage()), e);
         }
@@ -94,6 +235,70 @@ public class GcsJsonApiClient {
         return response.getHeaders().getLocation();
     }
 
+    /**
+     * Generate a V4 signed URL that a browser can <code>PUT</code> a file to directly. Unlike
+     * {@link #initiateResumableUpload(String, String, String, String)} this makes no request to cloud storage, the url is signed
+     * locally (or by the app identity service on App Engine). The content type, size limit and origin are part of the signature,
+     * so an upload that does not match them is rejected.
+     *
+     * @param bucket         the cloud storage bucket to upload to
+     * @param name           the name of the resource that will be uploaded
+     * @param contentType    the resource's content/mime type, which the upload must send as its <code>Content-Type</code>
+     * @param maxSize        the largest upload accepted in bytes, or null for no limit
+     * @param origin         the only origin allowed to upload, or null to allow any
+     * @param expiryDuration the duration until the link expires, at most 7 days
+     * @return the signed url and the headers the upload must send
+     * @see <a href="https://cloud.google.com/storage/docs/access-control/signing-urls-manually">V4 signing process</a>
+     */
+    public SignedUploadUrl generateSignedUploadUrl(String bucket, String name, String contentType, Long maxSize, String origin,
+                                                   Duration expiryDuration) {
+        Duration duration = ObjectUtils.defaultIfNull(expiryDuration, DEFAULT_EXPIRY_DURATION);
+        Assert.isTrue(duration.compareTo(MAX_V4_EXPIRY_DURATION) <= 0, "expiryDuration must be at most 7 days");
+
+        Map<String, String> requestHeaders = new LinkedHashMap<>();
+        if (contentType != null) {
+            requestHeaders.put("Content-Type", contentType);
+        }
+        if (maxSize != null) {
+            requestHeaders.put("x-goog-content-length-range", String.format("0,%s", maxSize));
+        }
+        Map<String, String> signedHeaders = new TreeMap<>();
+        requestHeaders.forEach((header, value) -> signedHeaders.put(header.toLowerCase(), value));
+        signedHeaders.put("host", storageHost);
+        if (origin != null) {
+            signedHeaders.put("origin", origin);
+        }
+
+        OffsetDateTime signedAt = now().withOffsetSameInstant(ZoneOffset.UTC);
+        String dateTime = signedAt.format(V4_DATE_TIME_FORMAT);
+        String credentialScope = String.format("%s/auto/storage/goog4_request", dateTime.substring(0, 8));
+        String signedHeaderNames = String.join(";", signedHeaders.keySet());
+
+        Map<String, String> queryParameters = new TreeMap<>();
+        queryParameters.put("X-Goog-Algorithm", V4_ALGORITHM);
+        queryParameters.put("X-Goog-Credential", String.format("%s/%s", getGoogleAccessId(), credentialScope));
+        queryParameters.put("X-Goog-Date", dateTime);
+        queryParameters.put("X-Goog-Expires", String.valueOf(duration.getSeconds()));
+        queryParameters.put("X-Goog-SignedHeaders", signedHeaderNames);
+        String canonicalQuery = queryParameters.entrySet().stream()
+                .map(parameter -> String.format("%s=%s", uriEncode(parameter.getKey(), false), uriEncode(parameter.getValue(), false)))
+                .collect(Collectors.joining("&"));
+        String canonicalHeaders = signedHeaders.entrySet().stream()
+                .map(header -> String.format("%s:%s\n", header.getKey(), header.getValue().trim()))
+                .collect(Collectors.joining());
+        String path = String.format("/%s/%s", bucket, uriEncode(name, true));
+
+        String canonicalRequest = String.join("\n", "PUT", path, canonicalQuery, canonicalHeaders, signedHeaderNames, "UNSIGNED-PAYLOAD");
+        String stringToSign = String.join("\n", V4_ALGORITHM, dateTime, credentialScope,
+                Hashing.sha256().hashString(canonicalRequest, StandardCharsets.UTF_8).toString());
+        String signature = BaseEncoding.base16().lowerCase().encode(
+                metrics.time(StorageMetrics.SIGN, bucket, () -> sign(stringToSign.getBytes(StandardCharsets.UTF_8))));
+        metrics.recordSignatures(bucket, 1);
+
+        String url = String.format("%s%s?%s&X-Goog-Signature=%s", storageUrl, path, canonicalQuery, signature);
+        return new SignedUploadUrl(url, signedAt.plus(duration), name, requestHeaders);
+    }
+
     /**
      * Generate a signed URL which can be used to access a resource without a Google account. Links
      * expire after a set time period (default {@value DEAFULT_EXPIRY_DURATION_MINUTES} minutes).
@@ -118,16 +323,114 @@ public class GcsJsonApiClient {
      * @see <a href="https://cloud.google.com/storage/docs/access-control/signed-urls#signing-gae">Signed URLs</a>
      */
     public SignedUrl generateSignedUrlWithExpiry(String bucket, String name, Duration expiryDuration) {
+        return signUrl(bucket, name, getExpiryDateTime(expiryDuration), getGoogleAccessId());
+    }
+
+    /**
+     * Generate signed URLs for many resources in the same bucket. See {@link #generateSignedUrls(Collection)}.
+     *
+     * @param bucket         the bucket where the resources are stored
+     * @param names          the resource names
+     * @param expiryDuration the duration until the links expire
+     * @return the signed url for each resource name, in the order given
+     */
+    public Map<String, SignedUrl> generateSignedUrls(String bucket, Collection<String> names, Duration expiryDuration) {
+        List<SignedUrlRequest> requests = names.stream()
+                .distinct()
+                .map(name -> new SignedUrlRequest(bucket, name, expiryDuration))
+                .collect(Collectors.toList());
+        List<SignedUrl> signedUrls = signUrls(requests);
+        Map<String, SignedUrl> results = new LinkedHashMap<>();
+        for (int i = 0; i < requests.size(); i++) {
+            results.put(requests.get(i).getName(), signedUrls.get(i));
+        }
+        return results;
+    }
+
+    /**
+     * Generate signed URLs for many resources at once. The access id is looked up and each distinct expiry calculated once for
+     * the whole call. Up to {@link #setSigningParallelism(int) signing parallelism} urls are signed at the same time, on a shared pool
+     * for clients that sign with a private key and on threads of the current request for App Identity signing on App Engine, so
+     * signing many urls takes about as long as signing one.
+     *
+     * @param requests the resources to sign urls for
+     * @return the signed url for each request keyed by <code>bucket/name</code>, in the order given
+     */
+    public Map<String, SignedUrl> generateSignedUrls(Collection<SignedUrlRequest> requests) {
+        List<SignedUrlRequest> distinctRequests = requests.stream().distinct().collect(Collectors.toList());
+        List<SignedUrl> signedUrls = signUrls(distinctRequests);
+        Map<String, SignedUrl> results = new LinkedHashMap<>();
+        for (int i = 0; i < distinctRequests.size(); i++) {
+            SignedUrlRequest request = distinctRequests.get(i);
+            results.put(String.format("%s/%s", request.getBucket(), request.getName()), signedUrls.get(i));
+        }
+        return results;
+    }
+
+    private List<SignedUrl> signUrls(List<SignedUrlRequest> requests) {
+        if (requests.isEmpty()) {
+            return Collections.emptyList();
+        }
+        String googleAccessId = getGoogleAccessId();
+        Map<Duration, OffsetDateTime> expiryDateTimes = new HashMap<>();
+        List<Callable<SignedUrl>> tasks = new ArrayList<>();
+        for (SignedUrlRequest request : requests) {
+            OffsetDateTime expiryDateTime = expiryDateTimes.computeIfAbsent(request.getExpiryDuration(), this::getExpiryDateTime);
+            tasks.add(() -> signUrl(request.getBucket(), request.getName(), expiryDateTime, googleAccessId));
+        }
+
+        if (canSignConcurrently() && tasks.size() > 1) {
+            return invokeAll(signingExecutor, tasks);
+        }
+        if (tasks.size() == 1 || ApiProxy.getCurrentEnvironment() == null) {
+            return invokeAll(MoreExecutors.newDirectExecutorService(), tasks);
+        }
+        ExecutorService requestExecutor = Executors.newFixedThreadPool(Math.min(signingParallelism, tasks.size()),
+                ThreadManager.currentRequestThreadFactory());
+        try {
+            return invokeAll(requestExecutor, tasks);
+        } finally {
+            requestExecutor.shutdownNow();
+        }
+    }
+
+    private List<SignedUrl> invokeAll(ExecutorService executor, List<Callable<SignedUrl>> tasks) {
+        try {
+            List<SignedUrl> signedUrls = new ArrayList<>();
+            for (Future<SignedUrl> signedUrl : executor.invokeAll(tasks)) {
+                signedUrls.add(signedUrl.get());
+            }
+            return signedUrls;
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new RuntimeException(String.format("Error signing URLs: %s", e.getCause().getMessage()), e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted signing URLs", e);
+        }
+    }
+
+    /**
+     * Whether {@link #sign(byte[])} may run on any thread. App Identity signing may not, as only threads of the current App Engine
+     * request can call App Engine services, so it is signed on threads from {@link ThreadManager#currentRequestThreadFactory()}
+     * that end with the call, or on the calling thread outside App Engine.
+     */
+    protected boolean canSignConcurrently() {
+        return false;
+    }
+
+    private SignedUrl signUrl(String bucket, String name, OffsetDateTime expiryDateTime, String googleAccessId) {
         String canonicalizedResource = String.format("/%s/%s", bucket, name);
-        OffsetDateTime expiryDateTime = getExpiryDateTime(expiryDuration);
         long expires = expiryDateTime.toEpochSecond();
-        String signature = signRequest(canonicalizedResource, expires);
-        String googleAccessId = getGoogleAccessId();
+        String signature = metrics.time(StorageMetrics.SIGN, bucket, () -> signRequest(canonicalizedResource, expires));
+        metrics.recordSignatures(bucket, 1);
 
         String queryString = String.format("?GoogleAccessId=%s&Expires=%s&Signature=%s", UrlEscapers.urlFormParameterEscaper().escape(googleAccessId), expires, UrlEscapers.urlFormParameterEscaper().escape(signature));
 
         String url = String.format("%s%s%s",
-                BASE_GOOGLE_STORAGE_URL,
+                storageUrl,
                 canonicalizedResource,
                 queryString);
 
@@ -138,6 +441,10 @@ public class GcsJsonApiClient {
         return appIdentityService.getServiceAccountName();
     }
 
+    OffsetDateTime now() {
+        return OffsetDateTime.now(ZoneOffset.UTC);
+    }
+
     OffsetDateTime getExpiryDateTime(Duration expiryDuration) {
         return OffsetDateTime.now().plus(ObjectUtils.defaultIfNull(expiryDuration, DEFAULT_EXPIRY_DURATION));
     }
@@ -155,6 +462,23 @@ public class GcsJsonApiClient {
         return new String(Base64.encode(signature));
     }
 
+    /**
+     * Percent encode everything except the RFC 3986 unreserved characters, and optionally <code>/</code>.
+     */
+    private static String uriEncode(String value, boolean keepSlash) {
+        StringBuilder encoded = new StringBuilder();
+        for (byte b : value.getBytes(StandardCharsets.UTF_8)) {
+            char c = (char) (b & 0xff);
+            if ((c >= 'A' && c <= 'Z') || (c >= 'a' && c <= 'z') || (c >= '0' && c <= '9')
+                    || c == '-' || c == '.' || c == '_' || c == '~' || (keepSlash && c == '/')) {
+                encoded.append(c);
+            } else {
+                encoded.append(String.format("%%%02X", b & 0xff));
+            }
+        }
+        return encoded.toString();
+    }
+
     protected byte[] sign(byte[] data) {
         byte[] signature;
         AppIdentityService.SigningResult signingResult = appIdentityService.signForApp(data);
@@ -4,16 +4,15 @@ import com.google.api.client.http.HttpRequestFactory;
 import com.google.appengine.api.appidentity.AppIdentityService;
 import com.google.auth.oauth2.ServiceAccountCredentials;
 
-import java.security.Signature;
-
 public class LocalGcsJsonApiClient extends GcsJsonApiClient {
 
     private final ServiceAccountCredentials credentials;
+    private final PrivateKeySigner signer;
 
     public LocalGcsJsonApiClient(HttpRequestFactory httpRequestFactory, AppIdentityService appIdentityService, ServiceAccountCredentials credentials) {
         super(httpRequestFactory, appIdentityService);
         this.credentials = credentials;
-
+        this.signer = new PrivateKeySigner(credentials.getPrivateKey());
     }
 
     @Override
@@ -22,17 +21,12 @@ public class LocalGcsJsonApiClient extends GcsJsonApiClient {
     }
 
     @Override
-    protected byte[] sign(byte[] data) {
-        byte[] signature;
-        try {
-            Signature rsa = Signature.getInstance("SHA256withRSA");
-            rsa.initSign(credentials.getPrivateKey());
-            rsa.update(data);
-            signature = rsa.sign();
-        } catch (Exception e) {
-            throw new RuntimeException(String.format("Error signing URL: %s", e.getMessage()) , e);
-        }
+    protected boolean canSignConcurrently() {
+        return true;
+    }
 
-        return signature;
+    @Override
+    protected byte[] sign(byte[] data) {
+        return signer.sign(data);
     }
 }
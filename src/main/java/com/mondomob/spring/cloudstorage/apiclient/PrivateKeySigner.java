@@ -0,0 +1,44 @@
+package com.mondomob.spring.cloudstorage.apiclient;
+
+import org.springframework.util.Assert;
+
+import java.security.GeneralSecurityException;
+import java.security.PrivateKey;
+import java.security.Signature;
+
+/**
+ * Signs data with a service account private key using SHA256withRSA. Looking up the signature provider and initialising it with
+ * the key is done once per thread rather than on every call, so many threads can sign urls concurrently without contention.
+ * Instances are thread safe.
+ */
+public class PrivateKeySigner {
+    static final String ALGORITHM = "SHA256withRSA";
+
+    private final ThreadLocal<Signature> signatures;
+
+    public PrivateKeySigner(PrivateKey privateKey) {
+        Assert.notNull(privateKey, "privateKey required");
+        this.signatures = ThreadLocal.withInitial(() -> newSignature(privateKey));
+    }
+
+    public byte[] sign(byte[] data) {
+        Signature signature = signatures.get();
+        try {
+            signature.update(data);
+            return signature.sign();
+        } catch (Exception e) {
+            signatures.remove();
+            throw new RuntimeException(String.format("Error signing URL: %s", e.getMessage()), e);
+        }
+    }
+
+    private static Signature newSignature(PrivateKey privateKey) {
+        try {
+            Signature signature = Signature.getInstance(ALGORITHM);
+            signature.initSign(privateKey);
+            return signature;
+        } catch (GeneralSecurityException e) {
+            throw new RuntimeException(String.format("Cannot initialise signer: %s", e.getMessage()), e);
+        }
+    }
+}
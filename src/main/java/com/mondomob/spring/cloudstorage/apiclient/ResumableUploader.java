@@ -0,0 +1,243 @@
+package com.mondomob.spring.cloudstorage.apiclient;
+
+import com.google.api.client.http.ByteArrayContent;
+import com.google.api.client.http.EmptyContent;
+import com.google.api.client.http.GenericUrl;
+import com.google.api.client.http.HttpContent;
+import com.google.api.client.http.HttpRequest;
+import com.google.api.client.http.HttpRequestFactory;
+import com.google.api.client.http.HttpResponse;
+import com.google.api.client.util.BackOff;
+import com.google.api.client.util.ExponentialBackOff;
+import com.google.api.client.util.Sleeper;
+import com.google.common.util.concurrent.MoreExecutors;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.util.Assert;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Uploads content from the server to a resumable upload session, such as one from
+ * {@link GcsJsonApiClient#initiateResumableUpload(String, String, String)}, in fixed size chunks. After a failed request the
+ * number of bytes the session has committed is queried and the upload continues from there, so bytes already stored are
+ * never sent again. Only the current chunk (and with read ahead, the next one) is held in memory.
+ *
+ * @see <a href="https://cloud.google.com/storage/docs/performing-resumable-uploads#chunked-upload">Uploading in chunks</a>
+ */
+public class ResumableUploader {
+    public static final int CHUNK_SIZE_MULTIPLE = 256 * 1024;
+    public static final int DEFAULT_CHUNK_SIZE = 32 * CHUNK_SIZE_MULTIPLE;
+    public static final int DEFAULT_MAX_RETRIES = 5;
+    private static final int STATUS_RESUME_INCOMPLETE = 308;
+    private static final Logger LOGGER = LoggerFactory.getLogger(ResumableUploader.class);
+
+    private final HttpRequestFactory httpRequestFactory;
+    private final int chunkSize;
+    private final int maxRetries;
+    private final boolean readAhead;
+    private final Sleeper sleeper;
+
+    /**
+     * @param httpRequestFactory factory for requests to the upload session
+     * @param chunkSize          bytes sent per request, a multiple of {@value CHUNK_SIZE_MULTIPLE}
+     * @param maxRetries         failed requests retried in a row before the upload is abandoned
+     * @param readAhead          read the next chunk from the source while the current chunk uploads
+     */
+    public ResumableUploader(HttpRequestFactory httpRequestFactory, int chunkSize, int maxRetries, boolean readAhead) {
+        this(httpRequestFactory, chunkSize, maxRetries, readAhead, Sleeper.DEFAULT);
+    }
+
+    ResumableUploader(HttpRequestFactory httpRequestFactory, int chunkSize, int maxRetries, boolean readAhead, Sleeper sleeper) {
+        Assert.isTrue(chunkSize > 0 && chunkSize % CHUNK_SIZE_MULTIPLE == 0,
+                String.format("chunkSize must be a positive multiple of %s", CHUNK_SIZE_MULTIPLE));
+        Assert.isTrue(maxRetries >= 0, "maxRetries must not be negative");
+        this.httpRequestFactory = httpRequestFactory;
+        this.chunkSize = chunkSize;
+        this.maxRetries = maxRetries;
+        this.readAhead = readAhead;
+        this.sleeper = sleeper;
+    }
+
+    /**
+     * Upload all of the content to the session. The stream is not closed, and is no longer read once this returns or throws.
+     *
+     * @param sessionUri the upload session url
+     * @param content    the content to upload
+     * @return the number of bytes uploaded
+     */
+    public long upload(String sessionUri, InputStream content) {
+        ExecutorService executor = readAhead ? Executors.newSingleThreadExecutor(new ThreadFactoryBuilder()
+                .setDaemon(true)
+                .setNameFormat("gcs-upload-read-%d")
+                .build()) : MoreExecutors.newDirectExecutorService();
+        try {
+            byte[] buffer = new byte[chunkSize];
+            byte[] nextBuffer = readAhead ? new byte[chunkSize] : buffer;
+            long offset = 0;
+            int length = fill(content, buffer);
+            while (true) {
+                boolean last = length < chunkSize;
+                Future<Integer> nextLength = null;
+                if (!last && readAhead) {
+                    byte[] target = nextBuffer;
+                    nextLength = executor.submit(() -> fill(content, target));
+                }
+
+                sendChunk(sessionUri, buffer, length, offset, last ? offset + length : null);
+                offset += length;
+                if (last) {
+                    return offset;
+                }
+
+                if (readAhead) {
+                    length = nextLength.get();
+                    byte[] uploaded = buffer;
+                    buffer = nextBuffer;
+                    nextBuffer = uploaded;
+                } else {
+                    length = fill(content, buffer);
+                }
+            }
+        } catch (IOException e) {
+            throw new RuntimeException(String.format("Cannot read upload content: %s", e.getMessage()), e);
+        } catch (ExecutionException e) {
+            throw new RuntimeException(String.format("Cannot read upload content: %s", e.getCause().getMessage()), e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted uploading content", e);
+        } finally {
+            shutdown(executor);
+        }
+    }
+
+    /**
+     * Stop reading ahead and wait for a read that is still running, so that the stream is not read after the upload has
+     * returned or thrown and the caller may close it.
+     */
+    private static void shutdown(ExecutorService executor) {
+        executor.shutdownNow();
+        try {
+            executor.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            LOGGER.warn("Interrupted waiting for upload read ahead to finish, the content stream may still be read");
+        }
+    }
+
+    /**
+     * Send one chunk, retrying from the committed offset until the session has all of it.
+     *
+     * @param total the size of the whole upload if this is the last chunk, otherwise null
+     */
+    private void sendChunk(String sessionUri, byte[] buffer, int length, long chunkOffset, Long total) throws InterruptedException {
+        long chunkEnd = chunkOffset + length;
+        long committed = chunkOffset;
+        boolean queryCommitted = false;
+        int failures = 0;
+        BackOff backOff = new ExponentialBackOff();
+        while (true) {
+            String failure;
+            try {
+                HttpResponse response = queryCommitted
+                        ? put(sessionUri, new EmptyContent(), String.format("bytes */%s", total == null ? "*" : total))
+                        : put(sessionUri, buffer, (int) (committed - chunkOffset), (int) (chunkEnd - committed), committed, total);
+                try {
+                    int status = response.getStatusCode();
+                    if (status == 200 || status == 201) {
+                        if (total == null) {
+                            throw new IllegalStateException(String.format("Upload session completed at offset %s before the last chunk was sent", committed));
+                        }
+                        return;
+                    }
+                    if (status == STATUS_RESUME_INCOMPLETE) {
+                        long sessionOffset = committedOffset(response);
+                        if (sessionOffset < chunkOffset) {
+                            throw new IllegalStateException(String.format("Upload session only has %s bytes but %s were already confirmed", sessionOffset, chunkOffset));
+                        }
+                        boolean progressed = queryCommitted || sessionOffset > committed;
+                        committed = Math.min(sessionOffset, chunkEnd);
+                        queryCommitted = false;
+                        if (total == null && committed == chunkEnd) {
+                            return;
+                        }
+                        if (progressed) {
+                            continue;
+                        }
+                        failure = "no bytes were committed";
+                    } else if (status == 408 || status == 429 || status >= 500) {
+                        failure = String.format("status %s", status);
+                    } else {
+                        throw new RuntimeException(String.format("Upload to session failed with status %s: %s", status, response.getStatusMessage()));
+                    }
+                } finally {
+                    response.disconnect();
+                }
+            } catch (IOException e) {
+                failure = e.getMessage();
+            }
+
+            long delay = nextBackOffMillis(backOff);
+            if (++failures > maxRetries || delay == BackOff.STOP) {
+                throw new RuntimeException(String.format("Cannot upload bytes from offset %s after %s attempts: %s", committed, failures, failure));
+            }
+            sleeper.sleep(delay);
+            queryCommitted = true;
+        }
+    }
+
+    private HttpResponse put(String sessionUri, byte[] buffer, int start, int length, long offset, Long total) throws IOException {
+        if (length == 0) {
+            return put(sessionUri, new EmptyContent(), String.format("bytes */%s", total));
+        }
+        String contentRange = String.format("bytes %s-%s/%s", offset, offset + length - 1, total == null ? "*" : total);
+        return put(sessionUri, new ByteArrayContent(null, buffer, start, length), contentRange);
+    }
+
+    private HttpResponse put(String sessionUri, HttpContent content, String contentRange) throws IOException {
+        HttpRequest request = httpRequestFactory.buildPutRequest(new GenericUrl(sessionUri), content);
+        request.getHeaders().setContentRange(contentRange);
+        request.setThrowExceptionOnExecuteError(false);
+        request.setFollowRedirects(false);
+        request.setNumberOfRetries(0);
+        return request.execute();
+    }
+
+    private static long nextBackOffMillis(BackOff backOff) {
+        try {
+            return backOff.nextBackOffMillis();
+        } catch (IOException e) {
+            return BackOff.STOP;
+        }
+    }
+
+    /**
+     * @return the number of bytes the session has stored, from a range header like <code>bytes=0-1048575</code>.
+     */
+    private static long committedOffset(HttpResponse response) {
+        String range = response.getHeaders().getRange();
+        if (range == null) {
+            return 0;
+        }
+        return Long.parseLong(range.substring(range.indexOf('-') + 1).trim()) + 1;
+    }
+
+    private static int fill(InputStream content, byte[] buffer) throws IOException {
+        int length = 0;
+        while (length < buffer.length) {
+            int read = content.read(buffer, length, buffer.length - length);
+            if (read < 0) {
+                break;
+            }
+            length += read;
+        }
+        return length;
+    }
+}
@@ -0,0 +1,31 @@
+package com.mondomob.spring.cloudstorage.apiclient;
+
+import java.time.OffsetDateTime;
+import java.util.Collections;
+import java.util.Map;
+
+/**
+ * A V4 signed url to <code>PUT</code> a single object, along with the headers the upload request must send exactly as given.
+ */
+public class SignedUploadUrl extends SignedUrl {
+    private final String name;
+    private final Map<String, String> headers;
+
+    public SignedUploadUrl(String url, OffsetDateTime expiresAt, String name, Map<String, String> headers) {
+        super(url, expiresAt);
+        this.name = name;
+        this.headers = Collections.unmodifiableMap(headers);
+    }
+
+    /**
+     * @return the name the object will be stored as. Use this to generate download urls, as a signed url upload does not
+     * return the object metadata.
+     */
+    public String getName() {
+        return name;
+    }
+
+    public Map<String, String> getHeaders() {
+        return headers;
+    }
+}
@@ -0,0 +1,58 @@
+package com.mondomob.spring.cloudstorage.apiclient;
+
+import java.time.Duration;
+import java.util.Objects;
+
+/**
+ * An object to generate a signed url for with {@link GcsJsonApiClient#generateSignedUrls(java.util.Collection)}.
+ */
+public class SignedUrlRequest {
+    private final String bucket;
+    private final String name;
+    private final Duration expiryDuration;
+
+    /**
+     * @param bucket         the bucket where the resource is stored
+     * @param name           the resource name
+     * @param expiryDuration the duration until the link expires, or null for the default
+     */
+    public SignedUrlRequest(String bucket, String name, Duration expiryDuration) {
+        this.bucket = bucket;
+        this.name = name;
+        this.expiryDuration = expiryDuration;
+    }
+
+    public String getBucket() {
+        return bucket;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public Duration getExpiryDuration() {
+        return expiryDuration;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (o == null || getClass() != o.getClass()) {
+            return false;
+        }
+        SignedUrlRequest that = (SignedUrlRequest) o;
+        return Objects.equals(bucket, that.bucket) && Objects.equals(name, that.name) && Objects.equals(expiryDuration, that.expiryDuration);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(bucket, name, expiryDuration);
+    }
+
+    @Override
+    public String toString() {
+        return String.format("SignedUrlRequest{bucket=%s, name=%s, expiryDuration=%s}", bucket, name, expiryDuration);
+    }
+}
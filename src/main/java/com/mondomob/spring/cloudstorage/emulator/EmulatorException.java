@@ -0,0 +1,17 @@
+package com.mondomob.spring.cloudstorage.emulator;
+
+/**
+ * A request the emulator rejects, returned to the client as a JSON error with the given status.
+ */
+class EmulatorException extends RuntimeException {
+    private final int status;
+
+    EmulatorException(int status, String message) {
+        super(message);
+        this.status = status;
+    }
+
+    int getStatus() {
+        return status;
+    }
+}
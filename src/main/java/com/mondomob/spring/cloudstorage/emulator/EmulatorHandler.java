@@ -0,0 +1,553 @@
+package com.mondomob.spring.cloudstorage.emulator;
+
+import com.google.api.client.json.JsonFactory;
+import com.google.api.client.json.jackson2.JacksonFactory;
+import com.google.api.services.storage.model.Bucket;
+import com.google.api.services.storage.model.ComposeRequest;
+import com.google.api.services.storage.model.Objects;
+import com.google.api.services.storage.model.RewriteResponse;
+import com.google.api.services.storage.model.StorageObject;
+import com.google.common.io.ByteStreams;
+import com.google.common.net.UrlEscapers;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import org.apache.commons.lang3.ObjectUtils;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+import java.math.BigInteger;
+import java.net.URI;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+
+/**
+ * Serves the parts of the cloud storage JSON API used by the google-cloud-storage client and {@link
+ * com.mondomob.spring.cloudstorage.apiclient.GcsJsonApiClient}: object metadata, media downloads with byte ranges, listing,
+ * multipart and resumable uploads, rewrite, copy, compose, patch, delete and batch requests. Signed urls are served on the
+ * XML API style <code>/bucket/object</code> path without checking their signature.
+ */
+class EmulatorHandler implements HttpHandler {
+    private static final JsonFactory JSON_FACTORY = JacksonFactory.getDefaultInstance();
+    private static final String JSON_CONTENT_TYPE = "application/json; charset=UTF-8";
+    private static final String API_PATH = "/storage/v1/b/";
+    private static final String UPLOAD_PATH = "/upload/storage/v1/b/";
+    private static final String DOWNLOAD_PATH = "/download/storage/v1/b/";
+    private static final String BATCH_PATH = "/batch/storage/v1";
+    private static final int STATUS_RESUME_INCOMPLETE = 308;
+    private static final int STATUS_CLIENT_CLOSED_REQUEST = 499;
+    private static final int DEFAULT_MAX_RESULTS = 1000;
+    private static final Pattern RANGE = Pattern.compile("bytes=(\\d*)-(\\d*)");
+    private static final Pattern CONTENT_RANGE = Pattern.compile("bytes (?:\\*|(\\d+)-(\\d+))/(\\*|\\d+)");
+
+    private final EmulatorStore store;
+    private final String host;
+
+    EmulatorHandler(EmulatorStore store, String host) {
+        this.store = store;
+        this.host = host;
+    }
+
+    @Override
+    public void handle(HttpExchange exchange) throws IOException {
+        try {
+            Map<String, String> headers = new LinkedHashMap<>();
+            exchange.getRequestHeaders().forEach((name, values) -> headers.put(name, values.get(0)));
+            Request request = new Request(exchange.getRequestMethod(), exchange.getRequestURI().getRawPath(),
+                    exchange.getRequestURI().getRawQuery(), headers, ByteStreams.toByteArray(exchange.getRequestBody()));
+
+            Response response = handle(request);
+            response.headers.forEach(exchange.getResponseHeaders()::set);
+            boolean noBody = response.body.length == 0 || "HEAD".equals(request.method);
+            exchange.sendResponseHeaders(response.status, noBody ? -1 : response.body.length);
+            if (!noBody) {
+                try (OutputStream body = exchange.getResponseBody()) {
+                    body.write(response.body);
+                }
+            }
+        } finally {
+            exchange.close();
+        }
+    }
+
+    Response handle(Request request) {
+        try {
+            return route(request);
+        } catch (EmulatorException e) {
+            return error(e.getStatus(), e.getMessage());
+        } catch (IOException | RuntimeException e) {
+            return error(500, String.format("Emulator failed: %s", e.getMessage()));
+        }
+    }
+
+    private Response route(Request request) throws IOException {
+        String path = request.path;
+        if (path.startsWith(BATCH_PATH)) {
+            return batch(request);
+        }
+        if (path.startsWith(UPLOAD_PATH)) {
+            return upload(request, segments(path.substring(UPLOAD_PATH.length())));
+        }
+        if (path.startsWith(DOWNLOAD_PATH)) {
+            return objects(request, segments(path.substring(DOWNLOAD_PATH.length())));
+        }
+        if (path.startsWith(API_PATH)) {
+            return objects(request, segments(path.substring(API_PATH.length())));
+        }
+        return xml(request);
+    }
+
+    private Response objects(Request request, List<String> segments) throws IOException {
+        String bucket = segments.get(0);
+        if (segments.size() == 1 && request.is("GET")) {
+            return json(200, new Bucket().setKind("storage#bucket").setId(bucket).setName(bucket).setStorageClass("STANDARD"));
+        }
+        if (segments.size() < 2 || !"o".equals(segments.get(1))) {
+            throw unsupported(request);
+        }
+        if (segments.size() == 2 && request.is("GET")) {
+            return list(request, bucket);
+        }
+
+        String name = segments.get(2);
+        if (segments.size() == 3 && request.is("GET")) {
+            StoredObject object = store.get(bucket, name, Preconditions.of(request.query));
+            return "media".equals(request.query.get("alt")) ? media(request, object) : json(200, object.getMetadata());
+        }
+        if (segments.size() == 3 && request.is("DELETE")) {
+            store.delete(bucket, name, Preconditions.of(request.query));
+            return new Response(204);
+        }
+        if (segments.size() == 3 && (request.is("PATCH") || request.is("PUT"))) {
+            return json(200, store.update(bucket, name, parseMetadata(request.body), Preconditions.of(request.query)).getMetadata());
+        }
+        if (segments.size() == 4 && "compose".equals(segments.get(3)) && request.is("POST")) {
+            return compose(request, bucket, name);
+        }
+        if (segments.size() == 8 && "b".equals(segments.get(4)) && "o".equals(segments.get(6)) && request.is("POST")) {
+            if ("rewriteTo".equals(segments.get(3))) {
+                return rewrite(request, bucket, name, segments.get(5), segments.get(7), false);
+            }
+            if ("copyTo".equals(segments.get(3))) {
+                return rewrite(request, bucket, name, segments.get(5), segments.get(7), true);
+            }
+        }
+        throw unsupported(request);
+    }
+
+    /**
+     * Lists objects in name order, with the "sub-directories" of a delimiter listing sorted among them. Page tokens are the last
+     * name or prefix returned.
+     */
+    private Response list(Request request, String bucket) throws IOException {
+        String prefix = request.query.getOrDefault("prefix", "");
+        String delimiter = request.query.get("delimiter");
+        String pageToken = request.query.get("pageToken");
+        int maxResults = request.query.containsKey("maxResults") ? Integer.parseInt(request.query.get("maxResults")) : DEFAULT_MAX_RESULTS;
+
+        List<StorageObject> items = new ArrayList<>();
+        List<String> prefixes = new ArrayList<>();
+        String last = null;
+        String nextPageToken = null;
+        for (StoredObject object : store.list(bucket, prefix)) {
+            String entry = object.getName();
+            int delimiterIndex = delimiter == null ? -1 : entry.indexOf(delimiter, prefix.length());
+            if (delimiterIndex >= 0) {
+                entry = entry.substring(0, delimiterIndex + delimiter.length());
+            }
+            if ((pageToken != null && entry.compareTo(pageToken) <= 0) || entry.equals(last)) {
+                continue;
+            }
+            if (items.size() + prefixes.size() == maxResults) {
+                nextPageToken = last;
+                break;
+            }
+            if (delimiterIndex >= 0) {
+                prefixes.add(entry);
+            } else {
+                items.add(object.getMetadata());
+            }
+            last = entry;
+        }
+        return json(200, new Objects()
+                .setKind("storage#objects")
+                .setItems(items)
+                .setPrefixes(prefixes.isEmpty() ? null : prefixes)
+                .setNextPageToken(nextPageToken));
+    }
+
+    private Response media(Request request, StoredObject object) {
+        StorageObject metadata = object.getMetadata();
+        byte[] content = object.getContent();
+        Response response = new Response(200)
+                .header("Content-Type", metadata.getContentType())
+                .header("ETag", metadata.getEtag())
+                .header("x-goog-generation", metadata.getGeneration())
+                .header("x-goog-metageneration", metadata.getMetageneration())
+                .header("x-goog-stored-content-length", content.length)
+                .header("x-goog-hash", String.format("crc32c=%s,md5=%s", metadata.getCrc32c(), metadata.getMd5Hash()));
+
+        Matcher range = RANGE.matcher(ObjectUtils.defaultIfNull(request.header("range"), ""));
+        if (!range.matches() || (range.group(1).isEmpty() && range.group(2).isEmpty())) {
+            return response.body(content);
+        }
+        long start;
+        long end;
+        if (range.group(1).isEmpty()) {
+            start = Math.max(0, content.length - Long.parseLong(range.group(2)));
+            end = content.length - 1;
+        } else {
+            start = Long.parseLong(range.group(1));
+            end = range.group(2).isEmpty() ? content.length - 1 : Math.min(Long.parseLong(range.group(2)), content.length - 1);
+        }
+        if (start >= content.length || end < start) {
+            throw new EmulatorException(416, String.format("Range %s is not satisfiable for %s bytes", request.header("range"), content.length));
+        }
+        return response
+                .status(206)
+                .header("Content-Range", String.format("bytes %s-%s/%s", start, end, content.length))
+                .body(Arrays.copyOfRange(content, (int) start, (int) end + 1));
+    }
+
+    private Response upload(Request request, List<String> segments) throws IOException {
+        if (segments.size() != 2 || !"o".equals(segments.get(1))) {
+            throw unsupported(request);
+        }
+        String bucket = segments.get(0);
+        String uploadId = request.query.get("upload_id");
+        if (uploadId != null && (request.is("PUT") || request.is("POST"))) {
+            return uploadChunk(request, uploadId);
+        }
+        if (uploadId != null && request.is("DELETE")) {
+            store.cancelUpload(uploadId);
+            return new Response(STATUS_CLIENT_CLOSED_REQUEST);
+        }
+        if (!request.is("POST")) {
+            throw unsupported(request);
+        }
+
+        Preconditions preconditions = Preconditions.of(request.query);
+        String uploadType = request.query.getOrDefault("uploadType", "media");
+        if ("resumable".equals(uploadType)) {
+            StorageObject metadata = parseMetadata(request.body).setBucket(bucket);
+            if (metadata.getContentType() == null) {
+                metadata.setContentType(request.header("x-upload-content-type"));
+            }
+            String sessionId = store.startUpload(withName(metadata, request), preconditions);
+            return new Response(200).header("Location", String.format("%s%s%s/o?uploadType=resumable&upload_id=%s",
+                    host, UPLOAD_PATH, UrlEscapers.urlPathSegmentEscaper().escape(bucket), sessionId));
+        }
+        if ("multipart".equals(uploadType)) {
+            List<HttpMessage> parts = HttpMessage.parseMultipart(request.header("content-type"), request.body);
+            if (parts.size() != 2) {
+                throw new EmulatorException(400, String.format("Multipart upload has %s parts instead of metadata and media", parts.size()));
+            }
+            StorageObject metadata = parseMetadata(parts.get(0).getBody()).setBucket(bucket);
+            if (metadata.getContentType() == null) {
+                metadata.setContentType(parts.get(1).getHeader("content-type"));
+            }
+            return json(200, store.put(withName(metadata, request), parts.get(1).getBody(), preconditions).getMetadata());
+        }
+        StorageObject metadata = new StorageObject().setBucket(bucket).setContentType(request.header("content-type"));
+        return json(200, store.put(withName(metadata, request), request.body, preconditions).getMetadata());
+    }
+
+    /**
+     * Stores a chunk of a resumable upload. Until the total size is known and received the response is 308 with the range of
+     * bytes received, like cloud storage.
+     */
+    private Response uploadChunk(Request request, String uploadId) throws IOException {
+        EmulatorStore.UploadSession upload = store.getUpload(uploadId);
+        String contentRange = request.header("content-range");
+        Long total;
+        if (contentRange == null) {
+            upload.write(0, request.body);
+            total = (long) request.body.length;
+        } else {
+            Matcher matcher = CONTENT_RANGE.matcher(contentRange.trim());
+            if (!matcher.matches()) {
+                throw new EmulatorException(400, String.format("Invalid Content-Range %s", contentRange));
+            }
+            if (matcher.group(1) != null) {
+                long start = Long.parseLong(matcher.group(1));
+                long end = Long.parseLong(matcher.group(2));
+                if (end - start + 1 != request.body.length) {
+                    throw new EmulatorException(400, String.format("Content-Range %s does not match the %s bytes sent", contentRange, request.body.length));
+                }
+                upload.write(start, request.body);
+            }
+            total = "*".equals(matcher.group(3)) ? null : Long.valueOf(matcher.group(3));
+        }
+
+        long size = upload.size();
+        if (total != null && size > total) {
+            throw new EmulatorException(400, String.format("Received %s bytes but the upload is %s bytes", size, total));
+        }
+        if (total != null && size == total) {
+            return json(200, store.finishUpload(uploadId).getMetadata());
+        }
+        Response response = new Response(STATUS_RESUME_INCOMPLETE);
+        if (size > 0) {
+            response.header("Range", String.format("bytes=0-%s", size - 1));
+        }
+        return response;
+    }
+
+    private Response rewrite(Request request, String sourceBucket, String sourceName, String bucket, String name, boolean copy)
+            throws IOException {
+        StoredObject source = store.get(sourceBucket, sourceName, Preconditions.ofSource(request.query));
+        StorageObject metadata = source.getMetadata();
+        if (request.body.length > 0) {
+            EmulatorStore.merge(metadata, parseMetadata(request.body));
+        }
+        StoredObject target = store.put(metadata.setBucket(bucket).setName(name), source.getContent(), Preconditions.of(request.query));
+        if (copy) {
+            return json(200, target.getMetadata());
+        }
+        BigInteger size = BigInteger.valueOf(source.getContent().length);
+        return json(200, new RewriteResponse()
+                .setKind("storage#rewriteResponse")
+                .setDone(true)
+                .setObjectSize(size)
+                .setTotalBytesRewritten(size)
+                .setResource(target.getMetadata()));
+    }
+
+    private Response compose(Request request, String bucket, String name) throws IOException {
+        ComposeRequest compose = JSON_FACTORY.fromInputStream(new ByteArrayInputStream(request.body), StandardCharsets.UTF_8, ComposeRequest.class);
+        ByteArrayOutputStream content = new ByteArrayOutputStream();
+        for (ComposeRequest.SourceObjects source : compose.getSourceObjects()) {
+            Long ifGenerationMatch = source.getObjectPreconditions() == null ? null : source.getObjectPreconditions().getIfGenerationMatch();
+            StoredObject object = store.get(bucket, source.getName(), new Preconditions(source.getGeneration(), ifGenerationMatch, null, null, null));
+            content.write(object.getContent(), 0, object.getContent().length);
+        }
+        StorageObject metadata = ObjectUtils.defaultIfNull(compose.getDestination(), new StorageObject())
+                .setBucket(bucket)
+                .setName(name)
+                .setComponentCount(compose.getSourceObjects().size());
+        return json(200, store.put(metadata, content.toByteArray(), Preconditions.of(request.query)).getMetadata());
+    }
+
+    /**
+     * Signed urls and other XML API style requests to <code>/bucket/object</code>.
+     */
+    private Response xml(Request request) {
+        int slash = request.path.indexOf('/', 1);
+        if (slash < 0) {
+            throw unsupported(request);
+        }
+        String bucket = decode(request.path.substring(1, slash));
+        String name = decode(request.path.substring(slash + 1));
+        if (request.is("GET") || request.is("HEAD")) {
+            return media(request, store.get(bucket, name, Preconditions.NONE));
+        }
+        if (request.is("PUT")) {
+            String ifGenerationMatch = request.header("x-goog-if-generation-match");
+            StorageObject metadata = new StorageObject().setBucket(bucket).setName(name).setContentType(request.header("content-type"));
+            StoredObject object = store.put(metadata, request.body,
+                    new Preconditions(null, ifGenerationMatch == null ? null : Long.valueOf(ifGenerationMatch), null, null, null));
+            return new Response(200)
+                    .header("ETag", object.getMetadata().getEtag())
+                    .header("x-goog-generation", object.getGeneration());
+        }
+        if (request.is("DELETE")) {
+            store.delete(bucket, name, Preconditions.NONE);
+            return new Response(204);
+        }
+        throw unsupported(request);
+    }
+
+    /**
+     * Runs each request of a <code>multipart/mixed</code> batch in order and returns their responses in the same form.
+     */
+    private Response batch(Request request) {
+        String boundary = String.format("batch_%s", UUID.randomUUID().toString().replace("-", ""));
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+        for (HttpMessage part : HttpMessage.parseMultipart(request.header("content-type"), request.body)) {
+            HttpMessage message = HttpMessage.parse(part.getBody(), true);
+            String[] requestLine = ObjectUtils.defaultIfNull(message.getStartLine(), "").split(" ");
+            if (requestLine.length < 2) {
+                throw new EmulatorException(400, String.format("Invalid batch request line %s", message.getStartLine()));
+            }
+            URI uri = URI.create(requestLine[1]);
+            Response response = handle(new Request(requestLine[0], uri.getRawPath(), uri.getRawQuery(), message.getHeaders(), message.getBody()));
+
+            write(body, String.format("--%s\r\nContent-Type: application/http\r\n", boundary));
+            if (part.getHeader("content-id") != null) {
+                write(body, String.format("Content-ID: response-%s\r\n", part.getHeader("content-id")));
+            }
+            write(body, String.format("\r\nHTTP/1.1 %s %s\r\n", response.status, reasonPhrase(response.status)));
+            response.headers.forEach((name, value) -> write(body, String.format("%s: %s\r\n", name, value)));
+            write(body, String.format("Content-Length: %s\r\n\r\n", response.body.length));
+            body.write(response.body, 0, response.body.length);
+            write(body, "\r\n");
+        }
+        write(body, String.format("--%s--\r\n", boundary));
+        return new Response(200)
+                .header("Content-Type", String.format("multipart/mixed; boundary=%s", boundary))
+                .body(body.toByteArray());
+    }
+
+    private StorageObject withName(StorageObject metadata, Request request) {
+        String name = ObjectUtils.defaultIfNull(request.query.get("name"), metadata.getName());
+        if (name == null) {
+            throw new EmulatorException(400, "Upload has no object name");
+        }
+        return metadata.setName(name);
+    }
+
+    private Response json(int status, Object content) throws IOException {
+        return new Response(status)
+                .header("Content-Type", JSON_CONTENT_TYPE)
+                .body(JSON_FACTORY.toByteArray(content));
+    }
+
+    private Response error(int status, String message) {
+        Map<String, Object> error = new LinkedHashMap<>();
+        error.put("code", status);
+        error.put("message", message);
+        error.put("errors", Collections.singletonList(Collections.singletonMap("message", message)));
+        try {
+            return json(status, Collections.singletonMap("error", error));
+        } catch (IOException e) {
+            return new Response(status);
+        }
+    }
+
+    private static StorageObject parseMetadata(byte[] json) throws IOException {
+        if (json.length == 0) {
+            return new StorageObject();
+        }
+        return JSON_FACTORY.fromInputStream(new ByteArrayInputStream(json), StandardCharsets.UTF_8, StorageObject.class);
+    }
+
+    private static EmulatorException unsupported(Request request) {
+        return new EmulatorException(400, String.format("Unsupported request %s %s", request.method, request.path));
+    }
+
+    private static List<String> segments(String path) {
+        return Arrays.stream(path.split("/"))
+                .map(EmulatorHandler::decode)
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * Decode a percent encoded path, where unlike a query string <code>+</code> is not a space.
+     */
+    private static String decode(String path) {
+        try {
+            return URLDecoder.decode(path.replace("+", "%2B"), StandardCharsets.UTF_8.name());
+        } catch (UnsupportedEncodingException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static void write(ByteArrayOutputStream out, String text) {
+        byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+        out.write(bytes, 0, bytes.length);
+    }
+
+    private static String reasonPhrase(int status) {
+        switch (status) {
+            case 200:
+                return "OK";
+            case 204:
+                return "No Content";
+            case 206:
+                return "Partial Content";
+            case STATUS_RESUME_INCOMPLETE:
+                return "Resume Incomplete";
+            case 400:
+                return "Bad Request";
+            case 404:
+                return "Not Found";
+            case 412:
+                return "Precondition Failed";
+            case 416:
+                return "Requested Range Not Satisfiable";
+            default:
+                return "Error";
+        }
+    }
+
+    /**
+     * A request to the emulator, either received directly or one of the requests in a batch. Header names are lower case.
+     */
+    static class Request {
+        private final String method;
+        private final String path;
+        private final Map<String, String> query = new LinkedHashMap<>();
+        private final Map<String, String> headers = new LinkedHashMap<>();
+        private final byte[] body;
+
+        Request(String method, String path, String query, Map<String, String> headers, byte[] body) {
+            headers.forEach((name, value) -> this.headers.put(name.toLowerCase(), value));
+            this.method = this.headers.getOrDefault("x-http-method-override", method).toUpperCase();
+            this.path = path;
+            this.body = body;
+            if (query != null) {
+                for (String parameter : query.split("&")) {
+                    int equals = parameter.indexOf('=');
+                    if (equals > 0) {
+                        this.query.put(decodeQuery(parameter.substring(0, equals)), decodeQuery(parameter.substring(equals + 1)));
+                    }
+                }
+            }
+        }
+
+        boolean is(String method) {
+            return this.method.equals(method);
+        }
+
+        String header(String name) {
+            return headers.get(name);
+        }
+
+        private static String decodeQuery(String value) {
+            try {
+                return URLDecoder.decode(value, StandardCharsets.UTF_8.name());
+            } catch (UnsupportedEncodingException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+    }
+
+    static class Response {
+        private final Map<String, String> headers = new LinkedHashMap<>();
+        private int status;
+        private byte[] body = new byte[0];
+
+        Response(int status) {
+            this.status = status;
+        }
+
+        Response status(int status) {
+            this.status = status;
+            return this;
+        }
+
+        Response header(String name, Object value) {
+            if (value != null) {
+                headers.put(name, String.valueOf(value));
+            }
+            return this;
+        }
+
+        Response body(byte[] body) {
+            this.body = body;
+            return this;
+        }
+    }
+}
@@ -0,0 +1,214 @@
+package com.mondomob.spring.cloudstorage.emulator;
+
+import com.google.api.client.util.Data;
+import com.google.api.client.util.DateTime;
+import com.google.api.services.storage.model.StorageObject;
+import com.google.common.hash.Hashing;
+import com.google.common.io.BaseEncoding;
+import com.google.common.primitives.Ints;
+import com.google.common.primitives.Longs;
+import org.apache.commons.lang3.ObjectUtils;
+
+import java.io.ByteArrayOutputStream;
+import java.math.BigInteger;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Objects and upload sessions of every bucket, held in memory. Buckets are created on first use. Only the live version of each
+ * object is kept, and every write gives it a new, increasing generation. Changes are serialised so that preconditions are
+ * checked and applied atomically, reads do not lock.
+ */
+class EmulatorStore {
+    private static final String DEFAULT_CONTENT_TYPE = "application/octet-stream";
+    private static final String DEFAULT_STORAGE_CLASS = "STANDARD";
+
+    private final Map<String, NavigableMap<String, StoredObject>> buckets = new ConcurrentHashMap<>();
+    private final Map<String, UploadSession> uploads = new ConcurrentHashMap<>();
+    private final AtomicLong generations = new AtomicLong(System.currentTimeMillis() * 1000);
+
+    StoredObject get(String bucket, String name, Preconditions preconditions) {
+        StoredObject object = objects(bucket).get(name);
+        preconditions.check(object, true);
+        return object;
+    }
+
+    /**
+     * @return the objects of a bucket whose name starts with {@code prefix}, in name order.
+     */
+    Iterable<StoredObject> list(String bucket, String prefix) {
+        return () -> objects(bucket).tailMap(prefix, true).values().stream()
+                .filter(object -> object.getName().startsWith(prefix))
+                .iterator();
+    }
+
+    /**
+     * Store a new generation of an object, replacing the live one.
+     *
+     * @param metadata the bucket, name and any user supplied metadata, generated fields are replaced.
+     */
+    synchronized StoredObject put(StorageObject metadata, byte[] content, Preconditions preconditions) {
+        NavigableMap<String, StoredObject> objects = objects(metadata.getBucket());
+        preconditions.check(objects.get(metadata.getName()), false);
+
+        long generation = generations.incrementAndGet();
+        DateTime now = new DateTime(System.currentTimeMillis());
+        StorageObject stored = metadata.clone()
+                .setKind("storage#object")
+                .setId(String.format("%s/%s/%s", metadata.getBucket(), metadata.getName(), generation))
+                .setGeneration(generation)
+                .setMetageneration(1L)
+                .setEtag(etag(generation, 1L))
+                .setSize(BigInteger.valueOf(content.length))
+                .setMd5Hash(BaseEncoding.base64().encode(Hashing.md5().hashBytes(content).asBytes()))
+                .setCrc32c(BaseEncoding.base64().encode(Ints.toByteArray(Hashing.crc32c().hashBytes(content).asInt())))
+                .setContentType(ObjectUtils.defaultIfNull(metadata.getContentType(), DEFAULT_CONTENT_TYPE))
+                .setStorageClass(ObjectUtils.defaultIfNull(metadata.getStorageClass(), DEFAULT_STORAGE_CLASS))
+                .setTimeCreated(now)
+                .setUpdated(now);
+        StoredObject object = new StoredObject(stored, content);
+        objects.put(metadata.getName(), object);
+        return object;
+    }
+
+    /**
+     * Change the metadata of the live version, keeping its generation and content.
+     */
+    synchronized StoredObject update(String bucket, String name, StorageObject changes, Preconditions preconditions) {
+        StoredObject existing = get(bucket, name, preconditions);
+        long metageneration = existing.getMetageneration() + 1;
+        StorageObject updated = merge(existing.getMetadata(), changes)
+                .setMetageneration(metageneration)
+                .setEtag(etag(existing.getGeneration(), metageneration))
+                .setUpdated(new DateTime(System.currentTimeMillis()));
+        StoredObject object = new StoredObject(updated, existing.getContent());
+        objects(bucket).put(name, object);
+        return object;
+    }
+
+    synchronized void delete(String bucket, String name, Preconditions preconditions) {
+        get(bucket, name, preconditions);
+        objects(bucket).remove(name);
+    }
+
+    /**
+     * @return the id of a new resumable upload session.
+     */
+    String startUpload(StorageObject metadata, Preconditions preconditions) {
+        String uploadId = UUID.randomUUID().toString();
+        uploads.put(uploadId, new UploadSession(metadata, preconditions));
+        return uploadId;
+    }
+
+    UploadSession getUpload(String uploadId) {
+        UploadSession upload = uploads.get(uploadId);
+        if (upload == null) {
+            throw new EmulatorException(404, String.format("No such upload session %s", uploadId));
+        }
+        return upload;
+    }
+
+    /**
+     * Store the content of an upload session as a new generation and end the session.
+     */
+    StoredObject finishUpload(String uploadId) {
+        UploadSession upload = getUpload(uploadId);
+        uploads.remove(uploadId);
+        return put(upload.metadata, upload.getContent(), upload.preconditions);
+    }
+
+    void cancelUpload(String uploadId) {
+        uploads.remove(uploadId);
+    }
+
+    void clear() {
+        buckets.clear();
+        uploads.clear();
+    }
+
+    /**
+     * Apply the metadata fields that can be changed without rewriting the object.
+     */
+    static StorageObject merge(StorageObject metadata, StorageObject changes) {
+        if (changes.getContentType() != null) {
+            metadata.setContentType(changes.getContentType());
+        }
+        if (changes.getContentEncoding() != null) {
+            metadata.setContentEncoding(changes.getContentEncoding());
+        }
+        if (changes.getContentDisposition() != null) {
+            metadata.setContentDisposition(changes.getContentDisposition());
+        }
+        if (changes.getContentLanguage() != null) {
+            metadata.setContentLanguage(changes.getContentLanguage());
+        }
+        if (changes.getCacheControl() != null) {
+            metadata.setCacheControl(changes.getCacheControl());
+        }
+        if (changes.getMetadata() != null) {
+            Map<String, String> userMetadata = new HashMap<>(ObjectUtils.defaultIfNull(metadata.getMetadata(), new HashMap<>()));
+            changes.getMetadata().forEach((key, value) -> {
+                if (value == null || Data.isNull(value)) {
+                    userMetadata.remove(key);
+                } else {
+                    userMetadata.put(key, value);
+                }
+            });
+            metadata.setMetadata(userMetadata);
+        }
+        return metadata;
+    }
+
+    private NavigableMap<String, StoredObject> objects(String bucket) {
+        return buckets.computeIfAbsent(bucket, name -> new ConcurrentSkipListMap<>());
+    }
+
+    private static String etag(long generation, long metageneration) {
+        return BaseEncoding.base64().encode(Longs.toByteArray(generation ^ (metageneration << 56)));
+    }
+
+    /**
+     * Content received so far by a resumable upload.
+     */
+    static class UploadSession {
+        private final StorageObject metadata;
+        private final Preconditions preconditions;
+        private final ByteArrayOutputStream content = new ByteArrayOutputStream();
+
+        UploadSession(StorageObject metadata, Preconditions preconditions) {
+            this.metadata = metadata;
+            this.preconditions = preconditions;
+        }
+
+        /**
+         * Store a chunk starting at {@code offset}. A chunk may repeat bytes already received, as happens when a client resends
+         * after a failed request, but may not leave a gap.
+         *
+         * @return the number of bytes received.
+         */
+        synchronized long write(long offset, byte[] chunk) {
+            long size = content.size();
+            if (offset > size) {
+                throw new EmulatorException(400, String.format("Chunk starts at %s but only %s bytes were received", offset, size));
+            }
+            int skip = (int) (size - offset);
+            if (skip < chunk.length) {
+                content.write(chunk, skip, chunk.length - skip);
+            }
+            return content.size();
+        }
+
+        synchronized long size() {
+            return content.size();
+        }
+
+        synchronized byte[] getContent() {
+            return content.toByteArray();
+        }
+    }
+}
@@ -0,0 +1,123 @@
+package com.mondomob.spring.cloudstorage.emulator;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * A message embedded in a multipart body: a part of a multipart upload, or a request within a batch. Header names are lower
+ * case.
+ */
+class HttpMessage {
+    private static final byte[] CRLF = "\r\n".getBytes(StandardCharsets.ISO_8859_1);
+    private static final byte[] HEADER_END = "\r\n\r\n".getBytes(StandardCharsets.ISO_8859_1);
+    private static final Pattern BOUNDARY = Pattern.compile("boundary=\"?([^\";]+)\"?");
+
+    private final String startLine;
+    private final Map<String, String> headers;
+    private final byte[] body;
+
+    private HttpMessage(String startLine, Map<String, String> headers, byte[] body) {
+        this.startLine = startLine;
+        this.headers = headers;
+        this.body = body;
+    }
+
+    /**
+     * @param hasStartLine whether the message begins with a request or status line before its headers
+     */
+    static HttpMessage parse(byte[] message, boolean hasStartLine) {
+        int headerEnd = indexOf(message, HEADER_END, 0);
+        String head;
+        byte[] body;
+        if (headerEnd < 0) {
+            head = new String(message, StandardCharsets.ISO_8859_1).trim();
+            body = new byte[0];
+        } else {
+            head = new String(message, 0, headerEnd, StandardCharsets.ISO_8859_1);
+            body = Arrays.copyOfRange(message, headerEnd + HEADER_END.length, message.length);
+        }
+        List<String> lines = new ArrayList<>(Arrays.asList(head.split("\r\n")));
+        String startLine = hasStartLine && !lines.isEmpty() ? lines.remove(0) : null;
+        Map<String, String> headers = new LinkedHashMap<>();
+        for (String line : lines) {
+            int colon = line.indexOf(':');
+            if (colon > 0) {
+                headers.put(line.substring(0, colon).trim().toLowerCase(), line.substring(colon + 1).trim());
+            }
+        }
+        return new HttpMessage(startLine, headers, body);
+    }
+
+    /**
+     * Split a <code>multipart/related</code> or <code>multipart/mixed</code> body into its parts.
+     */
+    static List<HttpMessage> parseMultipart(String contentType, byte[] body) {
+        Matcher matcher = BOUNDARY.matcher(contentType == null ? "" : contentType);
+        if (!matcher.find()) {
+            throw new EmulatorException(400, String.format("No multipart boundary in content type %s", contentType));
+        }
+        byte[] delimiter = ("--" + matcher.group(1)).getBytes(StandardCharsets.ISO_8859_1);
+        List<HttpMessage> parts = new ArrayList<>();
+        int delimiterStart = indexOf(body, delimiter, 0);
+        while (delimiterStart >= 0) {
+            int partStart = delimiterStart + delimiter.length;
+            if (startsWith(body, partStart, "--".getBytes(StandardCharsets.ISO_8859_1))) {
+                break;
+            }
+            if (startsWith(body, partStart, CRLF)) {
+                partStart += CRLF.length;
+            }
+            int next = indexOf(body, delimiter, partStart);
+            if (next < 0) {
+                break;
+            }
+            int partEnd = next >= CRLF.length && startsWith(body, next - CRLF.length, CRLF) ? next - CRLF.length : next;
+            parts.add(parse(Arrays.copyOfRange(body, partStart, partEnd), false));
+            delimiterStart = next;
+        }
+        return parts;
+    }
+
+    String getStartLine() {
+        return startLine;
+    }
+
+    String getHeader(String name) {
+        return headers.get(name.toLowerCase());
+    }
+
+    Map<String, String> getHeaders() {
+        return headers;
+    }
+
+    byte[] getBody() {
+        return body;
+    }
+
+    private static boolean startsWith(byte[] bytes, int offset, byte[] prefix) {
+        if (offset + prefix.length > bytes.length) {
+            return false;
+        }
+        for (int i = 0; i < prefix.length; i++) {
+            if (bytes[offset + i] != prefix[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static int indexOf(byte[] bytes, byte[] target, int from) {
+        for (int i = from; i <= bytes.length - target.length; i++) {
+            if (startsWith(bytes, i, target)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+}
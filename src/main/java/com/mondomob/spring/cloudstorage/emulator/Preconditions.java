@@ -0,0 +1,75 @@
+package com.mondomob.spring.cloudstorage.emulator;
+
+import java.util.Map;
+
+/**
+ * The generation and metageneration conditions of a request, checked against the live version of an object.
+ *
+ * @see <a href="https://cloud.google.com/storage/docs/generations-preconditions">Generations and preconditions</a>
+ */
+class Preconditions {
+    static final Preconditions NONE = new Preconditions(null, null, null, null, null);
+
+    private final Long generation;
+    private final Long ifGenerationMatch;
+    private final Long ifGenerationNotMatch;
+    private final Long ifMetagenerationMatch;
+    private final Long ifMetagenerationNotMatch;
+
+    Preconditions(Long generation, Long ifGenerationMatch, Long ifGenerationNotMatch, Long ifMetagenerationMatch,
+                  Long ifMetagenerationNotMatch) {
+        this.generation = generation;
+        this.ifGenerationMatch = ifGenerationMatch;
+        this.ifGenerationNotMatch = ifGenerationNotMatch;
+        this.ifMetagenerationMatch = ifMetagenerationMatch;
+        this.ifMetagenerationNotMatch = ifMetagenerationNotMatch;
+    }
+
+    static Preconditions of(Map<String, String> query) {
+        return new Preconditions(getLong(query, "generation"), getLong(query, "ifGenerationMatch"),
+                getLong(query, "ifGenerationNotMatch"), getLong(query, "ifMetagenerationMatch"),
+                getLong(query, "ifMetagenerationNotMatch"));
+    }
+
+    static Preconditions ofSource(Map<String, String> query) {
+        return new Preconditions(getLong(query, "sourceGeneration"), getLong(query, "ifSourceGenerationMatch"),
+                getLong(query, "ifSourceGenerationNotMatch"), getLong(query, "ifSourceMetagenerationMatch"),
+                getLong(query, "ifSourceMetagenerationNotMatch"));
+    }
+
+    /**
+     * @param object    the live version of the object, or null if it does not exist
+     * @param mustExist whether the request reads or deletes the object, rather than creating it
+     */
+    void check(StoredObject object, boolean mustExist) {
+        if (object == null) {
+            if (mustExist || generation != null) {
+                throw new EmulatorException(404, "No such object");
+            }
+            if ((ifGenerationMatch != null && ifGenerationMatch != 0) || ifMetagenerationMatch != null) {
+                throw new EmulatorException(412, "Precondition failed, the object does not exist");
+            }
+            return;
+        }
+        if (generation != null && generation != object.getGeneration()) {
+            throw new EmulatorException(404, String.format("No such object generation %s", generation));
+        }
+        if (ifGenerationMatch != null && ifGenerationMatch != object.getGeneration()) {
+            throw new EmulatorException(412, String.format("Precondition failed, generation is %s", object.getGeneration()));
+        }
+        if (ifGenerationNotMatch != null && ifGenerationNotMatch == object.getGeneration()) {
+            throw new EmulatorException(412, String.format("Precondition failed, generation is %s", object.getGeneration()));
+        }
+        if (ifMetagenerationMatch != null && ifMetagenerationMatch != object.getMetageneration()) {
+            throw new EmulatorException(412, String.format("Precondition failed, metageneration is %s", object.getMetageneration()));
+        }
+        if (ifMetagenerationNotMatch != null && ifMetagenerationNotMatch == object.getMetageneration()) {
+            throw new EmulatorException(412, String.format("Precondition failed, metageneration is %s", object.getMetageneration()));
+        }
+    }
+
+    private static Long getLong(Map<String, String> query, String name) {
+        String value = query.get(name);
+        return value == null ? null : Long.valueOf(value);
+    }
+}
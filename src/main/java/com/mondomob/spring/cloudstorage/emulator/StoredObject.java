@@ -0,0 +1,39 @@
+package com.mondomob.spring.cloudstorage.emulator;
+
+import com.google.api.services.storage.model.StorageObject;
+
+/**
+ * An immutable version of an object: its metadata and content.
+ */
+class StoredObject {
+    private final StorageObject metadata;
+    private final byte[] content;
+
+    StoredObject(StorageObject metadata, byte[] content) {
+        this.metadata = metadata;
+        this.content = content;
+    }
+
+    /**
+     * @return a copy of the metadata which the caller may change.
+     */
+    StorageObject getMetadata() {
+        return metadata.clone();
+    }
+
+    byte[] getContent() {
+        return content;
+    }
+
+    String getName() {
+        return metadata.getName();
+    }
+
+    long getGeneration() {
+        return metadata.getGeneration();
+    }
+
+    long getMetageneration() {
+        return metadata.getMetageneration();
+    }
+}
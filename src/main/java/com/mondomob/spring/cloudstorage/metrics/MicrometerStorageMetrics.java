@@ -0,0 +1,75 @@
+package com.mondomob.spring.cloudstorage.metrics;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Records storage metrics to a Micrometer {@link MeterRegistry}:
+ * <ul>
+ * <li><code>gcs.operations</code> timer with a percentile histogram, tagged by operation, bucket and outcome</li>
+ * <li><code>gcs.bytes</code> counter and <code>gcs.payload.size</code> distribution of bytes read and written, tagged by
+ * operation and bucket</li>
+ * <li><code>gcs.signatures</code> counter of urls signed, tagged by bucket</li>
+ * </ul>
+ */
+public class MicrometerStorageMetrics implements StorageMetrics {
+    static final String OPERATIONS_TIMER = "gcs.operations";
+    static final String BYTES_COUNTER = "gcs.bytes";
+    static final String PAYLOAD_SIZE_SUMMARY = "gcs.payload.size";
+    static final String SIGNATURES_COUNTER = "gcs.signatures";
+    private static final String UNKNOWN_BUCKET = "unknown";
+
+    private final MeterRegistry registry;
+
+    public MicrometerStorageMetrics(MeterRegistry registry) {
+        this.registry = registry;
+    }
+
+    @Override
+    public void recordOperation(String operation, String bucket, long durationNanos, boolean success) {
+        Timer.builder(OPERATIONS_TIMER)
+                .description("Latency of cloud storage operations")
+                .tag("operation", operation)
+                .tag("bucket", bucketTag(bucket))
+                .tag("outcome", success ? "success" : "error")
+                .publishPercentileHistogram()
+                .register(registry)
+                .record(durationNanos, TimeUnit.NANOSECONDS);
+    }
+
+    @Override
+    public void recordBytes(String operation, String bucket, long bytes) {
+        Counter.builder(BYTES_COUNTER)
+                .description("Bytes transferred to and from cloud storage")
+                .baseUnit("bytes")
+                .tag("operation", operation)
+                .tag("bucket", bucketTag(bucket))
+                .register(registry)
+                .increment(bytes);
+        DistributionSummary.builder(PAYLOAD_SIZE_SUMMARY)
+                .description("Size of each object read or written")
+                .baseUnit("bytes")
+                .tag("operation", operation)
+                .tag("bucket", bucketTag(bucket))
+                .publishPercentileHistogram()
+                .register(registry)
+                .record(bytes);
+    }
+
+    @Override
+    public void recordSignatures(String bucket, long count) {
+        Counter.builder(SIGNATURES_COUNTER)
+                .description("Urls signed")
+                .tag("bucket", bucketTag(bucket))
+                .register(registry)
+                .increment(count);
+    }
+
+    private static String bucketTag(String bucket) {
+        return bucket == null ? UNKNOWN_BUCKET : bucket;
+    }
+}
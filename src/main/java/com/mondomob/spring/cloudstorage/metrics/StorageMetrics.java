@@ -0,0 +1,78 @@
+package com.mondomob.spring.cloudstorage.metrics;
+
+/**
+ * Receives the latency, outcome and payload size of storage and signing operations. {@link #NONE} is used unless metrics are
+ * configured, see {@link MicrometerStorageMetrics}.
+ */
+public interface StorageMetrics {
+    String WRITE = "write";
+    String READ = "read";
+    String LIST = "list";
+    String GET = "get";
+    String GET_BATCH = "get-batch";
+    String COPY = "copy";
+    String COPY_PREFIX = "copy-prefix";
+    String MOVE = "move";
+    String MOVE_PREFIX = "move-prefix";
+    String DELETE = "delete";
+    String DELETE_BATCH = "delete-batch";
+    String DELETE_PREFIX = "delete-prefix";
+    String SIGN = "sign";
+    String INITIATE_UPLOAD = "initiate-upload";
+    String REFRESH_CREDENTIALS = "refresh-credentials";
+
+    StorageMetrics NONE = new StorageMetrics() {
+        @Override
+        public void recordOperation(String operation, String bucket, long durationNanos, boolean success) {
+        }
+
+        @Override
+        public void recordBytes(String operation, String bucket, long bytes) {
+        }
+
+        @Override
+        public void recordSignatures(String bucket, long count) {
+        }
+    };
+
+    /**
+     * @param operation     one of the operation names defined here
+     * @param bucket        the bucket operated on
+     * @param durationNanos how long the operation took
+     * @param success       false if the operation threw an exception
+     */
+    void recordOperation(String operation, String bucket, long durationNanos, boolean success);
+
+    /**
+     * @param operation {@link #READ} or {@link #WRITE}
+     * @param bucket    the bucket operated on
+     * @param bytes     the number of bytes transferred
+     */
+    void recordBytes(String operation, String bucket, long bytes);
+
+    /**
+     * @param bucket the bucket of the signed urls
+     * @param count  the number of urls signed
+     */
+    void recordSignatures(String bucket, long count);
+
+    /**
+     * Run an operation and record its latency and outcome.
+     */
+    default <T, E extends Exception> T time(String operation, String bucket, Operation<T, E> call) throws E {
+        long start = System.nanoTime();
+        boolean success = false;
+        try {
+            T result = call.call();
+            success = true;
+            return result;
+        } finally {
+            recordOperation(operation, bucket, System.nanoTime() - start, success);
+        }
+    }
+
+    @FunctionalInterface
+    interface Operation<T, E extends Exception> {
+        T call() throws E;
+    }
+}
@@ -0,0 +1,237 @@
+package com.mondomob.spring.cloudstorage.retry;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import org.springframework.util.Assert;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Cuts the tail latency of idempotent reads by sending a second, identical request when the first has not answered within the
+ * recent {@code percentile} latency, and using whichever answers first. The slower request is cancelled, and the time it had
+ * run for is recorded as its latency so that slow requests still count towards the percentile. With the default 95th percentile
+ * about one call in twenty is hedged. Each hedge takes a token from a {@link RetryBudget} and each success returns part of one,
+ * so that hedging stops when cloud storage is failing rather than slow.
+ * <p>
+ * Nothing is hedged until {@value MIN_SAMPLES} latencies have been recorded. After that every call runs on a background
+ * thread so that the caller can stop waiting for it. At most {@code maxConcurrency} attempts run in the background at once, and
+ * calls beyond that run on the caller's thread without a hedge. Only pass calls that return their whole result, such as
+ * metadata gets or reads into memory, and not ones that return a stream.
+ *
+ * @see <a href="https://research.google/pubs/pub40801/">The Tail at Scale</a>
+ */
+public class HedgedRequests {
+    public static final double DEFAULT_PERCENTILE = 0.95;
+    public static final int DEFAULT_MIN_DELAY_MILLIS = 10;
+    public static final int DEFAULT_MAX_CONCURRENCY = 64;
+    static final int WINDOW_SIZE = 1000;
+    static final int MIN_SAMPLES = 100;
+    private static final int RECALCULATE_INTERVAL = 10;
+
+    private final double percentile;
+    private final long minDelayNanos;
+    private final RetryBudget budget;
+    private final ThreadPoolExecutor executor;
+    private final long[] latencies = new long[WINDOW_SIZE];
+    private final AtomicLong hedges = new AtomicLong();
+    private long samples;
+    private long delayNanos = -1;
+
+    /**
+     * @param percentile recent latency, between 0 and 1, after which a second request is sent
+     * @param minDelay   shortest wait before a second request is sent, however fast recent calls were
+     * @param budget     pays for the second requests
+     */
+    public HedgedRequests(double percentile, Duration minDelay, RetryBudget budget) {
+        this(percentile, minDelay, budget, DEFAULT_MAX_CONCURRENCY);
+    }
+
+    /**
+     * @param percentile     recent latency, between 0 and 1, after which a second request is sent
+     * @param minDelay       shortest wait before a second request is sent, however fast recent calls were
+     * @param budget         pays for the second requests
+     * @param maxConcurrency most attempts run in the background at the same time
+     */
+    public HedgedRequests(double percentile, Duration minDelay, RetryBudget budget, int maxConcurrency) {
+        Assert.isTrue(percentile > 0 && percentile < 1, "percentile must be between 0 and 1");
+        Assert.isTrue(!minDelay.isNegative(), "minDelay must not be negative");
+        Assert.notNull(budget, "budget required");
+        Assert.isTrue(maxConcurrency > 0, "maxConcurrency must be positive");
+        this.percentile = percentile;
+        this.minDelayNanos = minDelay.toNanos();
+        this.budget = budget;
+        this.executor = new ThreadPoolExecutor(0, maxConcurrency, 60, TimeUnit.SECONDS, new SynchronousQueue<>(), new ThreadFactoryBuilder()
+                .setDaemon(true)
+                .setNameFormat("gcs-hedged-%d")
+                .build());
+    }
+
+    /**
+     * Run an idempotent call, sending it a second time if the first attempt is slow.
+     *
+     * @return the result of the first attempt to succeed.
+     * @throws E the first failure, if every attempt failed.
+     */
+    public <T, E extends Exception> T execute(RetryPolicy.IdempotentCall<T, E> call) throws E {
+        T result = attempt(call);
+        budget.recordSuccess();
+        return result;
+    }
+
+    /**
+     * Run an idempotent call with retries, hedging each attempt. When the retry policy pays from the same budget, a call that
+     * succeeds returns part of a token once, however many attempts and hedges it took.
+     *
+     * @return the result of the first attempt to succeed.
+     * @throws E the failure of the last attempt, or the first failure that is not transient.
+     */
+    public <T, E extends Exception> T execute(RetryPolicy retryPolicy, RetryPolicy.IdempotentCall<T, E> call) throws E {
+        if (retryPolicy.getBudget() == budget) {
+            return retryPolicy.execute(() -> attempt(call));
+        }
+        return retryPolicy.execute(() -> execute(call));
+    }
+
+    private <T, E extends Exception> T attempt(RetryPolicy.IdempotentCall<T, E> call) throws E {
+        long delay = getDelayNanos();
+        if (delay < 0) {
+            return new Attempt<>(call).call();
+        }
+
+        CompletionService<T> completionService = new ExecutorCompletionService<>(executor);
+        List<Attempt<T, E>> attempts = new ArrayList<>(2);
+        List<Future<T>> futures = new ArrayList<>(2);
+        try {
+            Attempt<T, E> first = new Attempt<>(call);
+            try {
+                futures.add(completionService.submit(first));
+            } catch (RejectedExecutionException e) {
+                return first.call();
+            }
+            attempts.add(first);
+
+            Future<T> done = completionService.poll(delay, TimeUnit.NANOSECONDS);
+            if (done == null && budget.tryAcquire()) {
+                Attempt<T, E> hedge = new Attempt<>(call);
+                try {
+                    futures.add(completionService.submit(hedge));
+                    attempts.add(hedge);
+                    hedges.incrementAndGet();
+                } catch (RejectedExecutionException e) {
+                    budget.release();
+                }
+            }
+
+            ExecutionException failure = null;
+            for (int i = 0; i < futures.size(); i++) {
+                Future<T> attempt = i == 0 && done != null ? done : completionService.take();
+                try {
+                    return attempt.get();
+                } catch (ExecutionException e) {
+                    if (failure == null) {
+                        failure = e;
+                    }
+                }
+            }
+            throw HedgedRequests.<E>unwrap(failure);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted waiting for hedged request", e);
+        } finally {
+            attempts.forEach(Attempt::abandon);
+            futures.forEach(future -> future.cancel(true));
+        }
+    }
+
+    /**
+     * @return the number of second requests sent.
+     */
+    public long getHedgeCount() {
+        return hedges.get();
+    }
+
+    /**
+     * @return how long a call currently runs before it is hedged, or -1 while too few latencies have been recorded.
+     */
+    public synchronized long getDelayNanos() {
+        return delayNanos;
+    }
+
+    synchronized long getSampleCount() {
+        return samples;
+    }
+
+    synchronized void record(long latencyNanos) {
+        latencies[(int) (samples % WINDOW_SIZE)] = latencyNanos;
+        samples++;
+        if (samples >= MIN_SAMPLES && (delayNanos < 0 || samples % RECALCULATE_INTERVAL == 0)) {
+            long[] window = Arrays.copyOf(latencies, (int) Math.min(samples, WINDOW_SIZE));
+            Arrays.sort(window);
+            delayNanos = Math.max(minDelayNanos, window[(int) Math.ceil(percentile * window.length) - 1]);
+        }
+    }
+
+    /**
+     * One attempt at a call. Its latency is recorded when it succeeds, or when it is abandoned while still running, in which case
+     * the time it has run for so far is a lower bound of its latency. Failed attempts are not recorded.
+     */
+    private class Attempt<T, E extends Exception> implements Callable<T> {
+        private final RetryPolicy.IdempotentCall<T, E> call;
+        private final long start = System.nanoTime();
+        private final AtomicBoolean finished = new AtomicBoolean();
+
+        Attempt(RetryPolicy.IdempotentCall<T, E> call) {
+            this.call = call;
+        }
+
+        @Override
+        public T call() throws E {
+            boolean succeeded = false;
+            try {
+                T result = call.call();
+                succeeded = true;
+                return result;
+            } finally {
+                finish(succeeded);
+            }
+        }
+
+        void abandon() {
+            finish(true);
+        }
+
+        private void finish(boolean recordLatency) {
+            if (finished.compareAndSet(false, true) && recordLatency) {
+                record(System.nanoTime() - start);
+            }
+        }
+    }
+
+    /**
+     * An attempt can only fail with {@code E} or an unchecked exception.
+     */
+    @SuppressWarnings("unchecked")
+    private static <E extends Exception> E unwrap(ExecutionException failure) {
+        Throwable cause = failure.getCause();
+        if (cause instanceof RuntimeException) {
+            throw (RuntimeException) cause;
+        }
+        if (cause instanceof Error) {
+            throw (Error) cause;
+        }
+        return (E) cause;
+    }
+}
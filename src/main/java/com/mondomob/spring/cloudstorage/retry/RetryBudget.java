@@ -0,0 +1,73 @@
+package com.mondomob.spring.cloudstorage.retry;
+
+import org.springframework.util.Assert;
+
+/**
+ * Limits retries and hedged requests to a share of the calls that succeed, so that they cannot multiply the load on cloud storage
+ * while it is failing. A bucket starts with {@code maxTokens} tokens. Each transient failure and each hedged request takes one token
+ * and each success returns {@code tokenRatio} of one. Extra requests are only sent while more than half of the tokens remain, so once failures
+ * outnumber successes by more than {@code 1 / tokenRatio} to one, only first attempts are sent until calls succeed again.
+ * <p>
+ * One budget is meant to be shared by every {@link RetryPolicy} and {@link HedgedRequests} that call the same service.
+ *
+ * @see <a href="https://github.com/grpc/proposal/blob/master/A6-client-retries.md#throttling-retry-attempts-and-hedged-rpcs">gRPC retry throttling</a>
+ */
+public class RetryBudget {
+    public static final int DEFAULT_MAX_TOKENS = 100;
+    public static final double DEFAULT_TOKEN_RATIO = 0.1;
+
+    private final double maxTokens;
+    private final double tokenRatio;
+    private double tokens;
+
+    /**
+     * @param maxTokens  size of the bucket, extra requests stop after half this many failures in a row
+     * @param tokenRatio share of a token returned by each success
+     */
+    public RetryBudget(int maxTokens, double tokenRatio) {
+        Assert.isTrue(maxTokens > 0, "maxTokens must be positive");
+        Assert.isTrue(tokenRatio > 0, "tokenRatio must be positive");
+        this.maxTokens = maxTokens;
+        this.tokenRatio = tokenRatio;
+        this.tokens = maxTokens;
+    }
+
+    /**
+     * @return whether a retry or hedged request may be sent now.
+     */
+    public synchronized boolean allowsRetry() {
+        return tokens > maxTokens / 2;
+    }
+
+    /**
+     * Take a token for a hedged request, if one may be sent now.
+     *
+     * @return whether the hedged request may be sent.
+     */
+    public synchronized boolean tryAcquire() {
+        if (tokens <= maxTokens / 2) {
+            return false;
+        }
+        tokens -= 1;
+        return true;
+    }
+
+    /**
+     * Return a token taken by {@link #tryAcquire()} for a request that was not sent.
+     */
+    synchronized void release() {
+        tokens = Math.min(maxTokens, tokens + 1);
+    }
+
+    public synchronized double getTokens() {
+        return tokens;
+    }
+
+    synchronized void recordSuccess() {
+        tokens = Math.min(maxTokens, tokens + tokenRatio);
+    }
+
+    synchronized void recordFailure() {
+        tokens = Math.max(0, tokens - 1);
+    }
+}
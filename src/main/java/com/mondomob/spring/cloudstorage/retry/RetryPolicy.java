@@ -0,0 +1,153 @@
+package com.mondomob.spring.cloudstorage.retry;
+
+import com.google.api.client.http.HttpResponseException;
+import com.google.api.client.util.BackOff;
+import com.google.api.client.util.ExponentialBackOff;
+import com.google.api.client.util.Sleeper;
+import com.google.cloud.BaseServiceException;
+import org.springframework.util.Assert;
+
+import java.io.IOException;
+import java.time.Duration;
+
+/**
+ * Retries calls that fail with a transient error: a network failure, or a 408, 429 or 5xx response. The wait between attempts
+ * grows exponentially and is randomised by half either way, so that clients that failed together do not retry together. Every
+ * retry is paid for from a {@link RetryBudget}, so retries stop when most calls are failing instead of adding to an outage.
+ * <p>
+ * Only calls that are safe to repeat may be passed to {@link #execute(IdempotentCall)}: reads, metadata gets, listings and
+ * requests that start a new upload session.
+ */
+public class RetryPolicy {
+    public static final int DEFAULT_MAX_ATTEMPTS = 3;
+    public static final int DEFAULT_INITIAL_BACKOFF_MILLIS = 100;
+    public static final int DEFAULT_MAX_BACKOFF_MILLIS = 5000;
+    private static final double BACKOFF_MULTIPLIER = 2;
+    private static final double BACKOFF_RANDOMIZATION = 0.5;
+
+    /**
+     * Makes a single attempt.
+     */
+    public static final RetryPolicy NONE = new RetryPolicy(1, Duration.ofMillis(DEFAULT_INITIAL_BACKOFF_MILLIS),
+            Duration.ofMillis(DEFAULT_MAX_BACKOFF_MILLIS), new RetryBudget(RetryBudget.DEFAULT_MAX_TOKENS, RetryBudget.DEFAULT_TOKEN_RATIO));
+
+    private final int maxAttempts;
+    private final int initialBackoffMillis;
+    private final int maxBackoffMillis;
+    private final RetryBudget budget;
+    private final Sleeper sleeper;
+
+    /**
+     * @param maxAttempts    attempts made before the last failure is thrown, including the first
+     * @param initialBackoff average wait before the first retry
+     * @param maxBackoff     longest average wait between attempts
+     * @param budget         pays for the retries
+     */
+    public RetryPolicy(int maxAttempts, Duration initialBackoff, Duration maxBackoff, RetryBudget budget) {
+        this(maxAttempts, initialBackoff, maxBackoff, budget, Sleeper.DEFAULT);
+    }
+
+    RetryPolicy(int maxAttempts, Duration initialBackoff, Duration maxBackoff, RetryBudget budget, Sleeper sleeper) {
+        Assert.isTrue(maxAttempts > 0, "maxAttempts must be positive");
+        Assert.isTrue(!initialBackoff.isNegative() && !initialBackoff.isZero(), "initialBackoff must be positive");
+        Assert.isTrue(maxBackoff.compareTo(initialBackoff) >= 0, "maxBackoff must not be less than initialBackoff");
+        Assert.notNull(budget, "budget required");
+        this.maxAttempts = maxAttempts;
+        this.initialBackoffMillis = (int) initialBackoff.toMillis();
+        this.maxBackoffMillis = (int) maxBackoff.toMillis();
+        this.budget = budget;
+        this.sleeper = sleeper;
+    }
+
+    public RetryBudget getBudget() {
+        return budget;
+    }
+
+    /**
+     * Run an idempotent call, retrying it after transient failures.
+     *
+     * @return the result of the first successful attempt.
+     * @throws E the failure of the last attempt, or the first failure that is not transient.
+     */
+    public <T, E extends Exception> T execute(IdempotentCall<T, E> call) throws E {
+        BackOff backOff = null;
+        for (int attempt = 1; ; attempt++) {
+            Exception failure;
+            try {
+                T result = call.call();
+                budget.recordSuccess();
+                return result;
+            } catch (Exception e) {
+                failure = e;
+            }
+
+            if (!isTransient(failure)) {
+                throw RetryPolicy.<E>rethrow(failure);
+            }
+            budget.recordFailure();
+            if (attempt >= maxAttempts || !budget.allowsRetry() || Thread.currentThread().isInterrupted()) {
+                throw RetryPolicy.<E>rethrow(failure);
+            }
+
+            if (backOff == null) {
+                backOff = new ExponentialBackOff.Builder()
+                        .setInitialIntervalMillis(initialBackoffMillis)
+                        .setMaxIntervalMillis(maxBackoffMillis)
+                        .setMultiplier(BACKOFF_MULTIPLIER)
+                        .setRandomizationFactor(BACKOFF_RANDOMIZATION)
+                        .setMaxElapsedTimeMillis(Integer.MAX_VALUE)
+                        .build();
+            }
+            try {
+                long delay = backOff.nextBackOffMillis();
+                if (delay == BackOff.STOP) {
+                    throw RetryPolicy.<E>rethrow(failure);
+                }
+                sleeper.sleep(delay);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw RetryPolicy.<E>rethrow(failure);
+            } catch (IOException e) {
+                throw RetryPolicy.<E>rethrow(failure);
+            }
+        }
+    }
+
+    /**
+     * @return whether a failure, or any of its causes, is a network failure or a response that may succeed if sent again.
+     */
+    public static boolean isTransient(Throwable failure) {
+        for (Throwable cause = failure; cause != null; cause = cause.getCause()) {
+            if (cause instanceof HttpResponseException) {
+                return isTransientStatus(((HttpResponseException) cause).getStatusCode());
+            }
+            if (cause instanceof BaseServiceException && ((BaseServiceException) cause).getCode() > 0) {
+                return isTransientStatus(((BaseServiceException) cause).getCode());
+            }
+            if (cause instanceof IOException) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean isTransientStatus(int status) {
+        return status == 408 || status == 429 || status >= 500;
+    }
+
+    /**
+     * The call can only throw {@code E} or an unchecked exception.
+     */
+    @SuppressWarnings("unchecked")
+    private static <E extends Exception> E rethrow(Exception failure) {
+        if (failure instanceof RuntimeException) {
+            throw (RuntimeException) failure;
+        }
+        return (E) failure;
+    }
+
+    @FunctionalInterface
+    public interface IdempotentCall<T, E extends Exception> {
+        T call() throws E;
+    }
+}
@@ -4,10 +4,12 @@ import com.google.api.client.extensions.appengine.http.UrlFetchTransport;
 import com.google.api.client.http.HttpTransport;
 import com.mondomob.spring.cloudstorage.apiclient.GcsJsonApiClient;
 import com.mondomob.spring.cloudstorage.apiclient.LocalGcsJsonApiClient;
+import com.mondomob.spring.cloudstorage.retry.HedgedRequests;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.context.ApplicationContext;
 import org.springframework.test.context.ActiveProfiles;
 import org.springframework.test.context.TestPropertySource;
 import org.springframework.test.context.junit4.SpringRunner;
@@ -18,7 +20,7 @@ import static org.junit.Assert.assertThat;
 import static org.junit.Assert.assertTrue;
 
 @RunWith(SpringRunner.class)
-@TestPropertySource("classpath:application.properties")
+@TestPropertySource(locations = "classpath:application.properties", properties = "gcs.hedged-reads.enabled=true")
 @SpringBootTest(classes = SpringGaeGcsAutoConfiguration.class)
 @ActiveProfiles(profiles = "gae")
 public class AppEngineBeanCreationTest {
@@ -32,6 +34,9 @@ public class AppEngineBeanCreationTest {
     @Autowired
     private HttpTransport httpTransport;
 
+    @Autowired
+    private ApplicationContext applicationContext;
+
     @Test
     public void libraryShouldNotLoadTheLocalClient() {
         assertFalse(apiClient instanceof LocalGcsJsonApiClient);
@@ -48,5 +53,15 @@ public class AppEngineBeanCreationTest {
         assertTrue(httpTransport instanceof UrlFetchTransport);
     }
 
+    @Test
+    public void libraryShouldNotLoadTheAsyncService() {
+        assertThat(applicationContext.getBeanNamesForType(AsyncCloudStorageService.class).length, is(0));
+    }
+
+    @Test
+    public void libraryShouldNotLoadHedgedRequests() {
+        assertThat(applicationContext.getBeanNamesForType(HedgedRequests.class).length, is(0));
+    }
+
 
 }
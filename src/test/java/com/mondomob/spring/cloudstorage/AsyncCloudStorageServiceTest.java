@@ -0,0 +1,88 @@
+package com.mondomob.spring.cloudstorage;
+
+import com.google.cloud.storage.Blob;
+import com.google.cloud.storage.StorageException;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.junit.MockitoJUnitRunner;
+
+import java.io.ByteArrayInputStream;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+
+import static org.hamcrest.Matchers.instanceOf;
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+import static org.mockito.Mockito.when;
+
+@RunWith(MockitoJUnitRunner.class)
+public class AsyncCloudStorageServiceTest {
+
+    @Mock
+    private CloudStorageService cloudStorageService;
+    @Mock
+    private Blob blob;
+
+    private AsyncCloudStorageService service;
+
+    @Before
+    public void before() {
+        service = new AsyncCloudStorageService(cloudStorageService, Runnable::run);
+    }
+
+    @Test
+    public void getBlob_willCompleteWithDelegateResult() throws Exception {
+        when(cloudStorageService.getBlob("bucket", "object")).thenReturn(blob);
+
+        assertThat(service.getBlob("bucket", "object").get(), is(blob));
+    }
+
+    @Test
+    public void readFile_willReadWholeObject() throws Exception {
+        when(cloudStorageService.readFile("object")).thenReturn(new ByteArrayInputStream("content".getBytes()));
+
+        assertArrayEquals("content".getBytes(), service.readFile("object").get());
+    }
+
+    @Test
+    public void fileExists_willCompleteExceptionally_whenDelegateFails() throws InterruptedException {
+        when(cloudStorageService.fileExists("object")).thenThrow(new StorageException(500, "backend error"));
+
+        try {
+            service.fileExists("object").get();
+            fail();
+        } catch (ExecutionException e) {
+            assertThat(e.getCause(), instanceOf(StorageException.class));
+        }
+    }
+
+    @Test
+    public void operations_willBeRejected_whenQueueIsFull() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        when(cloudStorageService.deleteFile("object")).thenAnswer(invocation -> {
+            release.await();
+            return true;
+        });
+        try (AsyncCloudStorageService bounded = new AsyncCloudStorageService(cloudStorageService, 1, 1)) {
+            CompletableFuture<Boolean> running = bounded.deleteFile("object");
+            CompletableFuture<Boolean> queued = bounded.deleteFile("object");
+            CompletableFuture<Boolean> rejected = bounded.deleteFile("object");
+            release.countDown();
+
+            assertThat(running.get(), is(true));
+            assertThat(queued.get(), is(true));
+            try {
+                rejected.get();
+                fail();
+            } catch (ExecutionException e) {
+                assertThat(e.getCause(), instanceOf(RejectedExecutionException.class));
+            }
+        }
+    }
+}
@@ -0,0 +1,116 @@
+package com.mondomob.spring.cloudstorage;
+
+import com.google.cloud.BatchResult;
+import com.google.cloud.storage.Blob;
+import com.google.cloud.storage.BlobId;
+import com.google.cloud.storage.Storage;
+import com.google.cloud.storage.StorageBatch;
+import com.google.cloud.storage.StorageBatchResult;
+import com.google.cloud.storage.StorageException;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.junit.MockitoJUnitRunner;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.containsString;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.nullValue;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@RunWith(MockitoJUnitRunner.class)
+public class BatchOperationsTest {
+
+    @Mock
+    private Storage storage;
+    @Mock
+    private StorageBatch batch;
+    @Mock
+    private Blob blob;
+
+    private BatchOperations batchOperations;
+
+    @Before
+    public void before() {
+        batchOperations = new BatchOperations(storage, 100, 2);
+        when(storage.batch()).thenReturn(batch);
+    }
+
+    @Test
+    public void delete_willSplitIntoBatchesAndKeepInputOrder() {
+        List<String> objectNames = IntStream.range(0, 250).mapToObj(i -> "object-" + i).collect(Collectors.toList());
+        when(batch.delete(any(BlobId.class))).thenAnswer(invocation ->
+                succeeds(!invocation.<BlobId>getArgument(0).getName().equals("object-150")));
+
+        Map<String, Boolean> results = batchOperations.delete("bucket", objectNames);
+
+        verify(batch, times(3)).submit();
+        assertThat(new ArrayList<>(results.keySet()), is(objectNames));
+        assertThat(results.get("object-0"), is(true));
+        assertThat(results.get("object-150"), is(false));
+    }
+
+    @Test
+    public void get_willReturnNullForMissingObjects() {
+        StorageBatchResult<Blob> found = succeeds(blob);
+        StorageBatchResult<Blob> missing = fails(404);
+        when(batch.get(BlobId.of("bucket", "a"))).thenReturn(found);
+        when(batch.get(BlobId.of("bucket", "b"))).thenReturn(missing);
+
+        Map<String, Blob> results = batchOperations.get("bucket", Arrays.asList("a", "b", "a"));
+
+        assertThat(results.keySet(), contains("a", "b"));
+        assertThat(results.get("a"), is(blob));
+        assertThat(results.get("b"), is(nullValue()));
+    }
+
+    @Test
+    public void get_willThrow_whenAnObjectFailsForAnotherReason() {
+        StorageBatchResult<Blob> found = succeeds(blob);
+        StorageBatchResult<Blob> throttled = fails(429);
+        when(batch.get(BlobId.of("bucket", "a"))).thenReturn(found);
+        when(batch.get(BlobId.of("bucket", "b"))).thenReturn(throttled);
+
+        try {
+            batchOperations.get("bucket", Arrays.asList("a", "b"));
+            fail("Expected the failed object to be thrown");
+        } catch (StorageException e) {
+            assertThat(e.getCode(), is(429));
+            assertThat(e.getMessage(), containsString("[b]"));
+        }
+    }
+
+    private <T> StorageBatchResult<T> succeeds(T value) {
+        return result(callback -> callback.success(value));
+    }
+
+    private <T> StorageBatchResult<T> fails(int code) {
+        return result(callback -> callback.error(new StorageException(code, "Failed")));
+    }
+
+    @SuppressWarnings("unchecked")
+    private <T> StorageBatchResult<T> result(Consumer<BatchResult.Callback<T, StorageException>> outcome) {
+        StorageBatchResult<T> result = mock(StorageBatchResult.class);
+        doAnswer(invocation -> {
+            outcome.accept(invocation.getArgument(0));
+            return null;
+        }).when(result).notify(any());
+        return result;
+    }
+}
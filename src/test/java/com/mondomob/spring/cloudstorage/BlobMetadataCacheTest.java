@@ -0,0 +1,82 @@
+package com.mondomob.spring.cloudstorage;
+
+import com.google.cloud.storage.Blob;
+import com.google.cloud.storage.BlobId;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.junit.MockitoJUnitRunner;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.nullValue;
+import static org.junit.Assert.assertThat;
+
+@RunWith(MockitoJUnitRunner.class)
+public class BlobMetadataCacheTest {
+
+    private static final BlobId BLOB_ID = BlobId.of("bucket", "folder/object");
+
+    @Mock
+    private Blob blob;
+
+    private BlobMetadataCache cache;
+    private AtomicInteger loads;
+
+    @Before
+    public void before() {
+        cache = new BlobMetadataCache(100, Duration.ofMinutes(1));
+        loads = new AtomicInteger();
+    }
+
+    @Test
+    public void get_willLoadOnce() {
+        assertThat(cache.get(BLOB_ID, loader(blob)), is(blob));
+        assertThat(cache.get(BLOB_ID, loader(blob)), is(blob));
+
+        assertThat(loads.get(), is(1));
+        assertThat(cache.stats().hitCount(), is(1L));
+        assertThat(cache.stats().missCount(), is(1L));
+    }
+
+    @Test
+    public void get_willCacheMissingObjects() {
+        assertThat(cache.get(BLOB_ID, loader(null)), is(nullValue()));
+        assertThat(cache.get(BLOB_ID, loader(null)), is(nullValue()));
+
+        assertThat(loads.get(), is(1));
+    }
+
+    @Test
+    public void invalidate_willReloadObject() {
+        cache.get(BLOB_ID, loader(null));
+        cache.invalidate("bucket", "folder/object");
+
+        assertThat(cache.get(BLOB_ID, loader(blob)), is(blob));
+        assertThat(loads.get(), is(2));
+    }
+
+    @Test
+    public void invalidatePrefix_willOnlyReloadObjectsUnderPrefix() {
+        BlobId other = BlobId.of("bucket", "other/object");
+        cache.get(BLOB_ID, loader(blob));
+        cache.get(other, loader(blob));
+
+        cache.invalidatePrefix("bucket", "folder/");
+        cache.get(BLOB_ID, loader(blob));
+        cache.get(other, loader(blob));
+
+        assertThat(loads.get(), is(3));
+    }
+
+    private Function<BlobId, Blob> loader(Blob result) {
+        return blobId -> {
+            loads.incrementAndGet();
+            return result;
+        };
+    }
+}
@@ -0,0 +1,110 @@
+package com.mondomob.spring.cloudstorage;
+
+import com.google.cloud.WriteChannel;
+import com.google.cloud.storage.Blob;
+import com.google.cloud.storage.BlobId;
+import com.google.cloud.storage.BlobInfo;
+import com.google.cloud.storage.Storage;
+import com.mondomob.spring.cloudstorage.metrics.MicrometerStorageMetrics;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.MockitoJUnitRunner;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Random;
+
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@RunWith(MockitoJUnitRunner.class)
+public class CloudStorageServiceWriteTest {
+
+    private static final String DEFAULT_BUCKET = "default-bucket";
+
+    @Mock
+    private Storage storage;
+    @Mock
+    private WriteChannel writeChannel;
+    @Mock
+    private Blob blob;
+
+    private CloudStorageService service;
+    private ByteArrayOutputStream written;
+    private byte[] data;
+
+    @Before
+    public void before() throws IOException {
+        service = new CloudStorageService(DEFAULT_BUCKET, storage);
+        written = new ByteArrayOutputStream();
+        data = new byte[600 * 1024];
+        new Random(42).nextBytes(data);
+
+        when(writeChannel.write(any(ByteBuffer.class))).thenAnswer(invocation -> {
+            ByteBuffer buffer = invocation.getArgument(0);
+            byte[] bytes = new byte[buffer.remaining()];
+            buffer.get(bytes);
+            written.write(bytes);
+            return bytes.length;
+        });
+        when(storage.get(BlobId.of(DEFAULT_BUCKET, "my/object"))).thenReturn(blob);
+    }
+
+    @Test
+    public void writeFile_willStreamInputStreamThroughWriter() throws IOException {
+        when(storage.writer(any(BlobInfo.class))).thenReturn(writeChannel);
+
+        Blob result = service.writeFile(new ByteArrayInputStream(data), "my/object");
+
+        assertThat(result, is(blob));
+        assertArrayEquals(data, written.toByteArray());
+        verify(writeChannel).setChunkSize(CloudStorageService.DEFAULT_WRITE_CHUNK_SIZE);
+        verify(writeChannel).close();
+    }
+
+    @Test
+    public void writeFile_willUseConfiguredChunkSize() {
+        when(storage.writer(any(BlobInfo.class))).thenReturn(writeChannel);
+        service.setWriteChunkSize(1024 * 1024);
+
+        service.writeFile(new ByteArrayInputStream(data), "my/object");
+
+        verify(writeChannel).setChunkSize(1024 * 1024);
+    }
+
+    @Test
+    public void writeFile_willSetPublicAclAndCacheControl_whenPublicReadable() {
+        ArgumentCaptor<BlobInfo> blobInfo = ArgumentCaptor.forClass(BlobInfo.class);
+        when(storage.writer(any(BlobInfo.class), any(Storage.BlobWriteOption.class))).thenReturn(writeChannel);
+
+        service.writeFile(new ByteArrayInputStream(data), "my/object", true);
+
+        verify(storage).writer(blobInfo.capture(), eq(Storage.BlobWriteOption.predefinedAcl(Storage.PredefinedAcl.PUBLIC_READ)));
+        assertThat(blobInfo.getValue().getCacheControl(), is("public, max-age=0"));
+        assertArrayEquals(data, written.toByteArray());
+    }
+
+    @Test
+    public void writeFile_willRecordMetrics_whenConfigured() {
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        service.setMetrics(new MicrometerStorageMetrics(registry));
+        when(storage.writer(any(BlobInfo.class))).thenReturn(writeChannel);
+        when(blob.getSize()).thenReturn((long) data.length);
+
+        service.writeFile(new ByteArrayInputStream(data), "my/object");
+
+        assertThat(registry.get("gcs.operations").tags("operation", "write", "bucket", DEFAULT_BUCKET, "outcome", "success").timer().count(), is(1L));
+        assertThat(registry.get("gcs.bytes").tags("operation", "write").counter().count(), is((double) data.length));
+    }
+}
@@ -0,0 +1,39 @@
+package com.mondomob.spring.cloudstorage;
+
+
+import com.mondomob.spring.cloudstorage.apiclient.GcsJsonApiClient;
+import com.mondomob.spring.cloudstorage.emulator.StorageEmulator;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.junit4.SpringRunner;
+
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.startsWith;
+import static org.junit.Assert.assertThat;
+
+@RunWith(SpringRunner.class)
+@SpringBootTest(classes = {SpringGaeGcsAutoConfiguration.class}, properties = {
+        "gcs.default-bucket=test-bucket",
+        "gcs.emulator.enabled=true",
+        "app.id=some-app"
+})
+public class EmulatorBeanCreationTest {
+
+    @Autowired
+    private StorageEmulator storageEmulator;
+    @Autowired
+    private GcsJsonApiClient apiClient;
+    @Autowired
+    private CloudStorageService cloudStorageService;
+
+    @Test
+    public void libraryShouldUseEmulator_whenEnabled() {
+        cloudStorageService.writeFile("content".getBytes(), "object");
+
+        assertThat(cloudStorageService.fileExists("object"), is(true));
+        assertThat(apiClient.generateSignedUrl("test-bucket", "object", null), startsWith(storageEmulator.getHost()));
+    }
+
+}
@@ -2,6 +2,8 @@ package com.mondomob.spring.cloudstorage;
 
 
 import com.mondomob.spring.cloudstorage.apiclient.GcsJsonApiClient;
+import com.mondomob.spring.cloudstorage.apiclient.SignedUploadUrl;
+import com.mondomob.spring.cloudstorage.apiclient.SignedUrl;
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
@@ -9,11 +11,20 @@ import org.mockito.ArgumentMatchers;
 import org.mockito.Mock;
 import org.mockito.junit.MockitoJUnitRunner;
 
+import java.time.Duration;
+import java.time.OffsetDateTime;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Map;
+
 import static com.mondomob.spring.cloudstorage.GcsJsonApiService.DEFAULT_EXPIRY_DURATION;
+import static org.hamcrest.Matchers.contains;
 import static org.hamcrest.Matchers.is;
 import static org.hamcrest.Matchers.startsWith;
 import static org.junit.Assert.assertThat;
 import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 @RunWith(MockitoJUnitRunner.class)
@@ -76,6 +87,18 @@ public class GcsJsonApiServiceTest {
         assertThat(uploadUrl, is(expectedUploadUrl));
     }
 
+    @Test
+    public void getSignedUploadUrl_willUseBasePathAndConfiguredHost() {
+        SignedUploadUrl expected = new SignedUploadUrl("https://upload", OffsetDateTime.now(), "name", Collections.emptyMap());
+        when(cloudStorage.generateSignedUploadUrl(eq(DEFAULT_BUCKET), ArgumentMatchers.matches(DEFAULT_FOLDER + "/[0-9a-f-]{36}/filename\\.csv"),
+                eq("text/csv"), eq(1024L), eq(HOST), eq(DEFAULT_EXPIRY_DURATION)))
+                .thenReturn(expected);
+
+        SignedUploadUrl uploadUrl = service.getSignedUploadUrl("text/csv", "filename.csv", null, 1024L);
+
+        assertThat(uploadUrl, is(expected));
+    }
+
     @Test
     public void getDownloadUrl() {
         String expectedDownloadUrl = "https://download";
@@ -98,6 +121,35 @@ public class GcsJsonApiServiceTest {
         assertThat(downloadUrl, is(expectedDownloadUrl));
     }
 
+    @Test
+    public void getDownloadUrl_willReuseCachedUrl_whenCacheEnabled() {
+        service.enableSignedUrlCache(100, Duration.ofMinutes(1));
+        when(cloudStorage.generateSignedUrlWithExpiry(DEFAULT_BUCKET, "attachments/My%20report.pdf", DEFAULT_EXPIRY_DURATION))
+                .thenReturn(new SignedUrl("https://download", OffsetDateTime.now().plus(DEFAULT_EXPIRY_DURATION)));
+
+        assertThat(service.getDownloadUrl("attachments/My report.pdf"), is("https://download"));
+        assertThat(service.getDownloadUrl("attachments/My report.pdf"), is("https://download"));
+
+        verify(cloudStorage, times(1)).generateSignedUrlWithExpiry(DEFAULT_BUCKET, "attachments/My%20report.pdf", DEFAULT_EXPIRY_DURATION);
+    }
+
+    @Test
+    public void getDownloadUrls_willOnlySignUrlsNotCached() {
+        service.enableSignedUrlCache(100, Duration.ofMinutes(1));
+        OffsetDateTime expiresAt = OffsetDateTime.now().plus(DEFAULT_EXPIRY_DURATION);
+        when(cloudStorage.generateSignedUrlWithExpiry(DEFAULT_BUCKET, "attachments/a.pdf", DEFAULT_EXPIRY_DURATION))
+                .thenReturn(new SignedUrl("https://a", expiresAt));
+        when(cloudStorage.generateSignedUrls(DEFAULT_BUCKET, Collections.singleton("attachments/My%20report.pdf"), DEFAULT_EXPIRY_DURATION))
+                .thenReturn(Collections.singletonMap("attachments/My%20report.pdf", new SignedUrl("https://report", expiresAt)));
+        service.getDownloadUrl("attachments/a.pdf");
+
+        Map<String, String> downloadUrls = service.getDownloadUrls(Arrays.asList("attachments/My report.pdf", "attachments/a.pdf"));
+
+        assertThat(downloadUrls.keySet(), contains("attachments/My report.pdf", "attachments/a.pdf"));
+        assertThat(downloadUrls.get("attachments/My report.pdf"), is("https://report"));
+        assertThat(downloadUrls.get("attachments/a.pdf"), is("https://a"));
+    }
+
     @Test
     public void buildBasePath() {
         String folder = service.buildBasePath("my/folder");
@@ -0,0 +1,117 @@
+package com.mondomob.spring.cloudstorage;
+
+import com.google.cloud.storage.Blob;
+import com.google.cloud.storage.BlobId;
+import com.google.cloud.storage.Storage;
+import com.google.common.io.ByteStreams;
+import com.mondomob.spring.cloudstorage.emulator.StorageEmulator;
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.zip.GZIPInputStream;
+
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.lessThan;
+import static org.hamcrest.Matchers.nullValue;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertThat;
+
+public class GzipTranscoderTest {
+    private static final String BUCKET = "bucket";
+
+    private static StorageEmulator emulator;
+
+    private Storage storage;
+    private CloudStorageService service;
+    private byte[] content;
+
+    @BeforeClass
+    public static void beforeClass() {
+        emulator = new StorageEmulator(0);
+    }
+
+    @AfterClass
+    public static void afterClass() {
+        emulator.close();
+    }
+
+    @Before
+    public void before() {
+        emulator.reset();
+        storage = emulator.getStorage();
+        service = new CloudStorageService(BUCKET, storage);
+        service.enableGzipTranscoding(GzipTranscoder.DEFAULT_LEVEL, Arrays.asList(GzipTranscoder.DEFAULT_CONTENT_TYPES.split(",")));
+        StringBuilder csv = new StringBuilder("id,name,amount\n");
+        for (int i = 0; i < 10000; i++) {
+            csv.append(i).append(",customer-").append(i % 100).append(',').append(i * 7 % 1000).append('\n');
+        }
+        content = csv.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    @Test
+    public void writeFile_willStoreCompressedBytes_withGzipEncoding() throws IOException {
+        Blob blob = service.writeFile(content, "exports/report.csv");
+
+        assertThat(blob.getContentEncoding(), is("gzip"));
+        assertThat(blob.getContentType(), is("text/csv"));
+        byte[] stored = storage.readAllBytes(BlobId.of(BUCKET, "exports/report.csv"));
+        assertThat(stored.length, lessThan(content.length / 4));
+        assertArrayEquals(content, ByteStreams.toByteArray(new GZIPInputStream(new ByteArrayInputStream(stored))));
+    }
+
+    @Test
+    public void writeFile_willCompressStreams() throws IOException {
+        Blob blob = service.writeFile(new ByteArrayInputStream(content), "exports/report.json");
+
+        assertThat(blob.getContentEncoding(), is("gzip"));
+        assertThat(blob.getContentType(), is("application/json"));
+        assertThat(blob.getSize(), lessThan((long) content.length / 4));
+    }
+
+    @Test
+    public void writeFile_willNotCompress_whenContentTypeIsNotAllowed() {
+        Blob blob = service.writeFile(content, "images/photo.png");
+
+        assertThat(blob.getContentEncoding(), nullValue());
+        assertArrayEquals(content, storage.readAllBytes(BlobId.of(BUCKET, "images/photo.png")));
+    }
+
+    @Test
+    public void readFile_willDecompressGzipEncodedObjects() throws IOException {
+        service.writeFile(new ByteArrayInputStream(content), "exports/report.csv");
+
+        try (InputStream stream = service.readFile("exports/report.csv")) {
+            assertArrayEquals(content, ByteStreams.toByteArray(stream));
+        }
+        try (InputStream stream = service.readFile("exports/report.csv", 1024, true)) {
+            assertArrayEquals(content, ByteStreams.toByteArray(stream));
+        }
+        assertArrayEquals(content, service.readBytes("exports/report.csv"));
+    }
+
+    @Test
+    public void readFile_willNotDecompress_whenObjectIsNotGzipEncoded() throws IOException {
+        byte[] gzipFile = new GzipTranscoder(GzipTranscoder.DEFAULT_LEVEL, Arrays.asList("text/*")).compress(content);
+        service.writeFile(gzipFile, "archives/report.csv.gz");
+
+        try (InputStream stream = service.readFile("archives/report.csv.gz")) {
+            assertArrayEquals(gzipFile, ByteStreams.toByteArray(stream));
+        }
+        assertArrayEquals(gzipFile, service.readBytes("archives/report.csv.gz"));
+    }
+
+    @Test
+    public void decode_willReturnContent_whenAlreadyDecompressed() throws IOException {
+        try (InputStream stream = GzipTranscoder.decode(new ByteArrayInputStream(content), () -> true)) {
+            assertArrayEquals(content, ByteStreams.toByteArray(stream));
+        }
+        assertArrayEquals(new byte[0], GzipTranscoder.decode(new byte[0], () -> true));
+    }
+}
@@ -0,0 +1,104 @@
+package com.mondomob.spring.cloudstorage;
+
+import com.google.api.client.http.GenericUrl;
+import com.google.api.client.http.HttpRequest;
+import com.google.api.client.http.HttpResponse;
+import com.google.api.client.http.apache.v2.ApacheHttpTransport;
+import com.google.api.client.http.javanet.NetHttpTransport;
+import com.google.api.client.testing.http.MockHttpTransport;
+import com.google.cloud.http.HttpTransportOptions;
+import com.google.common.io.ByteStreams;
+import com.sun.net.httpserver.HttpServer;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+
+import static org.hamcrest.Matchers.instanceOf;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.nullValue;
+import static org.hamcrest.Matchers.sameInstance;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertThat;
+
+public class HttpTransportSettingsTest {
+
+    @Test
+    public void createTransport_willCreatePooledApacheTransport() {
+        HttpTransportSettings settings = new HttpTransportSettings(HttpTransportSettings.APACHE, 10, 5, 30, 1000, 2000, true);
+
+        assertThat(settings.createTransport(), instanceOf(ApacheHttpTransport.class));
+    }
+
+    @Test
+    public void createTransport_willLeaveGzipResponsesToHttpClientLibrary() throws IOException {
+        byte[] compressed = new GzipTranscoder(GzipTranscoder.DEFAULT_LEVEL, Collections.singletonList("text/*"))
+                .compress("compressed content".getBytes(StandardCharsets.UTF_8));
+        HttpServer server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.createContext("/", exchange -> {
+            exchange.getResponseHeaders().set("Content-Encoding", "gzip");
+            exchange.sendResponseHeaders(200, compressed.length);
+            exchange.getResponseBody().write(compressed);
+            exchange.close();
+        });
+        server.start();
+        try {
+            HttpTransportSettings settings = new HttpTransportSettings(HttpTransportSettings.APACHE, 10, 5, 30, 1000, 2000, true);
+            HttpRequest request = settings.createTransport().createRequestFactory(settings.initializer(null))
+                    .buildGetRequest(new GenericUrl(String.format("http://localhost:%s/object", server.getAddress().getPort())));
+            request.setResponseReturnRawInputStream(true);
+
+            HttpResponse response = request.execute();
+
+            assertThat(response.getContentEncoding(), is("gzip"));
+            assertArrayEquals(compressed, ByteStreams.toByteArray(response.getContent()));
+        } finally {
+            server.stop(0);
+        }
+    }
+
+    @Test
+    public void createTransport_willCreateNetHttpTransport() {
+        HttpTransportSettings settings = new HttpTransportSettings(HttpTransportSettings.NET_HTTP, 10, 5, 30, 1000, 2000, true);
+
+        assertThat(settings.createTransport(), instanceOf(NetHttpTransport.class));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void constructor_willRejectUnknownTransport() {
+        new HttpTransportSettings("okhttp", 10, 5, 30, 1000, 2000, true);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void constructor_willRejectMorePerRouteThanTotalConnections() {
+        new HttpTransportSettings(HttpTransportSettings.APACHE, 10, 20, 30, 1000, 2000, true);
+    }
+
+    @Test
+    public void initializer_willApplyTimeoutsAndCompressionAfterDelegate() throws IOException {
+        HttpTransportSettings settings = new HttpTransportSettings(HttpTransportSettings.APACHE, 10, 5, 30, 1000, 2000, false);
+
+        HttpRequest request = new MockHttpTransport()
+                .createRequestFactory(settings.initializer(delegate -> delegate.getHeaders().setAuthorization("Bearer token")))
+                .buildGetRequest(new GenericUrl("https://www.googleapis.com/storage/v1/b/bucket"));
+
+        assertThat(request.getConnectTimeout(), is(1000));
+        assertThat(request.getReadTimeout(), is(2000));
+        assertThat(request.getHeaders().getAcceptEncoding(), is(nullValue()));
+        assertThat(request.getHeaders().getAuthorization(), is("Bearer token"));
+    }
+
+    @Test
+    public void storageTransportOptions_willShareTransportAndTimeouts() {
+        HttpTransportSettings settings = new HttpTransportSettings(HttpTransportSettings.APACHE, 10, 5, 30, 1000, 2000, true);
+        MockHttpTransport transport = new MockHttpTransport();
+
+        HttpTransportOptions options = settings.storageTransportOptions(transport);
+
+        assertThat(options.getHttpTransportFactory().create(), sameInstance(transport));
+        assertThat(options.getConnectTimeout(), is(1000));
+        assertThat(options.getReadTimeout(), is(2000));
+    }
+}
@@ -0,0 +1,66 @@
+package com.mondomob.spring.cloudstorage;
+
+import com.google.cloud.storage.BlobId;
+import com.google.cloud.storage.Storage;
+import com.google.cloud.storage.StorageException;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class LazyStorageTest {
+
+    private Storage delegate;
+    private AtomicInteger created;
+    private Storage storage;
+
+    @Before
+    public void before() {
+        delegate = mock(Storage.class);
+        created = new AtomicInteger();
+        storage = LazyStorage.create(() -> {
+            created.incrementAndGet();
+            return delegate;
+        });
+    }
+
+    @Test
+    public void create_willNotCreateStorage_untilFirstUse() {
+        assertThat(storage.toString(), is("LazyStorage"));
+
+        assertThat(created.get(), is(0));
+    }
+
+    @Test
+    public void storage_willCreateDelegateOnce_andForwardCalls() {
+        BlobId blobId = BlobId.of("bucket", "object");
+        when(delegate.delete(blobId)).thenReturn(true);
+
+        assertThat(storage.delete(blobId), is(true));
+        assertThat(storage.delete(blobId), is(true));
+
+        assertThat(created.get(), is(1));
+        verify(delegate, times(2)).delete(blobId);
+    }
+
+    @Test
+    public void storage_willThrowDelegateException_unwrapped() {
+        BlobId blobId = BlobId.of("bucket", "object");
+        when(delegate.delete(blobId)).thenThrow(new StorageException(503, "unavailable"));
+
+        try {
+            storage.delete(blobId);
+            fail();
+        } catch (StorageException e) {
+            assertThat(e.getCode(), is(503));
+        }
+    }
+}
@@ -1,6 +1,8 @@
 package com.mondomob.spring.cloudstorage;
 
 
+import com.google.cloud.ServiceOptions;
+import com.google.cloud.storage.Storage;
 import com.mondomob.spring.cloudstorage.apiclient.GcsJsonApiClient;
 import com.mondomob.spring.cloudstorage.apiclient.LocalGcsJsonApiClient;
 import org.junit.Test;
@@ -10,6 +12,8 @@ import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.test.context.ActiveProfiles;
 import org.springframework.test.context.junit4.SpringRunner;
 
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
 import static org.junit.Assert.assertTrue;
 
 @RunWith(SpringRunner.class)
@@ -23,10 +27,17 @@ public class LocalProfileBeanCreationDevCredentialsTest {
 
     @Autowired
     private GcsJsonApiClient apiClient;
+    @Autowired
+    private Storage storage;
 
     @Test
     public void libraryShouldLoadLocalClient_whenCredentialsConfigured() {
         assertTrue(apiClient instanceof LocalGcsJsonApiClient);
     }
 
+    @Test
+    public void storageShouldKeepLibraryRetrySettings_whenRetryNotConfigured() {
+        assertThat(storage.getOptions().getRetrySettings(), is(ServiceOptions.getDefaultRetrySettings()));
+    }
+
 }
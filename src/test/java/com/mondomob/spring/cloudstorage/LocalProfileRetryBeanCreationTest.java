@@ -0,0 +1,34 @@
+package com.mondomob.spring.cloudstorage;
+
+import com.google.cloud.ServiceOptions;
+import com.google.cloud.storage.Storage;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.junit4.SpringRunner;
+
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+
+@RunWith(SpringRunner.class)
+@SpringBootTest(classes = {SpringGaeGcsAutoConfiguration.class}, properties = {
+        "gcs.dev-credentials-file=/test_dev_credentials.json",
+        "gcs.default-bucket=test-bucket",
+        "app.id=some-app",
+        "gcs.retry.max-attempts=5",
+        "gcs.retry.budget.enabled=true"
+})
+@ActiveProfiles(profiles = "local")
+public class LocalProfileRetryBeanCreationTest {
+
+    @Autowired
+    private Storage storage;
+
+    @Test
+    public void storageShouldNotRetry_whenRetryBudgetEnabled() {
+        assertThat(storage.getOptions().getRetrySettings(), is(ServiceOptions.getNoRetrySettings()));
+    }
+
+}
@@ -0,0 +1,180 @@
+package com.mondomob.spring.cloudstorage;
+
+import com.google.cloud.storage.Blob;
+import com.google.cloud.storage.BlobId;
+import com.google.cloud.storage.BlobInfo;
+import com.google.cloud.storage.Storage;
+import com.google.cloud.storage.StorageException;
+import com.google.common.io.ByteStreams;
+import com.google.common.util.concurrent.Uninterruptibles;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.MockitoJUnitRunner;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Function;
+
+import static org.hamcrest.Matchers.hasSize;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.startsWith;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@RunWith(MockitoJUnitRunner.class)
+public class ParallelCompositeUploaderTest {
+
+    private static final BlobInfo TARGET = BlobInfo.newBuilder(BlobId.of("bucket", "my/object")).build();
+
+    @Mock
+    private Storage storage;
+    @Mock
+    private Blob blob;
+
+    private ParallelCompositeUploader uploader;
+    private Map<String, byte[]> parts;
+    private byte[] singleUploaded;
+
+    @Before
+    public void before() {
+        uploader = new ParallelCompositeUploader(storage, 10, 10, 2);
+        parts = new ConcurrentHashMap<>();
+    }
+
+    @Test
+    public void upload_willSplitStreamIntoPartsAndCompose() throws Exception {
+        when(storage.create(any(BlobInfo.class), any(byte[].class))).thenAnswer(invocation -> {
+            BlobInfo part = invocation.getArgument(0);
+            parts.put(part.getName(), invocation.getArgument(1));
+            return null;
+        });
+        when(storage.compose(any(Storage.ComposeRequest.class))).thenReturn(blob);
+        ArgumentCaptor<Storage.ComposeRequest> compose = ArgumentCaptor.forClass(Storage.ComposeRequest.class);
+        ArgumentCaptor<List<BlobId>> deleted = ArgumentCaptor.forClass(List.class);
+
+        Blob result = uploader.upload(TARGET, Channels.newChannel(new ByteArrayInputStream("0123456789abcdefghijKLMNO".getBytes())), singleUpload());
+
+        assertThat(result, is(blob));
+        assertThat(parts.size(), is(3));
+        assertArrayEquals("0123456789abcdefghijKLMNO".getBytes(), concatenate(parts));
+        verify(storage).compose(compose.capture());
+        assertThat(compose.getValue().getTarget(), is(TARGET));
+        assertThat(compose.getValue().getSourceBlobs(), hasSize(3));
+        verify(storage).delete(deleted.capture());
+        assertThat(deleted.getValue(), hasSize(3));
+    }
+
+    @Test
+    public void upload_willWriteDirectly_whenStreamFitsInOnePart() throws Exception {
+        Blob result = uploader.upload(TARGET, Channels.newChannel(new ByteArrayInputStream("0123".getBytes())), singleUpload());
+
+        assertThat(result, is(blob));
+        assertArrayEquals("0123".getBytes(), singleUploaded);
+        verify(storage, never()).create(any(BlobInfo.class), any(byte[].class));
+        verify(storage, never()).compose(any(Storage.ComposeRequest.class));
+    }
+
+    @Test
+    public void upload_willWriteDirectly_whenStreamEndsBeforeThreshold() throws Exception {
+        uploader = new ParallelCompositeUploader(storage, 30, 10, 2);
+
+        Blob result = uploader.upload(TARGET, Channels.newChannel(new ByteArrayInputStream("0123456789abcdefghijKLMNO".getBytes())), singleUpload());
+
+        assertThat(result, is(blob));
+        assertArrayEquals("0123456789abcdefghijKLMNO".getBytes(), singleUploaded);
+        verify(storage, never()).create(any(BlobInfo.class), any(byte[].class));
+        verify(storage, never()).compose(any(Storage.ComposeRequest.class));
+    }
+
+    @Test
+    public void upload_willWaitForRunningParts_beforeDeletingThem() throws Exception {
+        CountDownLatch slowPartStarted = new CountDownLatch(1);
+        AtomicBoolean slowPartFinished = new AtomicBoolean();
+        AtomicBoolean finishedBeforeDelete = new AtomicBoolean();
+        when(storage.create(any(BlobInfo.class), any(byte[].class))).thenAnswer(invocation -> {
+            BlobInfo part = invocation.getArgument(0);
+            if (part.getName().endsWith("part-0")) {
+                slowPartStarted.await(5, TimeUnit.SECONDS);
+                throw new StorageException(503, "unavailable");
+            }
+            slowPartStarted.countDown();
+            Uninterruptibles.sleepUninterruptibly(200, TimeUnit.MILLISECONDS);
+            slowPartFinished.set(true);
+            return null;
+        });
+        when(storage.delete(any(List.class))).thenAnswer(invocation -> {
+            finishedBeforeDelete.set(slowPartFinished.get());
+            return null;
+        });
+
+        try {
+            uploader.upload(TARGET, Channels.newChannel(new ByteArrayInputStream("0123456789abcdefghijKLMNO".getBytes())), singleUpload());
+            fail("Expected upload to fail");
+        } catch (RuntimeException e) {
+            assertThat(e.getCause() instanceof StorageException, is(true));
+        }
+
+        assertThat(finishedBeforeDelete.get(), is(true));
+    }
+
+    @Test
+    public void upload_willDeleteParts_whenPartUploadFails() throws Exception {
+        when(storage.create(any(BlobInfo.class), any(byte[].class))).thenAnswer(invocation -> {
+            BlobInfo part = invocation.getArgument(0);
+            if (part.getName().endsWith("part-1")) {
+                throw new StorageException(503, "unavailable");
+            }
+            return null;
+        });
+        ArgumentCaptor<List<BlobId>> deleted = ArgumentCaptor.forClass(List.class);
+
+        try {
+            uploader.upload(TARGET, Channels.newChannel(new ByteArrayInputStream("0123456789abcdefghijKLMNO".getBytes())), singleUpload());
+            fail("Expected upload to fail");
+        } catch (RuntimeException e) {
+            assertThat(e.getCause() instanceof StorageException, is(true));
+        }
+
+        verify(storage, never()).compose(any(Storage.ComposeRequest.class));
+        verify(storage).delete(deleted.capture());
+        assertThat(deleted.getValue().isEmpty(), is(false));
+        deleted.getValue().forEach(part -> assertThat(part.getName(), startsWith("my/object.")));
+    }
+
+    private Function<ReadableByteChannel, Blob> singleUpload() {
+        return content -> {
+            try {
+                singleUploaded = ByteStreams.toByteArray(Channels.newInputStream(content));
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            return blob;
+        };
+    }
+
+    private static byte[] concatenate(Map<String, byte[]> parts) {
+        Map<Integer, byte[]> ordered = new TreeMap<>();
+        parts.forEach((name, content) -> ordered.put(Integer.valueOf(name.substring(name.lastIndexOf('-') + 1)), content));
+        StringBuilder builder = new StringBuilder();
+        ordered.values().forEach(content -> builder.append(new String(content)));
+        return builder.toString().getBytes();
+    }
+}
@@ -0,0 +1,149 @@
+package com.mondomob.spring.cloudstorage;
+
+import com.google.auth.oauth2.AccessToken;
+import com.google.auth.oauth2.OAuth2Credentials;
+import com.mondomob.spring.cloudstorage.metrics.MicrometerStorageMetrics;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.net.URI;
+import java.time.Clock;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+
+public class PreRefreshingCredentialsTest {
+
+    private static final URI URI = java.net.URI.create("https://storage.googleapis.com/storage/v1/b/bucket/o");
+
+    private SimpleMeterRegistry registry;
+    private AtomicInteger refreshes;
+    private CountDownLatch release;
+    private Duration tokenLifetime;
+    private IOException failure;
+    private Thread refreshThread;
+    private ScheduledThreadPoolExecutor scheduler;
+    private PreRefreshingCredentials credentials;
+
+    @Before
+    public void before() {
+        registry = new SimpleMeterRegistry();
+        refreshes = new AtomicInteger();
+        release = new CountDownLatch(0);
+        tokenLifetime = Duration.ofHours(1);
+        OAuth2Credentials delegate = new OAuth2Credentials() {
+            @Override
+            public AccessToken refreshAccessToken() throws IOException {
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    throw new IOException(e);
+                }
+                refreshThread = Thread.currentThread();
+                if (failure != null) {
+                    throw failure;
+                }
+                return new AccessToken(String.format("token-%s", refreshes.incrementAndGet()),
+                        new Date(System.currentTimeMillis() + tokenLifetime.toMillis()));
+            }
+        };
+        scheduler = new ScheduledThreadPoolExecutor(1);
+        scheduler.setRemoveOnCancelPolicy(true);
+        credentials = new PreRefreshingCredentials(delegate, Duration.ofMinutes(5), scheduler, Clock.systemUTC());
+        credentials.setMetrics(new MicrometerStorageMetrics(registry));
+    }
+
+    @After
+    public void after() {
+        credentials.close();
+    }
+
+    @Test
+    public void getRequestMetadata_willFetchTokenOnce() throws IOException {
+        assertThat(credentials.getRequestMetadata(URI).get("Authorization"), is(Collections.singletonList("Bearer token-1")));
+        assertThat(credentials.getRequestMetadata(URI).get("Authorization"), is(Collections.singletonList("Bearer token-1")));
+
+        assertThat(refreshes.get(), is(1));
+        assertThat(refreshTimerCount("success"), is(1L));
+    }
+
+    @Test
+    public void getRequestMetadata_willFetchFirstToken_onCallingThread() throws IOException {
+        credentials.getRequestMetadata(URI);
+
+        assertThat(refreshThread, is(Thread.currentThread()));
+    }
+
+    @Test
+    public void getRequestMetadata_willShareOneRefresh_betweenConcurrentCallers() throws Exception {
+        release = new CountDownLatch(1);
+        ExecutorService callers = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<String>> tokens = new ArrayList<>();
+            for (int i = 0; i < 8; i++) {
+                tokens.add(callers.submit(() -> credentials.getRequestMetadata(URI).get("Authorization").get(0)));
+            }
+            release.countDown();
+
+            for (Future<String> token : tokens) {
+                assertThat(token.get(5, TimeUnit.SECONDS), is("Bearer token-1"));
+            }
+            assertThat(refreshes.get(), is(1));
+        } finally {
+            callers.shutdownNow();
+        }
+    }
+
+    @Test
+    public void getRequestMetadata_willScheduleBackgroundRefresh_beforeExpiry() throws IOException {
+        credentials.getRequestMetadata(URI);
+
+        assertThat(scheduler.getQueue().size(), is(1));
+        long delay = ((ScheduledFuture<?>) scheduler.getQueue().peek()).getDelay(TimeUnit.MINUTES);
+        assertThat(delay >= 54 && delay <= 55, is(true));
+    }
+
+    @Test
+    public void refresh_willReplaceToken() throws IOException {
+        credentials.getRequestMetadata(URI);
+
+        credentials.refresh();
+
+        assertThat(credentials.getRequestMetadata(URI).get("Authorization"), is(Collections.singletonList("Bearer token-2")));
+        assertThat(scheduler.getQueue().size(), is(1));
+    }
+
+    @Test
+    public void getRequestMetadata_willThrowRefreshFailure() {
+        failure = new IOException("token endpoint unavailable");
+
+        try {
+            credentials.getRequestMetadata(URI);
+            fail();
+        } catch (IOException e) {
+            assertThat(e.getMessage(), is("token endpoint unavailable"));
+        }
+        assertThat(refreshTimerCount("error"), is(1L));
+    }
+
+    private long refreshTimerCount(String outcome) {
+        return registry.get("gcs.operations").tags("operation", "refresh-credentials", "outcome", outcome).timer().count();
+    }
+}
@@ -0,0 +1,58 @@
+package com.mondomob.spring.cloudstorage;
+
+import com.google.api.gax.paging.Page;
+import com.google.common.collect.Lists;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.junit.MockitoJUnitRunner;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static org.hamcrest.Matchers.contains;
+import static org.junit.Assert.assertThat;
+import static org.mockito.Mockito.when;
+
+@RunWith(MockitoJUnitRunner.class)
+public class PrefetchingPageIteratorTest {
+
+    @Mock
+    private Page<String> firstPage;
+    @Mock
+    private Page<String> emptyPage;
+    @Mock
+    private Page<String> lastPage;
+
+    private ExecutorService executor;
+
+    @Before
+    public void before() {
+        executor = Executors.newSingleThreadExecutor();
+    }
+
+    @After
+    public void after() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    public void iterator_willWalkEveryPage() {
+        when(firstPage.getValues()).thenReturn(Arrays.asList("a", "b"));
+        when(firstPage.hasNextPage()).thenReturn(true);
+        when(firstPage.getNextPage()).thenReturn(emptyPage);
+        when(emptyPage.getValues()).thenReturn(Collections.emptyList());
+        when(emptyPage.hasNextPage()).thenReturn(true);
+        when(emptyPage.getNextPage()).thenReturn(lastPage);
+        when(lastPage.getValues()).thenReturn(Collections.singletonList("c"));
+        when(lastPage.hasNextPage()).thenReturn(false);
+
+        PrefetchingPageIterator<String> iterator = new PrefetchingPageIterator<>(firstPage, executor);
+
+        assertThat(Lists.newArrayList(iterator), contains("a", "b", "c"));
+    }
+}
@@ -0,0 +1,123 @@
+package com.mondomob.spring.cloudstorage;
+
+import com.google.api.gax.paging.Page;
+import com.google.cloud.storage.Blob;
+import com.google.cloud.storage.BlobId;
+import com.google.cloud.storage.Storage;
+import com.google.common.util.concurrent.Uninterruptibles;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.junit.MockitoJUnitRunner;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.lenient;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@RunWith(MockitoJUnitRunner.class)
+public class PrefixOperationsTest {
+
+    @Mock
+    private Storage storage;
+    @Mock
+    private RewriteCopier rewriteCopier;
+    @Mock
+    private Page<Blob> page;
+    @Mock
+    private Blob first;
+    @Mock
+    private Blob second;
+    @Mock
+    private Blob existingCopy;
+
+    private PrefixOperations prefixOperations;
+
+    @Before
+    public void before() {
+        prefixOperations = new PrefixOperations(storage, rewriteCopier, 2, 1000);
+        givenBlob(first, "tenant-a/one.pdf", 1L);
+        givenBlob(second, "tenant-a/two.pdf", 2L);
+        lenient().when(storage.list(eq("from"), any(Storage.BlobListOption.class), any(Storage.BlobListOption.class), any(Storage.BlobListOption.class)))
+                .thenReturn(page);
+        lenient().when(page.iterateAll()).thenReturn(Arrays.asList(first, second));
+    }
+
+    @Test
+    public void copy_willSkipObjectsAlreadyCopied() {
+        when(existingCopy.getSize()).thenReturn(10L);
+        when(existingCopy.getCrc32c()).thenReturn("crc");
+        when(storage.get(eq(BlobId.of("to", "tenant-b/one.pdf")), any(Storage.BlobGetOption.class))).thenReturn(existingCopy);
+        AtomicInteger progressCalls = new AtomicInteger();
+
+        PrefixOperationResult result = prefixOperations.copy("from", "tenant-a/", "to", "tenant-b/", progress -> progressCalls.incrementAndGet());
+
+        assertThat(result.getCompleted(), is(1L));
+        assertThat(result.getSkipped(), is(1L));
+        assertThat(result.getFailed(), is(0L));
+        assertThat(progressCalls.get(), is(2));
+        verify(rewriteCopier, never()).copy(eq(BlobId.of("from", "tenant-a/one.pdf", 1L)), any(BlobId.class), any(CopyProgressListener.class));
+        verify(rewriteCopier).copy(BlobId.of("from", "tenant-a/two.pdf", 2L), BlobId.of("to", "tenant-b/two.pdf"), CopyProgressListener.NONE);
+    }
+
+    @Test
+    public void copy_willRecordFailuresAndContinue() {
+        when(rewriteCopier.copy(eq(BlobId.of("from", "tenant-a/one.pdf", 1L)), any(BlobId.class), any(CopyProgressListener.class)))
+                .thenThrow(new IllegalStateException("boom"));
+
+        PrefixOperationResult result = prefixOperations.copy("from", "tenant-a/", "to", "tenant-b/", progress -> {
+        });
+
+        assertThat(result.getCompleted(), is(1L));
+        assertThat(result.getFailures().get("tenant-a/one.pdf"), is("boom"));
+    }
+
+    @Test
+    public void copy_willReturnAfterEveryProgressCallback() {
+        AtomicInteger progressCalls = new AtomicInteger();
+
+        prefixOperations.copy("from", "tenant-a/", "to", "tenant-b/", progress -> {
+            Uninterruptibles.sleepUninterruptibly(200, TimeUnit.MILLISECONDS);
+            progressCalls.incrementAndGet();
+        });
+
+        assertThat(progressCalls.get(), is(2));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void copy_willRejectTargetInsideSource_inSameBucket() {
+        prefixOperations.copy("from", "tenant-a/", "from", "tenant-a/archive/", progress -> {
+        });
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void move_willRejectSourceInsideTarget_inSameBucket() {
+        prefixOperations.move("from", "tenant-a/archive/", "from", "tenant-a/", progress -> {
+        });
+    }
+
+    @Test
+    public void copy_willAllowSamePrefix_inAnotherBucket() {
+        PrefixOperationResult result = prefixOperations.copy("from", "tenant-a/", "to", "tenant-a/", progress -> {
+        });
+
+        assertThat(result.getCompleted(), is(2L));
+    }
+
+    private static void givenBlob(Blob blob, String name, long generation) {
+        lenient().when(blob.getBucket()).thenReturn("from");
+        lenient().when(blob.getName()).thenReturn(name);
+        lenient().when(blob.getGeneration()).thenReturn(generation);
+        lenient().when(blob.getSize()).thenReturn(10L);
+        lenient().when(blob.getCrc32c()).thenReturn("crc");
+    }
+}
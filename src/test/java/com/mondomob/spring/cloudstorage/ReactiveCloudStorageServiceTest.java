@@ -0,0 +1,95 @@
+package com.mondomob.spring.cloudstorage;
+
+import com.google.cloud.storage.Blob;
+import com.google.common.io.ByteStreams;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.junit.MockitoJUnitRunner;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import org.springframework.core.io.buffer.DefaultDataBufferFactory;
+import reactor.core.publisher.Flux;
+import reactor.core.scheduler.Schedulers;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.when;
+
+@RunWith(MockitoJUnitRunner.class)
+public class ReactiveCloudStorageServiceTest {
+
+    @Mock
+    private CloudStorageService cloudStorageService;
+    @Mock
+    private Blob blob;
+
+    private DefaultDataBufferFactory bufferFactory;
+    private ReactiveCloudStorageService service;
+    private byte[] content;
+
+    @Before
+    public void before() {
+        bufferFactory = new DefaultDataBufferFactory();
+        service = new ReactiveCloudStorageService(cloudStorageService, Schedulers.elastic(), bufferFactory, 1000, 2);
+        content = new byte[4500];
+        new Random(7).nextBytes(content);
+    }
+
+    @Test
+    public void readFile_willEmitBuffersOfConfiguredSize() {
+        when(cloudStorageService.readFile("bucket", "object")).thenReturn(new ByteArrayInputStream(content));
+
+        List<DataBuffer> buffers = service.readFile("bucket", "object").collectList().block();
+
+        assertThat(buffers.size(), is(5));
+        ByteArrayOutputStream read = new ByteArrayOutputStream();
+        buffers.forEach(buffer -> {
+            byte[] bytes = new byte[buffer.readableByteCount()];
+            buffer.read(bytes);
+            read.write(bytes, 0, bytes.length);
+            DataBufferUtils.release(buffer);
+        });
+        assertArrayEquals(content, read.toByteArray());
+    }
+
+    @Test
+    public void writeFile_willStreamBuffersToUpload() {
+        AtomicReference<byte[]> uploaded = new AtomicReference<>();
+        when(cloudStorageService.writeFile(eq("bucket"), any(ReadableByteChannel.class), eq("object"), eq(false))).thenAnswer(invocation -> {
+            ReadableByteChannel channel = invocation.getArgument(1);
+            uploaded.set(ByteStreams.toByteArray(Channels.newInputStream(channel)));
+            return blob;
+        });
+        Flux<DataBuffer> data = Flux.range(0, 9).map(i -> bufferFactory.wrap(Arrays.copyOfRange(content, i * 500, (i + 1) * 500)));
+
+        Blob result = service.writeFile("bucket", data, "object", false).block();
+
+        assertThat(result, is(blob));
+        assertArrayEquals(content, uploaded.get());
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void writeFile_willFail_whenContentFails() {
+        when(cloudStorageService.writeFile(eq("bucket"), any(ReadableByteChannel.class), eq("object"), eq(false))).thenAnswer(invocation -> {
+            ByteStreams.toByteArray(Channels.newInputStream((ReadableByteChannel) invocation.getArgument(1)));
+            return blob;
+        });
+        Flux<DataBuffer> data = Flux.concat(Flux.just(bufferFactory.wrap(content)), Flux.error(new IllegalStateException("client went away")));
+
+        service.writeFile("bucket", data, "object", false).block();
+    }
+}
@@ -0,0 +1,132 @@
+package com.mondomob.spring.cloudstorage;
+
+import com.google.common.util.concurrent.Uninterruptibles;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertThat;
+
+public class ReadAheadInputStreamTest {
+
+    private ExecutorService executor;
+    private byte[] content;
+
+    @Before
+    public void before() {
+        executor = Executors.newCachedThreadPool();
+        content = new byte[10_000];
+        new Random(3).nextBytes(content);
+    }
+
+    @After
+    public void after() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    public void read_willReturnContentAcrossBuffers() throws IOException {
+        ByteArrayOutputStream read = new ByteArrayOutputStream();
+        byte[] buffer = new byte[333];
+
+        try (InputStream stream = new ReadAheadInputStream(Channels.newChannel(new ByteArrayInputStream(content)), 1024, executor)) {
+            int count;
+            while ((count = stream.read(buffer)) >= 0) {
+                read.write(buffer, 0, count);
+            }
+        }
+
+        assertArrayEquals(content, read.toByteArray());
+    }
+
+    @Test
+    public void read_willSupportSingleByteReads() throws IOException {
+        byte[] read = new byte[content.length];
+
+        try (DataInputStream stream = new DataInputStream(
+                new ReadAheadInputStream(Channels.newChannel(new ByteArrayInputStream(content)), 100, executor))) {
+            for (int i = 0; i < read.length; i++) {
+                read[i] = stream.readByte();
+            }
+            assertThat(stream.read(), is(-1));
+        }
+
+        assertArrayEquals(content, read);
+    }
+
+    @Test
+    public void close_willWaitForRunningBackgroundRead_beforeClosingSource() throws Exception {
+        CountDownLatch reading = new CountDownLatch(1);
+        AtomicBoolean readInProgress = new AtomicBoolean();
+        AtomicBoolean closedDuringRead = new AtomicBoolean();
+        ReadableByteChannel slow = new ReadableByteChannel() {
+            private boolean open = true;
+
+            @Override
+            public int read(ByteBuffer dst) {
+                readInProgress.set(true);
+                reading.countDown();
+                Uninterruptibles.sleepUninterruptibly(200, TimeUnit.MILLISECONDS);
+                readInProgress.set(false);
+                return -1;
+            }
+
+            @Override
+            public boolean isOpen() {
+                return open;
+            }
+
+            @Override
+            public void close() {
+                closedDuringRead.set(readInProgress.get());
+                open = false;
+            }
+        };
+
+        InputStream stream = new ReadAheadInputStream(slow, 100, executor);
+        assertThat(reading.await(5, TimeUnit.SECONDS), is(true));
+        stream.close();
+
+        assertThat(closedDuringRead.get(), is(false));
+    }
+
+    @Test(expected = IOException.class)
+    public void read_willRethrowFailureFromBackgroundRead() throws IOException {
+        ReadableByteChannel failing = new ReadableByteChannel() {
+            @Override
+            public int read(ByteBuffer dst) throws IOException {
+                throw new IOException("connection reset");
+            }
+
+            @Override
+            public boolean isOpen() {
+                return true;
+            }
+
+            @Override
+            public void close() {
+            }
+        };
+
+        try (InputStream stream = new ReadAheadInputStream(failing, 100, executor)) {
+            stream.read();
+        }
+    }
+}
@@ -0,0 +1,120 @@
+package com.mondomob.spring.cloudstorage;
+
+import com.google.cloud.RestorableState;
+import com.google.cloud.storage.Blob;
+import com.google.cloud.storage.BlobId;
+import com.google.cloud.storage.CopyWriter;
+import com.google.cloud.storage.Storage;
+import com.google.cloud.storage.StorageException;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.MockitoJUnitRunner;
+
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@RunWith(MockitoJUnitRunner.class)
+public class RewriteCopierTest {
+
+    @Mock
+    private Storage storage;
+    @Mock
+    private CopyWriter copyWriter;
+    @Mock
+    private RestorableState<CopyWriter> state;
+    @Mock
+    private CopyProgressListener listener;
+    @Mock
+    private Blob source;
+    @Mock
+    private Blob copied;
+
+    private RewriteCopier rewriteCopier;
+
+    @Before
+    public void before() {
+        rewriteCopier = new RewriteCopier(storage, 256L);
+        when(storage.copy(any(Storage.CopyRequest.class))).thenReturn(copyWriter);
+        when(copyWriter.isDone()).thenReturn(false, false, true);
+        when(copyWriter.capture()).thenReturn(state);
+        when(copyWriter.getBlobSize()).thenReturn(600L);
+        when(copyWriter.getTotalBytesCopied()).thenReturn(0L, 300L, 600L);
+        when(copyWriter.getResult()).thenReturn(copied);
+    }
+
+    @Test
+    public void copy_willRewriteUntilDone() {
+        ArgumentCaptor<Storage.CopyRequest> request = ArgumentCaptor.forClass(Storage.CopyRequest.class);
+
+        Blob result = rewriteCopier.copy(BlobId.of("from", "a"), BlobId.of("to", "b"), listener);
+
+        assertThat(result, is(copied));
+        verify(storage).copy(request.capture());
+        assertThat(request.getValue().getMegabytesCopiedPerChunk(), is(256L));
+        verify(copyWriter, times(2)).copyChunk();
+        verify(listener).onProgress(state, 0L, 600L);
+        verify(listener).onProgress(state, 600L, 600L);
+    }
+
+    @Test
+    public void move_willDeleteSourceGeneration_whenCopyMatches() {
+        givenSource();
+        when(copied.getSize()).thenReturn(600L);
+        when(copied.getCrc32c()).thenReturn("crc");
+        ArgumentCaptor<Storage.CopyRequest> request = ArgumentCaptor.forClass(Storage.CopyRequest.class);
+
+        rewriteCopier.move(source, BlobId.of("to", "b"), CopyProgressListener.NONE);
+
+        verify(storage).copy(request.capture());
+        assertThat(request.getValue().getSource(), is(BlobId.of("from", "a", 5L)));
+        verify(storage).delete(BlobId.of("from", "a"), Storage.BlobSourceOption.generationMatch(5L));
+    }
+
+    @Test
+    public void move_willKeepSource_whenCopyDoesNotMatch() {
+        givenSource();
+        when(copied.getSize()).thenReturn(600L);
+        when(copied.getCrc32c()).thenReturn("different");
+
+        try {
+            rewriteCopier.move(source, BlobId.of("to", "b"), CopyProgressListener.NONE);
+            fail("Expected move to fail");
+        } catch (IllegalStateException e) {
+            verify(storage, never()).delete(any(BlobId.class), any(Storage.BlobSourceOption.class));
+        }
+    }
+
+    @Test
+    public void move_willKeepSource_whenCopyCannotBeFinished() {
+        givenSource();
+        when(storage.get(BlobId.of("from", "a"))).thenReturn(source);
+        when(copied.getSize()).thenReturn(600L);
+        when(copied.getCrc32c()).thenReturn("crc");
+
+        try {
+            rewriteCopier.move(BlobId.of("from", "a"), BlobId.of("to", "b"), CopyProgressListener.NONE, blob -> {
+                throw new StorageException(403, "Forbidden");
+            });
+            fail("Expected move to fail");
+        } catch (StorageException e) {
+            verify(storage, never()).delete(any(BlobId.class), any(Storage.BlobSourceOption.class));
+        }
+    }
+
+    private void givenSource() {
+        when(source.getBucket()).thenReturn("from");
+        when(source.getName()).thenReturn("a");
+        when(source.getGeneration()).thenReturn(5L);
+        when(source.getSize()).thenReturn(600L);
+        when(source.getCrc32c()).thenReturn("crc");
+    }
+}
@@ -0,0 +1,66 @@
+package com.mondomob.spring.cloudstorage;
+
+import com.mondomob.spring.cloudstorage.apiclient.SignedUrl;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+
+public class SignedUrlCacheTest {
+
+    private static final Instant NOW = Instant.parse("2020-01-01T00:00:00Z");
+
+    private SignedUrlCache cache;
+    private AtomicInteger signatures;
+
+    @Before
+    public void before() {
+        cache = new SignedUrlCache(100, Duration.ofMinutes(5), Duration.ofMinutes(1), Clock.fixed(NOW, ZoneOffset.UTC));
+        signatures = new AtomicInteger();
+    }
+
+    @Test
+    public void get_willReuseUrl_whileValidForLongerThanSafetyMargin() {
+        assertThat(cache.get("bucket", "object", signer("https://first", Duration.ofMinutes(5))), is("https://first"));
+        assertThat(cache.get("bucket", "object", signer("https://second", Duration.ofMinutes(5))), is("https://first"));
+
+        assertThat(signatures.get(), is(1));
+    }
+
+    @Test
+    public void get_willSignAgain_whenUrlExpiresWithinSafetyMargin() {
+        cache.get("bucket", "object", signer("https://first", Duration.ofSeconds(30)));
+
+        assertThat(cache.get("bucket", "object", signer("https://second", Duration.ofMinutes(5))), is("https://second"));
+        assertThat(signatures.get(), is(2));
+    }
+
+    @Test
+    public void get_willCacheEachObjectSeparately() {
+        cache.get("bucket", "object", signer("https://first", Duration.ofMinutes(5)));
+
+        assertThat(cache.get("other-bucket", "object", signer("https://second", Duration.ofMinutes(5))), is("https://second"));
+        assertThat(signatures.get(), is(2));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void constructor_willRejectSafetyMarginLongerThanLifetime() {
+        new SignedUrlCache(100, Duration.ofMinutes(5), Duration.ofMinutes(5));
+    }
+
+    private Supplier<SignedUrl> signer(String url, Duration validFor) {
+        return () -> {
+            signatures.incrementAndGet();
+            return new SignedUrl(url, OffsetDateTime.ofInstant(NOW.plus(validFor), ZoneOffset.UTC));
+        };
+    }
+}
@@ -0,0 +1,177 @@
+package com.mondomob.spring.cloudstorage;
+
+import com.google.cloud.ReadChannel;
+import com.google.cloud.RestorableState;
+import com.google.cloud.storage.Blob;
+import com.google.cloud.storage.BlobId;
+import com.google.cloud.storage.Storage;
+import com.google.cloud.storage.StorageException;
+import com.google.common.util.concurrent.Uninterruptibles;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.junit.MockitoJUnitRunner;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.atLeast;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@RunWith(MockitoJUnitRunner.class)
+public class SlicedDownloaderTest {
+
+    private static final BlobId BLOB_ID = BlobId.of("bucket", "my/object");
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    @Mock
+    private Storage storage;
+    @Mock
+    private Blob blob;
+
+    private SlicedDownloader downloader;
+    private byte[] content;
+
+    @Before
+    public void before() {
+        downloader = new SlicedDownloader(storage, 1000, 3);
+        content = new byte[4500];
+        new Random(7).nextBytes(content);
+    }
+
+    @Test
+    public void download_willReadSlicesOfTheSameGenerationIntoFile() throws Exception {
+        givenObject();
+        Path target = temporaryFolder.newFile().toPath();
+
+        Blob result = downloader.download(BLOB_ID, target);
+
+        assertThat(result, is(blob));
+        assertArrayEquals(content, Files.readAllBytes(target));
+        verify(storage, atLeast(5)).reader(BlobId.of("bucket", "my/object", 123L));
+    }
+
+    @Test
+    public void download_willReadSlicesIntoBufferFromItsPosition() throws Exception {
+        givenObject();
+        ByteBuffer target = ByteBuffer.allocate(content.length + 10);
+        target.position(10);
+
+        downloader.download(BLOB_ID, target);
+
+        assertThat(target.position(), is(content.length + 10));
+        byte[] downloaded = new byte[content.length];
+        target.position(10);
+        target.get(downloaded);
+        assertArrayEquals(content, downloaded);
+    }
+
+    @Test
+    public void download_willWaitForRunningSlices_beforeThrowing() {
+        givenMetadata();
+        when(storage.reader(any(BlobId.class))).thenAnswer(invocation -> new ByteArrayReadChannel(content) {
+            @Override
+            public int read(ByteBuffer dst) throws IOException {
+                if (getPosition() == 0) {
+                    throw new IOException("Connection reset");
+                }
+                Uninterruptibles.sleepUninterruptibly(200, TimeUnit.MILLISECONDS);
+                return super.read(dst);
+            }
+        });
+        ByteBuffer target = ByteBuffer.allocate(content.length);
+
+        try {
+            downloader.download(BLOB_ID, target);
+            fail("Expected the failed slice to be thrown");
+        } catch (Exception e) {
+            assertThat(e.getCause() instanceof IOException, is(true));
+        }
+        byte[] afterFailure = target.array().clone();
+        Uninterruptibles.sleepUninterruptibly(500, TimeUnit.MILLISECONDS);
+
+        assertArrayEquals(afterFailure, target.array());
+    }
+
+    @Test(expected = StorageException.class)
+    public void download_willThrow_whenObjectDoesNotExist() throws Exception {
+        downloader.download(BLOB_ID, ByteBuffer.allocate(10));
+    }
+
+    private void givenObject() {
+        givenMetadata();
+        when(storage.reader(any(BlobId.class))).thenAnswer(invocation -> new ByteArrayReadChannel(content));
+    }
+
+    private void givenMetadata() {
+        when(storage.get(BLOB_ID)).thenReturn(blob);
+        when(blob.getBucket()).thenReturn("bucket");
+        when(blob.getName()).thenReturn("my/object");
+        when(blob.getGeneration()).thenReturn(123L);
+        when(blob.getSize()).thenReturn((long) content.length);
+    }
+
+    static class ByteArrayReadChannel implements ReadChannel {
+        private final byte[] content;
+        private int position;
+        private boolean open = true;
+
+        ByteArrayReadChannel(byte[] content) {
+            this.content = content;
+        }
+
+        @Override
+        public boolean isOpen() {
+            return open;
+        }
+
+        @Override
+        public void close() {
+            open = false;
+        }
+
+        @Override
+        public void seek(long position) {
+            this.position = (int) position;
+        }
+
+        @Override
+        public void setChunkSize(int chunkSize) {
+        }
+
+        @Override
+        public RestorableState<ReadChannel> capture() {
+            return null;
+        }
+
+        int getPosition() {
+            return position;
+        }
+
+        @Override
+        public int read(ByteBuffer dst) throws IOException {
+            if (position >= content.length) {
+                return -1;
+            }
+            int read = Math.min(dst.remaining(), content.length - position);
+            dst.put(content, position, read);
+            position += read;
+            return read;
+        }
+    }
+}
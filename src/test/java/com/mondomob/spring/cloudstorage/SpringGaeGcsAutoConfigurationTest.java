@@ -13,12 +13,12 @@ public class SpringGaeGcsAutoConfigurationTest {
 
     @Test(expected = IllegalArgumentException.class)
     public void springGaeGcsConfiguration_throwsException_whenNoProjectProvided() {
-        springGaeGcsAutoConfiguration.localCloudStorageService("myBucket", "blah", null);
+        springGaeGcsAutoConfiguration.localStorage("blah", null, null);
     }
 
     @Test(expected = IllegalArgumentException.class)
     public void springGaeGcsConfiguration_throwsException_whenEmptyProjectProvided() {
-        springGaeGcsAutoConfiguration.localCloudStorageService("myBucket", "blah", " ");
+        springGaeGcsAutoConfiguration.localStorage("blah", " ", null);
     }
 
 }
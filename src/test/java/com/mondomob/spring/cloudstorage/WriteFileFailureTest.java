@@ -0,0 +1,106 @@
+package com.mondomob.spring.cloudstorage;
+
+import com.google.cloud.storage.BlobId;
+import com.google.cloud.storage.Storage;
+import com.mondomob.spring.cloudstorage.emulator.StorageEmulator;
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DefaultDataBufferFactory;
+import reactor.core.publisher.Flux;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.SequenceInputStream;
+import java.nio.channels.Channels;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+
+import static org.hamcrest.Matchers.nullValue;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+
+public class WriteFileFailureTest {
+    private static final String BUCKET = "bucket";
+    private static final String OBJECT_NAME = "exports/data.bin";
+
+    private static StorageEmulator emulator;
+
+    private Storage storage;
+    private CloudStorageService service;
+    private byte[] content;
+
+    @BeforeClass
+    public static void beforeClass() {
+        emulator = new StorageEmulator(0);
+    }
+
+    @AfterClass
+    public static void afterClass() {
+        emulator.close();
+    }
+
+    @Before
+    public void before() {
+        emulator.reset();
+        storage = emulator.getStorage();
+        service = new CloudStorageService(BUCKET, storage);
+        service.setWriteChunkSize(256 * 1024);
+        content = new byte[600 * 1024];
+        new Random(3).nextBytes(content);
+    }
+
+    @Test
+    public void writeFile_willNotCreateObject_whenSourceFails() {
+        try {
+            service.writeFile(Channels.newChannel(failingSource()), OBJECT_NAME);
+            fail();
+        } catch (RuntimeException e) {
+            assertThat(storage.get(BlobId.of(BUCKET, OBJECT_NAME)), nullValue());
+        }
+    }
+
+    @Test
+    public void writeFile_willKeepExistingObject_whenSourceFails() {
+        byte[] existing = "previous version".getBytes(StandardCharsets.UTF_8);
+        service.writeFile(existing, OBJECT_NAME);
+
+        try {
+            service.writeFile(failingSource(), OBJECT_NAME);
+            fail();
+        } catch (RuntimeException e) {
+            assertArrayEquals(existing, storage.readAllBytes(BlobId.of(BUCKET, OBJECT_NAME)));
+        }
+    }
+
+    @Test
+    public void reactiveWriteFile_willNotCreateObject_whenPublisherFails() {
+        DefaultDataBufferFactory bufferFactory = new DefaultDataBufferFactory();
+        Flux<DataBuffer> data = Flux.concat(
+                Flux.just(bufferFactory.wrap(content)),
+                Flux.error(new IllegalStateException("upstream failed")));
+
+        try {
+            new ReactiveCloudStorageService(service).writeFile(BUCKET, data, OBJECT_NAME, false).block();
+            fail();
+        } catch (RuntimeException e) {
+            assertThat(storage.get(BlobId.of(BUCKET, OBJECT_NAME)), nullValue());
+        }
+    }
+
+    /**
+     * The content followed by a read error, as when a client disconnects part way through an upload.
+     */
+    private InputStream failingSource() {
+        return new SequenceInputStream(new ByteArrayInputStream(content), new InputStream() {
+            @Override
+            public int read() throws IOException {
+                throw new IOException("connection reset");
+            }
+        });
+    }
+}
@@ -0,0 +1,172 @@
+package com.mondomob.spring.cloudstorage;
+
+import com.google.cloud.storage.BlobId;
+import com.google.cloud.storage.BlobInfo;
+import com.google.cloud.storage.Storage;
+import com.google.cloud.storage.StorageException;
+import com.google.common.reflect.Reflection;
+import com.mondomob.spring.cloudstorage.emulator.StorageEmulator;
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.lang.reflect.InvocationTargetException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.Random;
+
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.not;
+import static org.hamcrest.Matchers.nullValue;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+
+public class WriteFileIfChangedTest {
+    private static final String BUCKET = "bucket";
+    private static final String OBJECT_NAME = "artifacts/build.bin";
+
+    private static StorageEmulator emulator;
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private Storage storage;
+    private CloudStorageService service;
+    private byte[] content;
+
+    @BeforeClass
+    public static void beforeClass() {
+        emulator = new StorageEmulator(0);
+    }
+
+    @AfterClass
+    public static void afterClass() {
+        emulator.close();
+    }
+
+    @Before
+    public void before() {
+        emulator.reset();
+        storage = emulator.getStorage();
+        service = new CloudStorageService(BUCKET, storage);
+        content = new byte[300 * 1024];
+        new Random(7).nextBytes(content);
+    }
+
+    @Test
+    public void writeFileIfChanged_willSkipUpload_whenContentIsUnchanged() {
+        WriteResult first = service.writeFileIfChanged(content, OBJECT_NAME);
+        WriteResult second = service.writeFileIfChanged(content, OBJECT_NAME);
+
+        assertThat(first.isUploaded(), is(true));
+        assertThat(second.isUploaded(), is(false));
+        assertThat(second.getBlob().getGeneration(), is(first.getBlob().getGeneration()));
+    }
+
+    @Test
+    public void writeFileIfChanged_willUpload_whenContentHasChanged() {
+        WriteResult first = service.writeFileIfChanged(content, OBJECT_NAME);
+        content[0]++;
+
+        WriteResult second = service.writeFileIfChanged(content, OBJECT_NAME);
+
+        assertThat(second.isUploaded(), is(true));
+        assertThat(second.getBlob().getGeneration(), not(first.getBlob().getGeneration()));
+        assertArrayEquals(content, storage.readAllBytes(BlobId.of(BUCKET, OBJECT_NAME)));
+    }
+
+    @Test
+    public void writeFileIfChanged_willSkipUploadOfFile_whenContentIsUnchanged() throws IOException {
+        Path file = temporaryFolder.newFile().toPath();
+        Files.write(file, content);
+
+        assertThat(service.writeFileIfChanged(file, OBJECT_NAME).isUploaded(), is(true));
+        assertThat(service.writeFileIfChanged(file, OBJECT_NAME).isUploaded(), is(false));
+        assertThat(service.writeFileIfChanged(content, OBJECT_NAME).isUploaded(), is(false));
+        assertArrayEquals(content, storage.readAllBytes(BlobId.of(BUCKET, OBJECT_NAME)));
+    }
+
+    @Test
+    public void writeFileIfChanged_willCompareCompressedContent_whenGzipTranscodingIsEnabled() throws IOException {
+        service.enableGzipTranscoding(GzipTranscoder.DEFAULT_LEVEL, Collections.singletonList("text/*"));
+        byte[] text = String.join("\n", Collections.nCopies(1000, "id,name,amount")).getBytes(StandardCharsets.UTF_8);
+        Path file = temporaryFolder.newFile().toPath();
+        Files.write(file, text);
+
+        assertThat(service.writeFileIfChanged(text, "exports/report.csv").isUploaded(), is(true));
+        assertThat(service.writeFileIfChanged(file, "exports/report.csv").isUploaded(), is(false));
+        assertArrayEquals(text, service.readBytes("exports/report.csv"));
+    }
+
+    @Test
+    public void writeFileIfChanged_willMakeObjectPublic_withoutUploading_whenOnlyAccessDiffers() {
+        WriteResult first = service.writeFileIfChanged(BUCKET, content, OBJECT_NAME, false);
+
+        WriteResult second = service.writeFileIfChanged(BUCKET, content, OBJECT_NAME, true);
+
+        assertThat(second.isUploaded(), is(false));
+        assertThat(second.getBlob().getGeneration(), is(first.getBlob().getGeneration()));
+        assertThat(second.getBlob().getCacheControl(), is("public, max-age=0"));
+        assertThat(service.writeFileIfChanged(BUCKET, content, OBJECT_NAME, true).isUploaded(), is(false));
+    }
+
+    @Test
+    public void writeFileIfChanged_willUploadAgain_whenPublicObjectIsWrittenPrivately() {
+        WriteResult first = service.writeFileIfChanged(BUCKET, content, OBJECT_NAME, true);
+
+        WriteResult second = service.writeFileIfChanged(BUCKET, content, OBJECT_NAME, false);
+
+        assertThat(second.isUploaded(), is(true));
+        assertThat(second.getBlob().getGeneration(), not(first.getBlob().getGeneration()));
+        assertThat(second.getBlob().getCacheControl(), nullValue());
+    }
+
+    @Test
+    public void writeFileIfChanged_willNotOverwrite_whenAnotherWriterChangedTheObject() {
+        byte[] other = "written by someone else".getBytes(StandardCharsets.UTF_8);
+        service = new CloudStorageService(BUCKET, racingStorage(other));
+
+        try {
+            service.writeFileIfChanged(content, OBJECT_NAME);
+            fail();
+        } catch (StorageException e) {
+            assertThat(e.getCode(), is(412));
+        }
+        assertArrayEquals(other, storage.readAllBytes(BlobId.of(BUCKET, OBJECT_NAME)));
+    }
+
+    @Test
+    public void writeFileIfChanged_willSkipUpload_whenAnotherWriterStoredTheSameContent() {
+        service = new CloudStorageService(BUCKET, racingStorage(content));
+
+        WriteResult result = service.writeFileIfChanged(content, OBJECT_NAME);
+
+        assertThat(result.isUploaded(), is(false));
+        assertArrayEquals(content, storage.readAllBytes(BlobId.of(BUCKET, OBJECT_NAME)));
+    }
+
+    /**
+     * A storage client where another writer stores {@code competing} just before the first upload.
+     */
+    private Storage racingStorage(byte[] competing) {
+        boolean[] raced = {false};
+        return Reflection.newProxy(Storage.class, (proxy, method, args) -> {
+            if ("create".equals(method.getName()) && !raced[0]) {
+                raced[0] = true;
+                storage.create(BlobInfo.newBuilder(BUCKET, OBJECT_NAME).build(), competing);
+            }
+            try {
+                return method.invoke(storage, args);
+            } catch (InvocationTargetException e) {
+                throw e.getCause();
+            }
+        });
+    }
+}
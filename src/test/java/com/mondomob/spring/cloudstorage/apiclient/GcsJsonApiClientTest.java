@@ -1,6 +1,9 @@
 package com.mondomob.spring.cloudstorage.apiclient;
 
+import com.google.appengine.api.ThreadManager;
 import com.google.appengine.api.appidentity.AppIdentityService;
+import com.google.apphosting.api.ApiProxy;
+import com.google.common.hash.Hashing;
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
@@ -8,13 +11,29 @@ import org.mockito.Answers;
 import org.mockito.Mock;
 import org.mockito.junit.MockitoJUnitRunner;
 
+import java.nio.charset.StandardCharsets;
 import java.time.Duration;
 import java.time.OffsetDateTime;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
 
 import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.startsWith;
+import static org.hamcrest.Matchers.contains;
 import static org.hamcrest.MatcherAssert.assertThat;
 import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.spy;
+import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
@@ -75,4 +94,159 @@ public class GcsJsonApiClientTest {
         verify(identityService).signForApp(data);
     }
 
+    @Test
+    public void generateSignedUrls_willLookUpAccessIdAndExpiryOnce() {
+        OffsetDateTime expirationDateTime = OffsetDateTime.parse("2020-01-01T00:00:00Z");
+        when(signing.getSignature()).thenReturn("MySignedStr".getBytes());
+        when(gcsJsonApiClient.getExpiryDateTime(Duration.ofMinutes(2))).thenReturn(expirationDateTime);
+        when(identityService.signForApp(any())).thenReturn(signing);
+        when(identityService.getServiceAccountName()).thenReturn("googleAccessId");
+
+        Map<String, SignedUrl> signed = gcsJsonApiClient.generateSignedUrls("myBucket", Arrays.asList("a.pdf", "b.pdf", "c.pdf", "a.pdf"), Duration.ofMinutes(2));
+
+        assertThat(signed.keySet(), contains("a.pdf", "b.pdf", "c.pdf"));
+        assertThat(signed.get("b.pdf").getUrl(), is("https://storage.googleapis.com/myBucket/b.pdf?GoogleAccessId=googleAccessId&Expires=1577836800&Signature=TXlTaWduZWRTdHI%3D"));
+        assertThat(signed.get("c.pdf").getExpiresAt(), is(expirationDateTime));
+        verify(identityService, times(3)).signForApp(any());
+        verify(identityService, times(1)).getServiceAccountName();
+        verify(gcsJsonApiClient, times(1)).getExpiryDateTime(Duration.ofMinutes(2));
+    }
+
+    @Test
+    public void generateSignedUrls_willSignWithAppIdentity_onCallingThread() {
+        Thread caller = Thread.currentThread();
+        when(signing.getSignature()).thenReturn("MySignedStr".getBytes());
+        when(identityService.signForApp(any())).thenAnswer(invocation -> {
+            assertThat(Thread.currentThread(), is(caller));
+            return signing;
+        });
+        when(identityService.getServiceAccountName()).thenReturn("googleAccessId");
+
+        Map<String, SignedUrl> signed = gcsJsonApiClient.generateSignedUrls("myBucket", Arrays.asList("a.pdf", "b.pdf", "c.pdf"), Duration.ofMinutes(2));
+
+        assertThat(signed.keySet(), contains("a.pdf", "b.pdf", "c.pdf"));
+        verify(identityService, times(3)).signForApp(any());
+    }
+
+    @Test
+    public void generateSignedUrls_willSignWithAppIdentity_onRequestThreads_onAppEngine() {
+        Set<Thread> requestThreads = ConcurrentHashMap.newKeySet();
+        ThreadFactory requestThreadFactory = runnable -> {
+            Thread thread = new Thread(runnable);
+            requestThreads.add(thread);
+            return thread;
+        };
+        ApiProxy.Environment environment = mock(ApiProxy.Environment.class);
+        when(environment.getAttributes()).thenReturn(Collections.<String, Object>singletonMap(ThreadManager.REQUEST_THREAD_FACTORY_ATTR, requestThreadFactory));
+        Set<Thread> signingThreads = ConcurrentHashMap.newKeySet();
+        when(signing.getSignature()).thenReturn("MySignedStr".getBytes());
+        when(identityService.signForApp(any())).thenAnswer(invocation -> {
+            signingThreads.add(Thread.currentThread());
+            return signing;
+        });
+        when(identityService.getServiceAccountName()).thenReturn("googleAccessId");
+
+        Map<String, SignedUrl> signed;
+        ApiProxy.setEnvironmentForCurrentThread(environment);
+        try {
+            signed = gcsJsonApiClient.generateSignedUrls("myBucket", Arrays.asList("a.pdf", "b.pdf", "c.pdf"), Duration.ofMinutes(2));
+        } finally {
+            ApiProxy.clearEnvironmentForCurrentThread();
+        }
+
+        assertThat(signed.keySet(), contains("a.pdf", "b.pdf", "c.pdf"));
+        assertThat(signingThreads.isEmpty(), is(false));
+        assertThat(requestThreads.containsAll(signingThreads), is(true));
+    }
+
+    @Test
+    public void setSigningParallelism_willNotRejectUrlsBeingSigned() throws Exception {
+        GcsJsonApiClient concurrentClient = new GcsJsonApiClient(null, identityService) {
+            @Override
+            protected boolean canSignConcurrently() {
+                return true;
+            }
+        };
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch resized = new CountDownLatch(1);
+        when(signing.getSignature()).thenReturn("MySignedStr".getBytes());
+        when(identityService.signForApp(any())).thenAnswer(invocation -> {
+            started.countDown();
+            resized.await(5, TimeUnit.SECONDS);
+            return signing;
+        });
+        when(identityService.getServiceAccountName()).thenReturn("googleAccessId");
+        ExecutorService caller = Executors.newSingleThreadExecutor();
+        try {
+            Future<Map<String, SignedUrl>> signed = caller.submit(() ->
+                    concurrentClient.generateSignedUrls("myBucket", Arrays.asList("a.pdf", "b.pdf", "c.pdf"), Duration.ofMinutes(2)));
+            assertThat(started.await(5, TimeUnit.SECONDS), is(true));
+
+            concurrentClient.setSigningParallelism(2);
+            resized.countDown();
+
+            assertThat(signed.get(5, TimeUnit.SECONDS).keySet(), contains("a.pdf", "b.pdf", "c.pdf"));
+        } finally {
+            caller.shutdownNow();
+        }
+    }
+
+    @Test
+    public void generateSignedUrls_willKeyRequestsByBucketAndName() {
+        when(signing.getSignature()).thenReturn("MySignedStr".getBytes());
+        when(identityService.signForApp(any())).thenReturn(signing);
+        when(identityService.getServiceAccountName()).thenReturn("googleAccessId");
+
+        Map<String, SignedUrl> signed = gcsJsonApiClient.generateSignedUrls(Arrays.asList(
+                new SignedUrlRequest("bucket1", "a.pdf", null),
+                new SignedUrlRequest("bucket2", "a.pdf", Duration.ofMinutes(1))));
+
+        assertThat(signed.keySet(), contains("bucket1/a.pdf", "bucket2/a.pdf"));
+        assertThat(signed.get("bucket2/a.pdf").getUrl(), startsWith("https://storage.googleapis.com/bucket2/a.pdf?"));
+    }
+
+    @Test
+    public void generateSignedUploadUrl() {
+        when(signing.getSignature()).thenReturn("MySignedStr".getBytes());
+        when(gcsJsonApiClient.now()).thenReturn(OffsetDateTime.parse("2020-01-01T00:00:00Z"));
+        when(identityService.signForApp(any())).thenReturn(signing);
+        when(identityService.getServiceAccountName()).thenReturn("googleAccessId");
+
+        SignedUploadUrl signed = gcsJsonApiClient.generateSignedUploadUrl("myBucket", "attachments/7ca3794f/My report.pdf", "application/pdf",
+                1048576L, "https://example.com", Duration.ofMinutes(5));
+
+        String query = "X-Goog-Algorithm=GOOG4-RSA-SHA256" +
+                "&X-Goog-Credential=googleAccessId%2F20200101%2Fauto%2Fstorage%2Fgoog4_request" +
+                "&X-Goog-Date=20200101T000000Z" +
+                "&X-Goog-Expires=300" +
+                "&X-Goog-SignedHeaders=content-type%3Bhost%3Borigin%3Bx-goog-content-length-range";
+        assertThat(signed.getUrl(), is("https://storage.googleapis.com/myBucket/attachments/7ca3794f/My%20report.pdf?" + query +
+                "&X-Goog-Signature=4d795369676e6564537472"));
+        assertThat(signed.getExpiresAt(), is(OffsetDateTime.parse("2020-01-01T00:05:00Z")));
+        assertThat(signed.getName(), is("attachments/7ca3794f/My report.pdf"));
+        assertThat(signed.getHeaders().get("Content-Type"), is("application/pdf"));
+        assertThat(signed.getHeaders().get("x-goog-content-length-range"), is("0,1048576"));
+
+        String canonicalRequest = "PUT\n" +
+                "/myBucket/attachments/7ca3794f/My%20report.pdf\n" +
+                query + "\n" +
+                "content-type:application/pdf\n" +
+                "host:storage.googleapis.com\n" +
+                "origin:https://example.com\n" +
+                "x-goog-content-length-range:0,1048576\n" +
+                "\n" +
+                "content-type;host;origin;x-goog-content-length-range\n" +
+                "UNSIGNED-PAYLOAD";
+        String stringToSign = "GOOG4-RSA-SHA256\n" +
+                "20200101T000000Z\n" +
+                "20200101/auto/storage/goog4_request\n" +
+                Hashing.sha256().hashString(canonicalRequest, StandardCharsets.UTF_8);
+        verify(identityService).signForApp(stringToSign.getBytes(StandardCharsets.UTF_8));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void generateSignedUploadUrl_willRejectExpiryLongerThanSevenDays() {
+        gcsJsonApiClient.generateSignedUploadUrl("myBucket", "file.pdf", "application/pdf", null, null, Duration.ofDays(8));
+    }
+
 }
@@ -0,0 +1,64 @@
+package com.mondomob.spring.cloudstorage.apiclient;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.security.GeneralSecurityException;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.Signature;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+public class PrivateKeySignerTest {
+
+    private static KeyPair keyPair;
+
+    @BeforeClass
+    public static void beforeClass() throws GeneralSecurityException {
+        KeyPairGenerator generator = KeyPairGenerator.getInstance("RSA");
+        generator.initialize(2048);
+        keyPair = generator.generateKeyPair();
+    }
+
+    @Test
+    public void sign_willProduceVerifiableSignature_whenCalledRepeatedly() throws GeneralSecurityException {
+        PrivateKeySigner signer = new PrivateKeySigner(keyPair.getPrivate());
+
+        for (int i = 0; i < 3; i++) {
+            byte[] data = ("GET\n\n\n" + i + "\n/bucket/object").getBytes();
+            assertThat(verify(data, signer.sign(data)), is(true));
+        }
+    }
+
+    @Test
+    public void sign_willProduceVerifiableSignatures_fromManyThreads() throws Exception {
+        PrivateKeySigner signer = new PrivateKeySigner(keyPair.getPrivate());
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<Boolean>> results = new ArrayList<>();
+            for (int i = 0; i < 20; i++) {
+                byte[] data = ("/bucket/object-" + i).getBytes();
+                results.add(executor.submit(() -> verify(data, signer.sign(data))));
+            }
+            for (Future<Boolean> result : results) {
+                assertThat(result.get(), is(true));
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private static boolean verify(byte[] data, byte[] signature) throws GeneralSecurityException {
+        Signature verifier = Signature.getInstance(PrivateKeySigner.ALGORITHM);
+        verifier.initVerify(keyPair.getPublic());
+        verifier.update(data);
+        return verifier.verify(signature);
+    }
+}
@@ -0,0 +1,170 @@
+package com.mondomob.spring.cloudstorage.apiclient;
+
+import com.google.api.client.http.LowLevelHttpRequest;
+import com.google.api.client.http.LowLevelHttpResponse;
+import com.google.api.client.testing.http.MockHttpTransport;
+import com.google.api.client.testing.http.MockLowLevelHttpRequest;
+import com.google.api.client.testing.http.MockLowLevelHttpResponse;
+import com.google.common.util.concurrent.Uninterruptibles;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Queue;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static com.mondomob.spring.cloudstorage.apiclient.ResumableUploader.CHUNK_SIZE_MULTIPLE;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.fail;
+
+public class ResumableUploaderTest {
+
+    private static final String SESSION_URI = "https://www.googleapis.com/upload/storage/v1/b/bucket/o?uploadType=resumable&upload_id=abc";
+
+    private byte[] content;
+    private Queue<Object> responses;
+    private List<String> contentRanges;
+    private ByteArrayOutputStream received;
+    private MockHttpTransport transport;
+
+    @Before
+    public void before() {
+        content = new byte[2 * CHUNK_SIZE_MULTIPLE + 100];
+        new Random(5).nextBytes(content);
+        responses = new LinkedList<>();
+        contentRanges = new ArrayList<>();
+        received = new ByteArrayOutputStream();
+        transport = new MockHttpTransport() {
+            @Override
+            public LowLevelHttpRequest buildRequest(String method, String url) {
+                return new MockLowLevelHttpRequest(url) {
+                    @Override
+                    public LowLevelHttpResponse execute() throws IOException {
+                        contentRanges.add(getFirstHeaderValue("Content-Range"));
+                        if (getStreamingContent() != null) {
+                            getStreamingContent().writeTo(received);
+                        }
+                        Object response = responses.remove();
+                        if (response instanceof IOException) {
+                            throw (IOException) response;
+                        }
+                        return (LowLevelHttpResponse) response;
+                    }
+                };
+            }
+        };
+    }
+
+    @Test
+    public void upload_willSendContentInChunks() {
+        responses.add(resumeIncomplete(CHUNK_SIZE_MULTIPLE));
+        responses.add(resumeIncomplete(2 * CHUNK_SIZE_MULTIPLE));
+        responses.add(new MockLowLevelHttpResponse().setStatusCode(200));
+
+        long uploaded = uploader(false).upload(SESSION_URI, new ByteArrayInputStream(content));
+
+        assertThat(uploaded, is((long) content.length));
+        assertThat(contentRanges, contains("bytes 0-262143/*", "bytes 262144-524287/*", "bytes 524288-524387/524388"));
+        assertArrayEquals(content, received.toByteArray());
+    }
+
+    @Test
+    public void upload_willResumeFromCommittedOffset_whenRequestFails() {
+        responses.add(resumeIncomplete(CHUNK_SIZE_MULTIPLE));
+        responses.add(new IOException("connection reset"));
+        responses.add(resumeIncomplete(2 * CHUNK_SIZE_MULTIPLE));
+        responses.add(new MockLowLevelHttpResponse().setStatusCode(503));
+        responses.add(resumeIncomplete(2 * CHUNK_SIZE_MULTIPLE));
+        responses.add(new MockLowLevelHttpResponse().setStatusCode(200));
+
+        long uploaded = uploader(true).upload(SESSION_URI, new ByteArrayInputStream(content));
+
+        assertThat(uploaded, is((long) content.length));
+        assertThat(contentRanges, contains("bytes 0-262143/*", "bytes 262144-524287/*", "bytes */*",
+                "bytes 524288-524387/524388", "bytes */524388", "bytes 524288-524387/524388"));
+    }
+
+    @Test
+    public void upload_willFinaliseWithEmptyRequest_whenContentEndsOnChunkBoundary() {
+        content = new byte[CHUNK_SIZE_MULTIPLE];
+        responses.add(resumeIncomplete(CHUNK_SIZE_MULTIPLE));
+        responses.add(new MockLowLevelHttpResponse().setStatusCode(200));
+
+        uploader(false).upload(SESSION_URI, new ByteArrayInputStream(content));
+
+        assertThat(contentRanges, contains("bytes 0-262143/*", "bytes */262144"));
+    }
+
+    @Test(expected = RuntimeException.class)
+    public void upload_willFail_whenRetriesExhausted() {
+        responses.add(new MockLowLevelHttpResponse().setStatusCode(503));
+        responses.add(new MockLowLevelHttpResponse().setStatusCode(503));
+        responses.add(new MockLowLevelHttpResponse().setStatusCode(503));
+
+        new ResumableUploader(transport.createRequestFactory(), CHUNK_SIZE_MULTIPLE, 1, false, millis -> { })
+                .upload(SESSION_URI, new ByteArrayInputStream(content));
+    }
+
+    @Test
+    public void upload_willWaitForReadAhead_beforeThrowing() {
+        CountDownLatch readingAhead = new CountDownLatch(1);
+        AtomicInteger readsInProgress = new AtomicInteger();
+        InputStream source = new ByteArrayInputStream(content) {
+            @Override
+            public synchronized int read(byte[] b, int off, int len) {
+                readsInProgress.incrementAndGet();
+                try {
+                    if (pos >= CHUNK_SIZE_MULTIPLE) {
+                        readingAhead.countDown();
+                        Uninterruptibles.sleepUninterruptibly(300, TimeUnit.MILLISECONDS);
+                    }
+                    return super.read(b, off, len);
+                } finally {
+                    readsInProgress.decrementAndGet();
+                }
+            }
+        };
+        MockHttpTransport forbidden = new MockHttpTransport() {
+            @Override
+            public LowLevelHttpRequest buildRequest(String method, String url) {
+                return new MockLowLevelHttpRequest(url) {
+                    @Override
+                    public LowLevelHttpResponse execute() {
+                        Uninterruptibles.awaitUninterruptibly(readingAhead, 5, TimeUnit.SECONDS);
+                        return new MockLowLevelHttpResponse().setStatusCode(403);
+                    }
+                };
+            }
+        };
+
+        try {
+            new ResumableUploader(forbidden.createRequestFactory(), CHUNK_SIZE_MULTIPLE, 3, true, millis -> { })
+                    .upload(SESSION_URI, source);
+            fail("Expected the upload to fail");
+        } catch (RuntimeException e) {
+            assertThat(readsInProgress.get(), is(0));
+        }
+    }
+
+    private ResumableUploader uploader(boolean readAhead) {
+        return new ResumableUploader(transport.createRequestFactory(), CHUNK_SIZE_MULTIPLE, 3, readAhead, millis -> { });
+    }
+
+    private static MockLowLevelHttpResponse resumeIncomplete(long committed) {
+        return new MockLowLevelHttpResponse()
+                .setStatusCode(308)
+                .addHeader("Range", String.format("bytes=0-%s", committed - 1));
+    }
+}
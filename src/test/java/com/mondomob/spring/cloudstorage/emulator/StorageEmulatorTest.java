@@ -0,0 +1,198 @@
+package com.mondomob.spring.cloudstorage.emulator;
+
+import com.google.api.client.http.GenericUrl;
+import com.google.api.client.http.HttpResponse;
+import com.google.api.client.http.javanet.NetHttpTransport;
+import com.google.cloud.storage.Blob;
+import com.google.cloud.storage.BlobId;
+import com.google.cloud.storage.BlobInfo;
+import com.google.cloud.storage.Storage;
+import com.google.cloud.storage.StorageException;
+import com.google.common.io.ByteStreams;
+import com.mondomob.spring.cloudstorage.CloudStorageService;
+import com.mondomob.spring.cloudstorage.ListFilesOptions;
+import com.mondomob.spring.cloudstorage.apiclient.GcsJsonApiClient;
+import com.mondomob.spring.cloudstorage.apiclient.ResumableUploader;
+import com.mondomob.spring.cloudstorage.retry.HedgedRequests;
+import com.mondomob.spring.cloudstorage.retry.RetryBudget;
+import com.mondomob.spring.cloudstorage.retry.RetryPolicy;
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.stream.Collectors;
+
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.greaterThan;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.nullValue;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+
+public class StorageEmulatorTest {
+    private static final String BUCKET = "bucket";
+
+    private static StorageEmulator emulator;
+
+    private Storage storage;
+    private CloudStorageService service;
+    private byte[] content;
+
+    @BeforeClass
+    public static void beforeClass() {
+        emulator = new StorageEmulator(0);
+    }
+
+    @AfterClass
+    public static void afterClass() {
+        emulator.close();
+    }
+
+    @Before
+    public void before() {
+        emulator.reset();
+        storage = emulator.getStorage();
+        service = new CloudStorageService(BUCKET, storage);
+        content = new byte[3 * ResumableUploader.CHUNK_SIZE_MULTIPLE + 100];
+        new Random(7).nextBytes(content);
+    }
+
+    @Test
+    public void writeFile_willStoreContentForReadFile() throws IOException {
+        Blob blob = service.writeFile(content, "folder/object");
+
+        assertThat(blob.getSize(), is((long) content.length));
+        try (InputStream stream = service.readFile("folder/object")) {
+            assertArrayEquals(content, ByteStreams.toByteArray(stream));
+        }
+    }
+
+    @Test
+    public void writeFile_willStreamContentThroughResumableUpload() throws IOException {
+        service.setWriteChunkSize(ResumableUploader.CHUNK_SIZE_MULTIPLE);
+
+        service.writeFile(new ByteArrayInputStream(content), "streamed");
+
+        try (InputStream stream = service.readFile("streamed")) {
+            assertArrayEquals(content, ByteStreams.toByteArray(stream));
+        }
+    }
+
+    @Test
+    public void readFile_willReturnByteRange() throws IOException {
+        service.writeFile(content, "object");
+
+        try (InputStream stream = service.readFile(BUCKET, "object", 1000, 500)) {
+            assertArrayEquals(Arrays.copyOfRange(content, 1000, 1500), ByteStreams.toByteArray(stream));
+        }
+    }
+
+    @Test
+    public void readBytes_willReturnObject_withRetriesAndHedging() {
+        RetryBudget budget = new RetryBudget(RetryBudget.DEFAULT_MAX_TOKENS, RetryBudget.DEFAULT_TOKEN_RATIO);
+        service.setRetryPolicy(new RetryPolicy(3, Duration.ofMillis(10), Duration.ofMillis(100), budget));
+        service.enableHedgedReads(new HedgedRequests(0.5, Duration.ZERO, budget));
+        service.writeFile(content, "object");
+
+        for (int i = 0; i < 10; i++) {
+            assertArrayEquals(content, service.readBytes("object"));
+        }
+        assertThat(service.getBlob("missing"), is(nullValue()));
+    }
+
+    @Test
+    public void writeFile_willGiveEachWriteNewGeneration() {
+        Blob first = service.writeFile(content, "object");
+        Blob second = service.writeFile(content, "object");
+
+        assertThat(second.getGeneration(), greaterThan(first.getGeneration()));
+        assertThat(service.getBlob("object").getGeneration(), is(second.getGeneration()));
+    }
+
+    @Test
+    public void create_willRejectWrite_whenGenerationPreconditionFails() {
+        Blob existing = service.writeFile(content, "object");
+
+        try {
+            storage.create(BlobInfo.newBuilder(BUCKET, "object").build(), content, Storage.BlobTargetOption.doesNotExist());
+            fail();
+        } catch (StorageException e) {
+            assertThat(e.getCode(), is(412));
+        }
+        assertThat(service.getBlob("object").getGeneration(), is(existing.getGeneration()));
+    }
+
+    @Test
+    public void listFiles_willReturnEveryPage() {
+        for (String name : Arrays.asList("a/1", "a/2", "a/b/3", "a/c/4", "a/5", "b/6")) {
+            service.writeFile(new byte[0], name);
+        }
+        service.setListPageSize(2);
+
+        List<String> all = service.listFiles("a/").stream().map(Blob::getName).collect(Collectors.toList());
+        List<String> directory = service.streamFiles(BUCKET, "a/", new ListFilesOptions().currentDirectory())
+                .map(Blob::getName)
+                .collect(Collectors.toList());
+
+        assertThat(all, contains("a/1", "a/2", "a/5", "a/b/3", "a/c/4"));
+        assertThat(directory, contains("a/1", "a/2", "a/5", "a/b/", "a/c/"));
+    }
+
+    @Test
+    public void copyAndMoveFile_willRewriteObjects() throws IOException {
+        service.writeFile(content, "source");
+
+        service.copyFile("source", "copy", false);
+        service.moveFile("copy", "moved", false);
+
+        assertThat(service.fileExists("copy"), is(false));
+        try (InputStream stream = service.readFile("moved")) {
+            assertArrayEquals(content, ByteStreams.toByteArray(stream));
+        }
+    }
+
+    @Test
+    public void deleteFiles_willDeleteThroughBatchRequests() {
+        service.writeFile(content, "one");
+        service.writeFile(content, "two");
+
+        Map<String, Boolean> deleted = service.deleteFiles(Arrays.asList("one", "two", "missing"));
+
+        assertThat(deleted.get("one"), is(true));
+        assertThat(deleted.get("two"), is(true));
+        assertThat(deleted.get("missing"), is(false));
+        assertThat(service.getBlob("one"), is(nullValue()));
+    }
+
+    @Test
+    public void uploadResumable_willStoreChunkedUpload() throws IOException {
+        GcsJsonApiClient client = emulator.getJsonApiClient();
+        client.setResumableUpload(ResumableUploader.CHUNK_SIZE_MULTIPLE, ResumableUploader.DEFAULT_MAX_RETRIES, false);
+
+        long uploaded = client.uploadResumable(BUCKET, "uploaded", "application/octet-stream", new ByteArrayInputStream(content));
+
+        assertThat(uploaded, is((long) content.length));
+        assertArrayEquals(content, storage.readAllBytes(BlobId.of(BUCKET, "uploaded")));
+    }
+
+    @Test
+    public void generateSignedUrl_willDownloadObject() throws IOException {
+        service.writeFile(content, "folder/signed");
+        String url = emulator.getJsonApiClient().generateSignedUrl(BUCKET, "folder/signed", Duration.ofMinutes(1));
+
+        HttpResponse response = new NetHttpTransport().createRequestFactory().buildGetRequest(new GenericUrl(url)).execute();
+        try (InputStream stream = response.getContent()) {
+            assertArrayEquals(content, ByteStreams.toByteArray(stream));
+        }
+    }
+}
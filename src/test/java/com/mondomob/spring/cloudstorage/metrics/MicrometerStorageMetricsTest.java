@@ -0,0 +1,63 @@
+package com.mondomob.spring.cloudstorage.metrics;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+
+public class MicrometerStorageMetricsTest {
+
+    private SimpleMeterRegistry registry;
+    private MicrometerStorageMetrics metrics;
+
+    @Before
+    public void before() {
+        registry = new SimpleMeterRegistry();
+        metrics = new MicrometerStorageMetrics(registry);
+    }
+
+    @Test
+    public void time_willRecordSuccessfulOperation() {
+        String result = metrics.time(StorageMetrics.GET, "bucket", () -> "blob");
+
+        assertThat(result, is("blob"));
+        assertThat(registry.get(MicrometerStorageMetrics.OPERATIONS_TIMER)
+                .tags("operation", "get", "bucket", "bucket", "outcome", "success")
+                .timer().count(), is(1L));
+    }
+
+    @Test
+    public void time_willRecordFailedOperation() {
+        try {
+            metrics.time(StorageMetrics.WRITE, "bucket", () -> {
+                throw new IOException("connection reset");
+            });
+            fail();
+        } catch (IOException e) {
+            assertThat(registry.get(MicrometerStorageMetrics.OPERATIONS_TIMER)
+                    .tags("operation", "write", "bucket", "bucket", "outcome", "error")
+                    .timer().count(), is(1L));
+        }
+    }
+
+    @Test
+    public void recordBytes_willCountBytesAndPayloadSize() {
+        metrics.recordBytes(StorageMetrics.READ, "bucket", 100);
+        metrics.recordBytes(StorageMetrics.READ, "bucket", 300);
+
+        assertThat(registry.get(MicrometerStorageMetrics.BYTES_COUNTER).tags("operation", "read", "bucket", "bucket").counter().count(), is(400.0));
+        assertThat(registry.get(MicrometerStorageMetrics.PAYLOAD_SIZE_SUMMARY).tags("operation", "read").summary().max(), is(300.0));
+    }
+
+    @Test
+    public void recordSignatures_willTagUnknownBucket_whenBucketIsNull() {
+        metrics.recordSignatures(null, 3);
+
+        assertThat(registry.get(MicrometerStorageMetrics.SIGNATURES_COUNTER).tags("bucket", "unknown").counter().count(), is(3.0));
+    }
+}
@@ -0,0 +1,148 @@
+package com.mondomob.spring.cloudstorage.retry;
+
+import com.google.common.util.concurrent.Uninterruptibles;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.hamcrest.Matchers.closeTo;
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+
+public class HedgedRequestsTest {
+
+    private static final long FAST_NANOS = TimeUnit.MILLISECONDS.toNanos(20);
+
+    private RetryBudget budget;
+    private HedgedRequests hedgedRequests;
+    private AtomicInteger calls;
+    private CountDownLatch cancelled;
+
+    @Before
+    public void before() {
+        budget = new RetryBudget(10, 0.1);
+        hedgedRequests = new HedgedRequests(0.95, Duration.ZERO, budget);
+        calls = new AtomicInteger();
+        cancelled = new CountDownLatch(1);
+    }
+
+    @Test
+    public void execute_willNotHedge_untilEnoughLatenciesAreRecorded() {
+        for (int i = 1; i < HedgedRequests.MIN_SAMPLES; i++) {
+            hedgedRequests.execute(() -> calls.incrementAndGet());
+        }
+        assertThat(hedgedRequests.getDelayNanos(), is(-1L));
+
+        hedgedRequests.execute(() -> calls.incrementAndGet());
+
+        assertThat(hedgedRequests.getDelayNanos() >= 0, is(true));
+        assertThat(hedgedRequests.getHedgeCount(), is(0L));
+    }
+
+    @Test
+    public void execute_willUseSecondRequest_whenFirstIsSlow() throws InterruptedException {
+        recordLatencies(FAST_NANOS);
+
+        String result = hedgedRequests.execute(this::slowThenFast);
+
+        assertThat(result, is("hedge"));
+        assertThat(hedgedRequests.getHedgeCount(), is(1L));
+        assertThat(cancelled.await(5, TimeUnit.SECONDS), is(true));
+    }
+
+    @Test
+    public void execute_willSpendTokenForHedge_andRecordCancelledAttempt() {
+        recordLatencies(FAST_NANOS);
+
+        hedgedRequests.execute(this::slowThenFast);
+
+        assertThat(budget.getTokens(), closeTo(10 - 1 + 0.1, 0.001));
+        assertThat(hedgedRequests.getSampleCount(), is(HedgedRequests.MIN_SAMPLES + 2L));
+    }
+
+    @Test
+    public void execute_willRunOnCallingThread_whenAllThreadsAreBusy() throws InterruptedException {
+        hedgedRequests = new HedgedRequests(0.95, Duration.ZERO, budget, 1);
+        recordLatencies(TimeUnit.SECONDS.toNanos(30));
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        Thread busy = new Thread(() -> hedgedRequests.execute(() -> {
+            started.countDown();
+            return Uninterruptibles.awaitUninterruptibly(release, 5, TimeUnit.SECONDS);
+        }));
+        busy.start();
+        assertThat(started.await(5, TimeUnit.SECONDS), is(true));
+
+        Thread caller = hedgedRequests.execute(Thread::currentThread);
+
+        assertThat(caller, is(Thread.currentThread()));
+        release.countDown();
+        busy.join();
+    }
+
+    @Test
+    public void execute_willWaitForFirstRequest_whenBudgetIsSpent() throws InterruptedException {
+        recordLatencies(FAST_NANOS);
+        for (int i = 0; i < 5; i++) {
+            budget.recordFailure();
+        }
+
+        String result = hedgedRequests.execute(() -> {
+            calls.incrementAndGet();
+            Thread.sleep(100);
+            return "first";
+        });
+
+        assertThat(result, is("first"));
+        assertThat(calls.get(), is(1));
+        assertThat(hedgedRequests.getHedgeCount(), is(0L));
+    }
+
+    @Test
+    public void execute_willCreditSharedBudgetOnce_whenRetriedAndHedged() {
+        RetryPolicy retryPolicy = new RetryPolicy(3, Duration.ofMillis(1), Duration.ofMillis(1), budget);
+        budget.recordFailure();
+        budget.recordFailure();
+
+        String result = hedgedRequests.execute(retryPolicy, () -> calls.incrementAndGet() == 1 ? fail() : "second");
+
+        assertThat(result, is("second"));
+        assertThat(budget.getTokens(), closeTo(10 - 2 - 1 + 0.1, 0.001));
+    }
+
+    @Test
+    public void record_willUsePercentileOfRecentLatencies() {
+        for (int i = 1; i <= HedgedRequests.WINDOW_SIZE; i++) {
+            hedgedRequests.record(i);
+        }
+
+        assertThat(hedgedRequests.getDelayNanos(), is(950L));
+    }
+
+    private String fail() {
+        throw new RuntimeException(new IOException("connection reset"));
+    }
+
+    private String slowThenFast() {
+        if (calls.incrementAndGet() > 1) {
+            return "hedge";
+        }
+        try {
+            Thread.sleep(TimeUnit.SECONDS.toMillis(30));
+        } catch (InterruptedException e) {
+            cancelled.countDown();
+        }
+        return "first";
+    }
+
+    private void recordLatencies(long latencyNanos) {
+        for (int i = 0; i < HedgedRequests.MIN_SAMPLES; i++) {
+            hedgedRequests.record(latencyNanos);
+        }
+    }
+}
@@ -0,0 +1,126 @@
+package com.mondomob.spring.cloudstorage.retry;
+
+import com.google.api.client.http.HttpHeaders;
+import com.google.api.client.http.HttpResponseException;
+import com.google.cloud.storage.StorageException;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.net.SocketTimeoutException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.hamcrest.Matchers.allOf;
+import static org.hamcrest.Matchers.greaterThanOrEqualTo;
+import static org.hamcrest.Matchers.hasSize;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.lessThanOrEqualTo;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+
+public class RetryPolicyTest {
+
+    private List<Long> sleeps;
+    private AtomicInteger calls;
+    private RetryBudget budget;
+    private RetryPolicy retryPolicy;
+
+    @Before
+    public void before() {
+        sleeps = new ArrayList<>();
+        calls = new AtomicInteger();
+        budget = new RetryBudget(10, 0.5);
+        retryPolicy = new RetryPolicy(3, Duration.ofMillis(100), Duration.ofSeconds(1), budget, sleeps::add);
+    }
+
+    @Test
+    public void execute_willRetryTransientFailures_withJitteredBackoff() throws IOException {
+        String result = retryPolicy.execute(() -> {
+            if (calls.incrementAndGet() < 3) {
+                throw new SocketTimeoutException("read timed out");
+            }
+            return "result";
+        });
+
+        assertThat(result, is("result"));
+        assertThat(calls.get(), is(3));
+        assertThat(sleeps, hasSize(2));
+        assertThat(sleeps.get(0), allOf(greaterThanOrEqualTo(50L), lessThanOrEqualTo(150L)));
+        assertThat(sleeps.get(1), allOf(greaterThanOrEqualTo(100L), lessThanOrEqualTo(300L)));
+    }
+
+    @Test
+    public void execute_willThrowLastFailure_afterMaxAttempts() {
+        try {
+            retryPolicy.execute(() -> {
+                throw new StorageException(503, String.format("unavailable %s", calls.incrementAndGet()));
+            });
+            fail();
+        } catch (StorageException e) {
+            assertThat(e.getMessage(), is("unavailable 3"));
+        }
+    }
+
+    @Test
+    public void execute_willNotRetry_whenFailureIsNotTransient() {
+        try {
+            retryPolicy.execute(() -> {
+                calls.incrementAndGet();
+                throw new StorageException(404, "not found");
+            });
+            fail();
+        } catch (StorageException e) {
+            assertThat(calls.get(), is(1));
+            assertThat(sleeps, hasSize(0));
+            assertThat(budget.getTokens(), is(10.0));
+        }
+    }
+
+    @Test
+    public void execute_willStopRetrying_whenBudgetIsSpent() {
+        for (int i = 0; i < 5; i++) {
+            try {
+                retryPolicy.execute(() -> {
+                    calls.incrementAndGet();
+                    throw new IOException("connection reset");
+                });
+                fail();
+            } catch (IOException e) {
+                // expected
+            }
+        }
+
+        assertThat(budget.allowsRetry(), is(false));
+        assertThat(calls.get(), is(8));
+    }
+
+    @Test
+    public void execute_willRefillBudget_whenCallsSucceed() {
+        budget.recordFailure();
+        budget.recordFailure();
+
+        retryPolicy.execute(() -> "result");
+        retryPolicy.execute(() -> "result");
+
+        assertThat(budget.getTokens(), is(9.0));
+    }
+
+    @Test
+    public void isTransient_willClassifyFailures() {
+        assertThat(RetryPolicy.isTransient(new IOException("connection reset")), is(true));
+        assertThat(RetryPolicy.isTransient(new RuntimeException("wrapped", new SocketTimeoutException())), is(true));
+        assertThat(RetryPolicy.isTransient(new StorageException(429, "rate limited")), is(true));
+        assertThat(RetryPolicy.isTransient(new StorageException(500, "backend error")), is(true));
+        assertThat(RetryPolicy.isTransient(new StorageException(412, "precondition failed")), is(false));
+        assertThat(RetryPolicy.isTransient(httpResponseException(408)), is(true));
+        assertThat(RetryPolicy.isTransient(httpResponseException(403)), is(false));
+        assertThat(RetryPolicy.isTransient(new IllegalArgumentException()), is(false));
+    }
+
+    private static HttpResponseException httpResponseException(int status) {
+        return new HttpResponseException.Builder(status, null, new HttpHeaders()).build();
+    }
+}